@@ -0,0 +1,175 @@
+/*
+ * Copyright 2014 Twitter, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.twitter.hpack;
+
+/**
+ * An indexing policy that keeps high-cardinality header fields out of the dynamic table.
+ * <p>
+ * A header field is only indexed the second time it is seen, so values that never repeat
+ * (request ids, unique paths) are sent as literals without evicting useful entries.
+ * The dynamic table hit rate is tracked per header field name and names that rarely hit
+ * are no longer indexed, except for every {@value #PROBE_INTERVAL}th sighting, which is treated
+ * as if the name were warm so a name whose values settle can earn its hits back. Header field values that keep hitting are pinned: they are
+ * re-indexed as soon as they are seen again after being evicted.
+ * <p>
+ * All state lives in small direct-mapped arrays, so collisions only cost accuracy.
+ */
+public final class AdaptiveIndexingPolicy implements IndexingPolicy {
+
+  private static final int NAME_SLOTS = 64;
+  private static final int FIELD_SLOTS = 256;
+
+  // number of lookups before the hit rate of a name is trusted
+  private static final int MIN_SAMPLES = 16;
+
+  // counters are halved after this many lookups so the policy follows the traffic
+  private static final int DECAY_INTERVAL = 1024;
+
+  // a cold name is still sampled once per this many lookups
+  static final int PROBE_INTERVAL = 16;
+
+  private final int minHitRatePercent;
+  private final int pinThreshold;
+
+  // per-name lookup statistics
+  private final int[] nameHashes = new int[NAME_SLOTS];
+  private final int[] nameLookups = new int[NAME_SLOTS];
+  private final int[] nameHits = new int[NAME_SLOTS];
+
+  // fingerprints of header fields seen at least once and their dynamic table hits
+  private final int[] fieldHashes = new int[FIELD_SLOTS];
+  private final int[] fieldHits = new int[FIELD_SLOTS];
+
+  private int lookups;
+
+  /**
+   * Creates a new policy that stops indexing names with a hit rate below 10%
+   * and pins header fields after 4 hits.
+   */
+  public AdaptiveIndexingPolicy() {
+    this(10, 4);
+  }
+
+  /**
+   * Creates a new policy.
+   *
+   * @param minHitRatePercent the dynamic table hit rate below which a name is no longer indexed
+   * @param pinThreshold      the number of hits after which a header field is always indexed
+   */
+  public AdaptiveIndexingPolicy(int minHitRatePercent, int pinThreshold) {
+    if (minHitRatePercent < 0 || minHitRatePercent > 100) {
+      throw new IllegalArgumentException("Illegal hit rate: " + minHitRatePercent);
+    }
+    if (pinThreshold <= 0) {
+      throw new IllegalArgumentException("Illegal pin threshold: " + pinThreshold);
+    }
+    this.minHitRatePercent = minHitRatePercent;
+    this.pinThreshold = pinThreshold;
+  }
+
+  @Override
+  public boolean shouldIndex(byte[] name, byte[] value) {
+    int nameHash = hash(0, name);
+    int fieldHash = fingerprint(nameHash, value);
+    int nameSlot = nameSlot(nameHash);
+    lookup(nameSlot);
+
+    boolean cold = isCold(nameSlot);
+    int fieldSlot = fieldHash & (FIELD_SLOTS - 1);
+    if (fieldHashes[fieldSlot] == fieldHash) {
+      // Pinned fields are indexed even if the name is cold.
+      if (fieldHits[fieldSlot] >= pinThreshold) {
+        return true;
+      }
+      return !cold;
+    }
+
+    // First sighting: remember the field but send it as a literal.
+    if (!cold) {
+      fieldHashes[fieldSlot] = fieldHash;
+      fieldHits[fieldSlot] = 0;
+    }
+    return false;
+  }
+
+  @Override
+  public void hit(byte[] name, byte[] value) {
+    int nameHash = hash(0, name);
+    int fieldHash = fingerprint(nameHash, value);
+    int nameSlot = nameSlot(nameHash);
+    lookup(nameSlot);
+    nameHits[nameSlot]++;
+
+    int fieldSlot = fieldHash & (FIELD_SLOTS - 1);
+    if (fieldHashes[fieldSlot] != fieldHash) {
+      fieldHashes[fieldSlot] = fieldHash;
+      fieldHits[fieldSlot] = 0;
+    }
+    fieldHits[fieldSlot]++;
+  }
+
+  /**
+   * Returns whether the name in the given slot hits the dynamic table too rarely to be indexed.
+   * A cold name is not cold on its probe lookups, so it keeps recording fields and a field that
+   * repeats gets indexed, hits and warms the name up again.
+   */
+  private boolean isCold(int nameSlot) {
+    int samples = nameLookups[nameSlot];
+    return samples >= MIN_SAMPLES && samples % PROBE_INTERVAL != 0
+        && nameHits[nameSlot] * 100 < samples * minHitRatePercent;
+  }
+
+  /**
+   * Returns the statistics slot for the name, claiming it if another name held it.
+   */
+  private int nameSlot(int nameHash) {
+    int slot = nameHash & (NAME_SLOTS - 1);
+    if (nameHashes[slot] != nameHash) {
+      nameHashes[slot] = nameHash;
+      nameLookups[slot] = 0;
+      nameHits[slot] = 0;
+    }
+    return slot;
+  }
+
+  private void lookup(int nameSlot) {
+    nameLookups[nameSlot]++;
+    if (++lookups == DECAY_INTERVAL) {
+      lookups = 0;
+      for (int i = 0; i < NAME_SLOTS; i++) {
+        nameLookups[i] >>>= 1;
+        nameHits[i] >>>= 1;
+      }
+      for (int i = 0; i < FIELD_SLOTS; i++) {
+        fieldHits[i] >>>= 1;
+      }
+    }
+  }
+
+  private static int fingerprint(int nameHash, byte[] value) {
+    int h = hash(nameHash, value);
+    // zero marks an empty slot
+    return h == 0 ? 1 : h;
+  }
+
+  private static int hash(int h, byte[] bytes) {
+    for (int i = 0; i < bytes.length; i++) {
+      h = 31 * h + bytes[i];
+    }
+    // spread the low bits used to pick a slot
+    return h ^ (h >>> 16);
+  }
+}
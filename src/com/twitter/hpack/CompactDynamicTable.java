@@ -0,0 +1,292 @@
+/*
+ * Copyright 2014 Twitter, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.twitter.hpack;
+
+import static com.twitter.hpack.HeaderField.HEADER_ENTRY_OVERHEAD;
+
+/**
+ * A dynamic table that packs all header fields into one byte ring.
+ * <p>
+ * The name and value of an entry are stored back to back in the ring and addressed by a
+ * parallel circular index of offsets, lengths and name hashes, so a table holds five arrays
+ * however many entries it contains. Lookups compare against the ring in place and only
+ * {@link #getEntry(int)}, {@link #getName(int)} and {@link #getValue(int)} copy bytes out.
+ * <p>
+ * The ring is as large as the table capacity. Since every entry also accounts for
+ * {@link HeaderField#HEADER_ENTRY_OVERHEAD} octets, the bytes of the live entries always fit.
+ */
+final class CompactDynamicTable implements HeaderTable {
+
+  private static final byte[] EMPTY = {};
+
+  // the bytes of all entries, wrapping around at the end
+  private byte[] ring = EMPTY;
+  private int writeOffset;
+
+  // a circular queue of entries
+  private int[] offsets;
+  private int[] nameLengths;
+  private int[] valueLengths;
+  private int[] hashes;
+  private int head;
+  private int tail;
+  private int length;
+
+  private int size;
+  private int capacity = -1; // ensure setCapacity creates the arrays
+
+  /**
+   * Creates a new dynamic table with the specified initial capacity.
+   */
+  CompactDynamicTable(int initialCapacity) {
+    setCapacity(initialCapacity);
+  }
+
+  @Override
+  public int length() {
+    return length;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public int capacity() {
+    return capacity;
+  }
+
+  @Override
+  public HeaderField getEntry(int index) {
+    return new HeaderField(getName(index), getValue(index));
+  }
+
+  @Override
+  public byte[] getName(int index) {
+    int slot = slot(index);
+    return copy(offsets[slot], nameLengths[slot]);
+  }
+
+  /**
+   * Return a copy of the value of the header field at the given index.
+   */
+  byte[] getValue(int index) {
+    int slot = slot(index);
+    return copy(wrap(offsets[slot] + nameLengths[slot]), valueLengths[slot]);
+  }
+
+  /**
+   * Returns the lowest index of an entry with the given name, or -1 if there is none.
+   */
+  int getIndex(byte[] name, int hash) {
+    int slot = head;
+    for (int index = 1; index <= length; index++) {
+      slot = slot == 0 ? offsets.length - 1 : slot - 1;
+      if (hashes[slot] == hash && regionEquals(offsets[slot], nameLengths[slot], name)) {
+        return index;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the lowest index of an entry with the given name and value, or -1 if there is none.
+   */
+  int getIndex(byte[] name, byte[] value, int hash) {
+    int slot = head;
+    for (int index = 1; index <= length; index++) {
+      slot = slot == 0 ? offsets.length - 1 : slot - 1;
+      if (hashes[slot] == hash &&
+          regionEquals(offsets[slot], nameLengths[slot], name) &&
+          regionEquals(wrap(offsets[slot] + nameLengths[slot]), valueLengths[slot], value)) {
+        return index;
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  public void add(byte[] name, byte[] value) {
+    add(name, value, 0);
+  }
+
+  /**
+   * Add the header field to the dynamic table, recording the hash used by {@link #getIndex}.
+   * Entries are evicted from the dynamic table until the size of the table
+   * and the new header field is less than or equal to the table's capacity.
+   * If the size of the new entry is larger than the table's capacity,
+   * the dynamic table will be cleared.
+   */
+  void add(byte[] name, byte[] value, int hash) {
+    int headerSize = HeaderField.sizeOf(name, value);
+    if (headerSize > capacity) {
+      clear();
+      return;
+    }
+    ensureCapacity(headerSize);
+    offsets[head] = writeOffset;
+    nameLengths[head] = name.length;
+    valueLengths[head] = value.length;
+    hashes[head] = hash;
+    write(name);
+    write(value);
+    if (++head == offsets.length) {
+      head = 0;
+    }
+    length++;
+    size += headerSize;
+  }
+
+  /**
+   * Evict the oldest entries until 'headerSize' more bytes fit in the dynamic table.
+   */
+  void ensureCapacity(int headerSize) {
+    while (length > 0 && size + headerSize > capacity) {
+      remove();
+    }
+  }
+
+  /**
+   * Remove the oldest header field from the dynamic table.
+   */
+  void remove() {
+    if (length == 0) {
+      return;
+    }
+    size -= nameLengths[tail] + valueLengths[tail] + HEADER_ENTRY_OVERHEAD;
+    if (++tail == offsets.length) {
+      tail = 0;
+    }
+    length--;
+  }
+
+  @Override
+  public void clear() {
+    head = 0;
+    tail = 0;
+    length = 0;
+    size = 0;
+    writeOffset = 0;
+  }
+
+  /**
+   * Set the maximum size of the dynamic table.
+   * Entries are evicted from the dynamic table until the size of the table
+   * is less than or equal to the maximum size, and the remaining entries are
+   * repacked into arrays sized for the new capacity.
+   */
+  @Override
+  public void setCapacity(int capacity) {
+    if (capacity < 0) {
+      throw new IllegalArgumentException("Illegal Capacity: "+ capacity);
+    }
+    if (this.capacity == capacity) {
+      return;
+    }
+    this.capacity = capacity;
+    while (size > capacity) {
+      remove();
+    }
+
+    int maxEntries = capacity / HEADER_ENTRY_OVERHEAD;
+    if (capacity % HEADER_ENTRY_OVERHEAD != 0) {
+      maxEntries++;
+    }
+
+    byte[] oldRing = ring;
+    int[] oldOffsets = offsets;
+    int[] oldNameLengths = nameLengths;
+    int[] oldValueLengths = valueLengths;
+    int[] oldHashes = hashes;
+    int oldTail = tail;
+    int len = length;
+
+    ring = capacity == 0 ? EMPTY : new byte[capacity];
+    offsets = new int[maxEntries];
+    nameLengths = new int[maxEntries];
+    valueLengths = new int[maxEntries];
+    hashes = new int[maxEntries];
+    clear();
+
+    // initially length will be 0 so there will be no copy
+    int cursor = oldTail;
+    for (int i = 0; i < len; i++) {
+      int entryLength = oldNameLengths[cursor] + oldValueLengths[cursor];
+      offsets[i] = writeOffset;
+      nameLengths[i] = oldNameLengths[cursor];
+      valueLengths[i] = oldValueLengths[cursor];
+      hashes[i] = oldHashes[cursor];
+      for (int j = 0, from = oldOffsets[cursor]; j < entryLength; j++) {
+        ring[writeOffset++] = oldRing[from++];
+        if (from == oldRing.length) {
+          from = 0;
+        }
+      }
+      size += entryLength + HEADER_ENTRY_OVERHEAD;
+      if (++cursor == oldOffsets.length) {
+        cursor = 0;
+      }
+    }
+    length = len;
+    head = len == maxEntries ? 0 : len;
+    writeOffset = wrap(writeOffset);
+  }
+
+  private int slot(int index) {
+    if (index <= 0 || index > length) {
+      throw new IndexOutOfBoundsException();
+    }
+    int i = head - index;
+    return i < 0 ? i + offsets.length : i;
+  }
+
+  private int wrap(int offset) {
+    return offset >= ring.length ? offset - ring.length : offset;
+  }
+
+  private void write(byte[] bytes) {
+    int first = Math.min(bytes.length, ring.length - writeOffset);
+    System.arraycopy(bytes, 0, ring, writeOffset, first);
+    System.arraycopy(bytes, first, ring, 0, bytes.length - first);
+    writeOffset = wrap(writeOffset + bytes.length);
+  }
+
+  private byte[] copy(int offset, int length) {
+    byte[] bytes = new byte[length];
+    int first = Math.min(length, ring.length - offset);
+    System.arraycopy(ring, offset, bytes, 0, first);
+    System.arraycopy(ring, 0, bytes, first, length - first);
+    return bytes;
+  }
+
+  /**
+   * A compare of a ring region that doesn't leak timing information, like {@link HpackUtil#equals}.
+   */
+  private boolean regionEquals(int offset, int length, byte[] bytes) {
+    if (length != bytes.length) {
+      return false;
+    }
+    char c = 0;
+    for (int i = 0; i < length; i++) {
+      c |= (ring[offset] ^ bytes[i]);
+      if (++offset == ring.length) {
+        offset = 0;
+      }
+    }
+    return c == 0;
+  }
+}
@@ -35,7 +35,7 @@ public final class Decoder {
 
   private static final byte[] EMPTY = {};
 
-  private final DynamicTable dynamicTable;
+  private final HeaderTable dynamicTable;
 
   private int maxHeaderSize;
   private int maxDynamicTableSize;
@@ -71,7 +71,18 @@ public final class Decoder {
    * Creates a new decoder.
    */
   public Decoder(int maxHeaderSize, int maxHeaderTableSize) {
-    dynamicTable = new DynamicTable(maxHeaderTableSize);
+    this(maxHeaderSize, maxHeaderTableSize, false);
+  }
+
+  /**
+   * Creates a new decoder.
+   * A compact decoder packs its dynamic table into a single byte array
+   * (see {@link CompactDynamicTable}) instead of holding objects per header field.
+   */
+  public Decoder(int maxHeaderSize, int maxHeaderTableSize, boolean compactTable) {
+    dynamicTable = compactTable
+        ? new CompactDynamicTable(maxHeaderTableSize)
+        : new DynamicTable(maxHeaderTableSize);
     this.maxHeaderSize = maxHeaderSize;
     maxDynamicTableSize = maxHeaderTableSize;
     encoderMaxDynamicTableSize = maxHeaderTableSize;
@@ -453,8 +464,7 @@ public final class Decoder {
       HeaderField headerField = StaticTable.getEntry(index);
       name = headerField.name;
     } else if (index - StaticTable.length <= dynamicTable.length()) {
-      HeaderField headerField = dynamicTable.getEntry(index - StaticTable.length);
-      name = headerField.name;
+      name = dynamicTable.getName(index - StaticTable.length);
     } else {
       throw ILLEGAL_INDEX_VALUE;
     }
@@ -481,7 +491,7 @@ public final class Decoder {
         break;
 
       case INCREMENTAL:
-        dynamicTable.add(new HeaderField(name, value));
+        dynamicTable.add(name, value);
         break;
 
       default:
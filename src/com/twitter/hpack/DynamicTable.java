@@ -17,7 +17,7 @@ package com.twitter.hpack;
 
 import static com.twitter.hpack.HeaderField.HEADER_ENTRY_OVERHEAD;
 
-final class DynamicTable {
+final class DynamicTable implements HeaderTable {
 
   // a circular queue of header fields
   HeaderField[] headerFields;
@@ -36,6 +36,7 @@ final class DynamicTable {
   /**
    * Return the number of header fields in the dynamic table.
    */
+  @Override
   public int length() {
     int length;
     if (head < tail) {
@@ -50,6 +51,7 @@ final class DynamicTable {
    * Return the current size of the dynamic table.
    * This is the sum of the size of the entries.
    */
+  @Override
   public int size() {
     return size;
   }
@@ -57,6 +59,7 @@ final class DynamicTable {
   /**
    * Return the maximum allowable size of the dynamic table.
    */
+  @Override
   public int capacity() {
     return capacity;
   }
@@ -66,6 +69,7 @@ final class DynamicTable {
    * The first and newest entry is always at index 1,
    * and the oldest entry is at the index length().
    */
+  @Override
   public HeaderField getEntry(int index) {
     if (index <= 0 || index > length()) {
       throw new IndexOutOfBoundsException();
@@ -78,6 +82,16 @@ final class DynamicTable {
     }
   }
 
+  @Override
+  public byte[] getName(int index) {
+    return getEntry(index).name;
+  }
+
+  @Override
+  public void add(byte[] name, byte[] value) {
+    add(new HeaderField(name, value));
+  }
+
   /**
    * Add the header field to the dynamic table.
    * Entries are evicted from the dynamic table until the size of the table
@@ -120,6 +134,7 @@ final class DynamicTable {
   /**
    * Remove all entries from the dynamic table.
    */
+  @Override
   public void clear() {
     while (tail != head) {
       headerFields[tail++] = null;
@@ -137,6 +152,7 @@ final class DynamicTable {
    * Entries are evicted from the dynamic table until the size of the table
    * is less than or equal to the maximum size.
    */
+  @Override
   public void setCapacity(int capacity) {
     if (capacity < 0) {
       throw new IllegalArgumentException("Illegal Capacity: "+ capacity);
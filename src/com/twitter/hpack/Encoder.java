@@ -21,6 +21,8 @@ import java.util.Arrays;
 
 import com.twitter.hpack.HpackUtil.IndexType;
 
+import static com.twitter.hpack.HpackUtil.requireNonNull;
+
 public final class Encoder {
 
   private static final int BUCKET_SIZE = 17;
@@ -31,6 +33,11 @@ public final class Encoder {
   private final boolean forceHuffmanOn;
   private final boolean forceHuffmanOff;
 
+  private final IndexingPolicy indexingPolicy;
+
+  // the dynamic table of a compact encoder, null if the linked hash map is used
+  private final CompactDynamicTable compactTable;
+
   // a linked hash map of header fields
   private final HeaderEntry[] headerFields = new HeaderEntry[BUCKET_SIZE];
   private final HeaderEntry head = new HeaderEntry(-1, EMPTY, EMPTY, Integer.MAX_VALUE, null);
@@ -38,10 +45,26 @@ public final class Encoder {
   private int capacity;
 
   /**
-   * Creates a new encoder.
+   * Creates a new encoder that uses an {@link AdaptiveIndexingPolicy}.
    */
   public Encoder(int maxHeaderTableSize) {
-    this(maxHeaderTableSize, true, false, false);
+    this(maxHeaderTableSize, new AdaptiveIndexingPolicy());
+  }
+
+  /**
+   * Creates a new encoder that consults the given policy before adding a header field to the dynamic table.
+   */
+  public Encoder(int maxHeaderTableSize, IndexingPolicy indexingPolicy) {
+    this(maxHeaderTableSize, indexingPolicy, false);
+  }
+
+  /**
+   * Creates a new encoder.
+   * A compact encoder packs its dynamic table into a single byte array
+   * (see {@link CompactDynamicTable}) instead of holding objects per header field.
+   */
+  public Encoder(int maxHeaderTableSize, IndexingPolicy indexingPolicy, boolean compactTable) {
+    this(maxHeaderTableSize, true, false, false, indexingPolicy, compactTable);
   }
 
   /**
@@ -52,6 +75,17 @@ public final class Encoder {
       boolean useIndexing,
       boolean forceHuffmanOn,
       boolean forceHuffmanOff
+  ) {
+    this(maxHeaderTableSize, useIndexing, forceHuffmanOn, forceHuffmanOff, IndexingPolicy.ALWAYS, false);
+  }
+
+  private Encoder(
+      int maxHeaderTableSize,
+      boolean useIndexing,
+      boolean forceHuffmanOn,
+      boolean forceHuffmanOff,
+      IndexingPolicy indexingPolicy,
+      boolean compactTable
   ) {
     if (maxHeaderTableSize < 0) {
       throw new IllegalArgumentException("Illegal Capacity: " + maxHeaderTableSize);
@@ -59,7 +93,9 @@ public final class Encoder {
     this.useIndexing = useIndexing;
     this.forceHuffmanOn = forceHuffmanOn;
     this.forceHuffmanOff = forceHuffmanOff;
+    this.indexingPolicy = requireNonNull(indexingPolicy);
     this.capacity = maxHeaderTableSize;
+    this.compactTable = compactTable ? new CompactDynamicTable(maxHeaderTableSize) : null;
     head.before = head.after = head;
   }
 
@@ -96,9 +132,10 @@ public final class Encoder {
       return;
     }
 
-    HeaderEntry headerField = getEntry(name, value);
-    if (headerField != null) {
-      int index = getIndex(headerField.index) + StaticTable.length;
+    int dynamicTableIndex = getIndex(name, value);
+    if (dynamicTableIndex != -1) {
+      indexingPolicy.hit(name, value);
+      int index = dynamicTableIndex + StaticTable.length;
       // Section 6.1. Indexed Header Field Representation
       encodeInteger(out, 0x80, 7, index);
     } else {
@@ -108,12 +145,13 @@ public final class Encoder {
         encodeInteger(out, 0x80, 7, staticTableIndex);
       } else {
         int nameIndex = getNameIndex(name);
-        if (useIndexing) {
+        boolean indexing = useIndexing && indexingPolicy.shouldIndex(name, value);
+        if (indexing) {
           ensureCapacity(headerSize);
         }
-        IndexType indexType = useIndexing ? IndexType.INCREMENTAL : IndexType.NONE;
+        IndexType indexType = indexing ? IndexType.INCREMENTAL : IndexType.NONE;
         encodeLiteral(out, name, value, indexType, nameIndex);
-        if (useIndexing) {
+        if (indexing) {
           add(name, value);
         }
       }
@@ -131,6 +169,9 @@ public final class Encoder {
       return;
     }
     capacity = maxHeaderTableSize;
+    if (compactTable != null) {
+      compactTable.setCapacity(capacity);
+    }
     ensureCapacity(0);
     encodeInteger(out, 0x20, 5, maxHeaderTableSize);
   }
@@ -167,10 +208,36 @@ public final class Encoder {
     }
   }
 
+  /**
+   * Encode the header field using only the static table.
+   * The encoding neither references nor changes the dynamic table, so it is valid
+   * in a header block produced by any encoder and can be cached and replayed.
+   */
+  public static void encodeStaticHeader(OutputStream out, byte[] name, byte[] value) throws IOException {
+    int staticTableIndex = StaticTable.getIndex(name, value);
+    if (staticTableIndex != -1) {
+      // Section 6.1. Indexed Header Field Representation
+      encodeInteger(out, 0x80, 7, staticTableIndex);
+      return;
+    }
+    // Section 6.2.2. Literal Header Field without Indexing
+    int nameIndex = StaticTable.getIndex(name);
+    encodeInteger(out, 0x00, 4, nameIndex == -1 ? 0 : nameIndex);
+    if (nameIndex == -1) {
+      encodeStringLiteral(out, name, false, false);
+    }
+    encodeStringLiteral(out, value, false, false);
+  }
+
   /**
    * Encode string literal according to Section 5.2.
    */
   private void encodeStringLiteral(OutputStream out, byte[] string) throws IOException {
+    encodeStringLiteral(out, string, forceHuffmanOn, forceHuffmanOff);
+  }
+
+  private static void encodeStringLiteral(OutputStream out, byte[] string, boolean forceHuffmanOn,
+      boolean forceHuffmanOff) throws IOException {
     int huffmanLength = Huffman.ENCODER.getEncodedLength(string);
     if ((huffmanLength < string.length && !forceHuffmanOff) || forceHuffmanOn) {
       encodeInteger(out, 0x80, 7, huffmanLength);
@@ -227,6 +294,10 @@ public final class Encoder {
    * Removes the oldest entry from the dynamic table until sufficient space is available.
    */
   private void ensureCapacity(int headerSize) throws IOException {
+    if (compactTable != null) {
+      compactTable.ensureCapacity(headerSize);
+      return;
+    }
     while (size + headerSize > capacity) {
       int index = length();
       if (index == 0) {
@@ -241,6 +312,9 @@ public final class Encoder {
    * Exposed for testing.
    */
   int length() {
+    if (compactTable != null) {
+      return compactTable.length();
+    }
     return size == 0 ? 0 : head.after.index - head.before.index + 1;
   }
 
@@ -249,7 +323,7 @@ public final class Encoder {
    * Exposed for testing.
    */
   int size() {
-    return size;
+    return compactTable != null ? compactTable.size() : size;
   }
 
   /**
@@ -257,6 +331,9 @@ public final class Encoder {
    * Exposed for testing.
    */
   HeaderField getHeaderField(int index) {
+    if (compactTable != null) {
+      return compactTable.getEntry(index + 1);
+    }
     HeaderEntry entry = head;
     while(index-- >= 0) {
       entry = entry.before;
@@ -264,6 +341,18 @@ public final class Encoder {
     return entry;
   }
 
+  /**
+   * Returns the lowest index value for the header field in the dynamic table.
+   * Returns -1 if the header field is not in the dynamic table.
+   */
+  private int getIndex(byte[] name, byte[] value) {
+    if (compactTable != null) {
+      return compactTable.getIndex(name, value, hash(name));
+    }
+    HeaderEntry headerField = getEntry(name, value);
+    return headerField == null ? -1 : getIndex(headerField.index);
+  }
+
   /**
    * Returns the header entry with the lowest index value for the header field.
    * Returns null if header field is not in the dynamic table.
@@ -292,6 +381,9 @@ public final class Encoder {
     if (length() == 0 || name == null) {
       return -1;
     }
+    if (compactTable != null) {
+      return compactTable.getIndex(name, hash(name));
+    }
     int h = hash(name);
     int i = index(h);
     int index = -1;
@@ -322,6 +414,10 @@ public final class Encoder {
    * the dynamic table will be cleared.
    */
   private void add(byte[] name, byte[] value) {
+    if (compactTable != null) {
+      compactTable.add(name, value, hash(name));
+      return;
+    }
     int headerSize = HeaderField.sizeOf(name, value);
 
     // Clear the table if the header field size is larger than the capacity.
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2014 Twitter, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.twitter.hpack;
+
+/**
+ * The storage of a decoder dynamic table.
+ * Indexes are 1-based: the first and newest entry is always at index 1,
+ * and the oldest entry is at the index length().
+ */
+interface HeaderTable {
+
+  /**
+   * Return the number of header fields in the dynamic table.
+   */
+  int length();
+
+  /**
+   * Return the current size of the dynamic table.
+   * This is the sum of the size of the entries.
+   */
+  int size();
+
+  /**
+   * Return the maximum allowable size of the dynamic table.
+   */
+  int capacity();
+
+  /**
+   * Return the header field at the given index.
+   */
+  HeaderField getEntry(int index);
+
+  /**
+   * Return the name of the header field at the given index.
+   * The returned array must not be modified.
+   */
+  byte[] getName(int index);
+
+  /**
+   * Add the header field to the dynamic table, evicting the oldest entries as needed.
+   * The table may keep references to the arrays, so they must not be modified afterwards.
+   */
+  void add(byte[] name, byte[] value);
+
+  /**
+   * Remove all entries from the dynamic table.
+   */
+  void clear();
+
+  /**
+   * Set the maximum size of the dynamic table.
+   */
+  void setCapacity(int capacity);
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2014 Twitter, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.twitter.hpack;
+
+/**
+ * Decides which header fields the encoder adds to the dynamic table.
+ * A policy observes a single encoder and need not be thread-safe.
+ */
+public interface IndexingPolicy {
+
+  /**
+   * A policy that indexes every header field, which is the behaviour described in the specification examples.
+   */
+  IndexingPolicy ALWAYS = new IndexingPolicy() {
+    @Override
+    public boolean shouldIndex(byte[] name, byte[] value) {
+      return true;
+    }
+
+    @Override
+    public void hit(byte[] name, byte[] value) {
+    }
+  };
+
+  /**
+   * Returns whether a header field that is not in the dynamic table should be added to it.
+   * The name and value byte arrays must not be modified.
+   */
+  boolean shouldIndex(byte[] name, byte[] value);
+
+  /**
+   * hit is called by the encoder when a header field was found in the dynamic table.
+   * The name and value byte arrays must not be modified.
+   */
+  void hit(byte[] name, byte[] value);
+}
@@ -0,0 +1,103 @@
+package com.twitter.hpack.test;
+
+import com.twitter.hpack.AdaptiveIndexingPolicy;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdaptiveIndexingPolicyTest {
+    private AdaptiveIndexingPolicy policy;
+    // Fields the simulated encoder holds in its dynamic table
+    private Set<String> table;
+
+    @BeforeEach
+    void setUp() {
+        policy = new AdaptiveIndexingPolicy();
+        table = new HashSet<>();
+    }
+
+    /**
+     * Sends a field the way the encoder does: a dynamic table hit if it is indexed, otherwise
+     * a question to the policy.
+     *
+     * @return true if the field is in the dynamic table after it was sent.
+     */
+    private boolean send(String name, String value) {
+        byte[] nameBytes = name.getBytes(StandardCharsets.US_ASCII);
+        byte[] valueBytes = value.getBytes(StandardCharsets.US_ASCII);
+        String field = name + ": " + value;
+        if (table.contains(field)) {
+            policy.hit(nameBytes, valueBytes);
+            return true;
+        }
+        if (policy.shouldIndex(nameBytes, valueBytes)) {
+            table.add(field);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Makes a name cold with values that never repeat.
+     */
+    private void coolDown(String name) {
+        for (int i = 0; i < 64; i++) {
+            send(name, "unique-" + i);
+        }
+    }
+
+    @Test
+    void testFirstSightingIsLiteral() {
+        assertFalse(send("user-agent", "megex"));
+        assertTrue(send("user-agent", "megex"));
+    }
+
+    @Test
+    void testColdNameIsNotIndexed() {
+        coolDown("x-request-id");
+        assertFalse(send("x-request-id", "settled"));
+        assertFalse(send("x-request-id", "settled"));
+    }
+
+    @Test
+    void testColdNameRecoversWhenValuesSettle() {
+        coolDown("x-request-id");
+        boolean isIndexed = false;
+        for (int i = 0; i < 4 * 16 && !isIndexed; i++) {
+            isIndexed = send("x-request-id", "settled");
+        }
+        assertTrue(isIndexed, "a settled value of a cold name is never indexed");
+
+        // Its hits warm the name up, so new values are indexed on their second sighting again
+        for (int i = 0; i < 64; i++) {
+            send("x-request-id", "settled");
+        }
+        assertFalse(send("x-request-id", "other"));
+        assertTrue(send("x-request-id", "other"));
+    }
+
+    @Test
+    void testPinnedFieldSurvivesColdName() {
+        for (int i = 0; i < 8; i++) {
+            send(":path", "/style.css");
+        }
+        // The unique values do not share a field slot with the pinned one
+        coolDown(":path");
+        // Evicted from the dynamic table, the pinned field is indexed again at once
+        table.clear();
+        assertTrue(send(":path", "/style.css"));
+    }
+
+    @Test
+    void testIllegalArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveIndexingPolicy(101, 4));
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveIndexingPolicy(10, 0));
+    }
+}
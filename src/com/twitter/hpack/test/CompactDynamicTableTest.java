@@ -0,0 +1,77 @@
+package com.twitter.hpack.test;
+
+import com.twitter.hpack.Decoder;
+import com.twitter.hpack.Encoder;
+import com.twitter.hpack.IndexingPolicy;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks the compact dynamic table against the linked one through the encoder and decoder, which
+ * must behave identically whichever storage they use.
+ */
+class CompactDynamicTableTest {
+    private static final int BLOCKS = 500;
+    private static final int MAX_HEADER_SIZE = 64 * 1024;
+
+    @ParameterizedTest
+    @ValueSource(longs = {1, 2, 3, 42, 2024})
+    void testEquivalentToDynamicTable(long seed) throws IOException {
+        Random random = new Random(seed);
+        Encoder linkedEncoder = new Encoder(4096, IndexingPolicy.ALWAYS, false);
+        Encoder compactEncoder = new Encoder(4096, IndexingPolicy.ALWAYS, true);
+        Decoder linkedDecoder = new Decoder(MAX_HEADER_SIZE, 4096, false);
+        Decoder compactDecoder = new Decoder(MAX_HEADER_SIZE, 4096, true);
+
+        for (int block = 0; block < BLOCKS; block++) {
+            ByteArrayOutputStream linkedOut = new ByteArrayOutputStream();
+            ByteArrayOutputStream compactOut = new ByteArrayOutputStream();
+            if (random.nextInt(10) == 0) {
+                // Resize, down to an empty table and past the initial size
+                int size = random.nextInt(4) == 0 ? 0 : random.nextInt(8192);
+                linkedDecoder.setMaxHeaderTableSize(size);
+                compactDecoder.setMaxHeaderTableSize(size);
+                linkedEncoder.setMaxHeaderTableSize(linkedOut, size);
+                compactEncoder.setMaxHeaderTableSize(compactOut, size);
+            }
+            List<String> fields = new ArrayList<>();
+            int count = 1 + random.nextInt(8);
+            for (int i = 0; i < count; i++) {
+                // Few names and a skewed choice of values, so fields repeat, hit and get evicted
+                String name = "x-name-" + random.nextInt(6);
+                String value = "v" + Math.abs((int) random.nextGaussian() * 8) + "-".repeat(random.nextInt(4) == 0 ? random.nextInt(600) : 0);
+                fields.add(name + ": " + value);
+                linkedEncoder.encodeHeader(linkedOut, bytes(name), bytes(value), false);
+                compactEncoder.encodeHeader(compactOut, bytes(name), bytes(value), false);
+            }
+            assertArrayEquals(linkedOut.toByteArray(), compactOut.toByteArray(), "block " + block);
+
+            assertEquals(fields, decode(linkedDecoder, linkedOut.toByteArray()), "block " + block);
+            assertEquals(fields, decode(compactDecoder, compactOut.toByteArray()), "block " + block);
+            assertEquals(linkedDecoder.getMaxHeaderTableSize(), compactDecoder.getMaxHeaderTableSize());
+        }
+    }
+
+    private static List<String> decode(Decoder decoder, byte[] block) throws IOException {
+        List<String> fields = new ArrayList<>();
+        decoder.decode(new ByteArrayInputStream(block),
+                (name, value, sensitive) -> fields.add(new String(name, StandardCharsets.US_ASCII) + ": " + new String(value, StandardCharsets.US_ASCII)));
+        decoder.endHeaderBlock();
+        return fields;
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+}
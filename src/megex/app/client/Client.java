@@ -91,7 +91,7 @@ public class Client {
             sendSettingsFrame(framer, messageFactory);
 
             // Wait for the server's SETTINGS frame
-            waitForServerSettingsFrame(deframer, messageFactory);
+            waitForServerSettingsFrame(framer, deframer, messageFactory);
 
             // Prepare to send request headers and process incoming frames
             int streamId = 1;
@@ -142,23 +142,42 @@ public class Client {
 
     /**
      * Waits for a SETTINGS frame from the server.
+     * @param framer the framer for encoding outgoing frames
      * @param deframer the deframer for decoding incoming frames
      * @param messageFactory the message factory for decoding frames
      * @throws IOException if an I/O error occurs
      * @throws BadAttributeException if there is a problem with the frame attributes
      */
-    private static void waitForServerSettingsFrame(Deframer deframer, MessageFactory messageFactory) throws IOException, BadAttributeException {
+    private static void waitForServerSettingsFrame(Framer framer, Deframer deframer, MessageFactory messageFactory) throws IOException, BadAttributeException {
         boolean receivedSettings = false;
         while (!receivedSettings) {
             byte[] response = deframer.getFrame();
             Message frame = messageFactory.decode(response);
             System.out.println("Received frame in waitForServerSettingsFrame: " + frame.toString());
-            if (frame instanceof Settings) {
+            if (frame instanceof Settings && !((Settings) frame).isAck()) {
+                applySettings((Settings) frame, framer, messageFactory);
                 receivedSettings = true;
             }
         }
     }
 
+    /**
+     * Applies the server's SETTINGS parameters and acknowledges them, which tells the server it may
+     * shrink its decoder table.
+     * @param settings the SETTINGS frame received from the server
+     * @param framer the framer for encoding outgoing frames
+     * @param messageFactory the message factory whose encoder must respect the server's limits
+     * @throws IOException if an I/O error occurs
+     * @throws BadAttributeException if there is a problem with the frame attributes
+     */
+    private static void applySettings(Settings settings, Framer framer, MessageFactory messageFactory) throws IOException, BadAttributeException {
+        Long headerTableSize = settings.getSetting(Settings.HEADER_TABLE_SIZE);
+        if (headerTableSize != null) {
+            messageFactory.setPeerHeaderTableSize((int) Math.min(headerTableSize, Integer.MAX_VALUE));
+        }
+        framer.putFrame(messageFactory.encode(new Settings(true)));
+    }
+
     /**
      * Sends a HEADER frame to the server with the request information.
      * @param args the command-line arguments
@@ -270,6 +289,11 @@ public class Client {
             } else if (frame instanceof Settings) {
                 Settings settingsFrame = (Settings) frame;
                 System.out.println("Received SETTINGS frame: " + settingsFrame.toString());
+                if (settingsFrame.isAck()) {
+                    messageFactory.settingsAcknowledged();
+                } else {
+                    applySettings(settingsFrame, framer, messageFactory);
+                }
             }
 
             } catch (IllegalIndexException e) {
@@ -0,0 +1,66 @@
+/************************************************
+ *
+ * Author: Abanisenioluwa K. Orojo
+ * Assignment: Program 2
+ * Class: CSI 5325
+ *
+ ************************************************/
+package megex.app.server;
+
+import java.util.Locale;
+
+/**
+ * AcceptEncoding reads the accept-encoding request header, as in "gzip, deflate;q=0.5, *;q=0".
+ * Gzip is the only coding the server produces, so all it needs to know is whether the client takes
+ * it: named with a quality above zero, or covered by a "*" that is.
+ */
+public final class AcceptEncoding {
+    private AcceptEncoding() {
+    }
+
+    /**
+     * Returns whether a client accepts gzip.
+     *
+     * @param header The value of the accept-encoding header, or null.
+     * @return true if a gzip body may be sent.
+     */
+    public static boolean acceptsGzip(String header) {
+        if (header == null) {
+            return false;
+        }
+        boolean isWildcardAccepted = false;
+        for (String element : header.split(",")) {
+            int semicolon = element.indexOf(';');
+            String coding = (semicolon < 0 ? element : element.substring(0, semicolon)).trim().toLowerCase(Locale.ROOT);
+            boolean isAccepted = semicolon < 0 || quality(element.substring(semicolon + 1)) > 0;
+            if (coding.equals("gzip") || coding.equals("x-gzip")) {
+                // A named coding overrides the wildcard
+                return isAccepted;
+            }
+            if (coding.equals("*")) {
+                isWildcardAccepted = isAccepted;
+            }
+        }
+        return isWildcardAccepted;
+    }
+
+    /**
+     * Parses the parameters of an element for its quality.
+     *
+     * @return The quality, 1 if there is none, or 0 if it is not valid.
+     */
+    private static double quality(String parameters) {
+        for (String parameter : parameters.split(";")) {
+            int equals = parameter.indexOf('=');
+            if (equals < 0 || !parameter.substring(0, equals).trim().equalsIgnoreCase("q")) {
+                continue;
+            }
+            try {
+                return Double.parseDouble(parameter.substring(equals + 1).trim());
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+        return 1;
+    }
+}
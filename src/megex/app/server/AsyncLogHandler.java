@@ -0,0 +1,185 @@
+/************************************************
+ *
+ * Author: Abanisenioluwa K. Orojo
+ * Assignment: Program 2
+ * Class: CSI 5325
+ *
+ ************************************************/
+package megex.app.server;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.*;
+
+/**
+ * AsyncLogHandler writes log records to a file on a background thread. Publishing only puts the
+ * record in a fixed ring buffer; the writer thread takes whatever has accumulated, formats it and
+ * writes it with a single flush per batch, so threads serving connections never wait for the disk
+ * or for formatting.
+ *
+ * When the ring is full, records below WARNING are dropped and counted, and the count is written
+ * with the next batch. WARNING and above wait for room instead, so errors are never lost.
+ */
+public class AsyncLogHandler extends Handler {
+    private final LogRecord[] ring;
+    private final LogRecord[] batch;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final Writer writer;
+    private final Thread worker;
+    private long head;
+    private long tail;
+    private long dropped;
+    private boolean isWriterWaiting = false;
+    private boolean isClosed = false;
+
+    /**
+     * Constructs an AsyncLogHandler writing to a file, replacing its contents, and starts its
+     * writer thread. Records are formatted with a {@link MicrosecondFormatter} unless another
+     * formatter is set.
+     *
+     * @param fileName The log file.
+     * @param capacity The number of records the ring holds.
+     * @throws IOException if the file cannot be opened.
+     */
+    public AsyncLogHandler(String fileName, int capacity) throws IOException {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        this.ring = new LogRecord[capacity];
+        this.batch = new LogRecord[capacity];
+        this.writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(fileName), StandardCharsets.UTF_8), 64 * 1024);
+        setFormatter(new MicrosecondFormatter());
+        this.worker = new Thread(this::run, "megex-log");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Queues a record for the writer thread.
+     *
+     * @param record The log record.
+     */
+    @Override
+    public void publish(LogRecord record) {
+        if (!isLoggable(record)) {
+            return;
+        }
+        boolean mustWait = record.getLevel().intValue() >= Level.WARNING.intValue();
+        lock.lock();
+        try {
+            while (!isClosed && tail - head == ring.length) {
+                if (!mustWait) {
+                    dropped++;
+                    return;
+                }
+                notFull.awaitUninterruptibly();
+            }
+            if (isClosed) {
+                return;
+            }
+            ring[(int) (tail++ % ring.length)] = record;
+            if (isWriterWaiting) {
+                notEmpty.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Does nothing; the writer thread flushes after each batch.
+     */
+    @Override
+    public void flush() {
+    }
+
+    /**
+     * Writes the records still queued, then stops the writer thread and closes the file.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (isClosed) {
+                return;
+            }
+            isClosed = true;
+            notEmpty.signal();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        boolean isDone = false;
+        while (!isDone) {
+            int count;
+            long droppedRecords;
+            lock.lock();
+            try {
+                if (tail == head && !isClosed) {
+                    isWriterWaiting = true;
+                    try {
+                        notEmpty.await();
+                    } catch (InterruptedException e) {
+                        // Only close stops the writer
+                    }
+                    isWriterWaiting = false;
+                }
+                count = (int) (tail - head);
+                for (int i = 0; i < count; i++) {
+                    int index = (int) (head++ % ring.length);
+                    batch[i] = ring[index];
+                    ring[index] = null;
+                }
+                droppedRecords = dropped;
+                dropped = 0;
+                isDone = isClosed && count == 0;
+                if (count > 0) {
+                    notFull.signalAll();
+                }
+            } finally {
+                lock.unlock();
+            }
+            write(count, droppedRecords);
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            reportError("Error while closing the log file", e, ErrorManager.CLOSE_FAILURE);
+        }
+    }
+
+    private void write(int count, long droppedRecords) {
+        try {
+            if (droppedRecords > 0) {
+                writer.write("Log buffer full, dropped " + droppedRecords + " records" + System.lineSeparator());
+            }
+            Formatter formatter = getFormatter();
+            for (int i = 0; i < count; i++) {
+                LogRecord record = batch[i];
+                batch[i] = null;
+                try {
+                    writer.write(formatter.format(record));
+                } catch (RuntimeException e) {
+                    reportError("Error while formatting a log record", e, ErrorManager.FORMAT_FAILURE);
+                }
+            }
+            if (count > 0 || droppedRecords > 0) {
+                writer.flush();
+            }
+        } catch (IOException e) {
+            reportError("Error while writing the log file", e, ErrorManager.WRITE_FAILURE);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/************************************************
+ *
+ * Author: Abanisenioluwa K. Orojo
+ * Assignment: Program 2
+ * Class: CSI 5325
+ *
+ ************************************************/
+package megex.app.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * BodySource supplies the bytes of a response body in DATA frame sized pieces. Sources that keep
+ * the body as encoded DATA frames can also hand out runs of whole frames.
+ */
+public interface BodySource extends Closeable {
+    /**
+     * Returns how many bytes the sender should take flow control credit for next. Reads of up to
+     * that many bytes return a single piece.
+     *
+     * @param max          The most bytes the sender wants to send in one go.
+     * @param maxFrameSize The maximum payload of one DATA frame.
+     * @return The number of bytes, at least 1 if max is.
+     */
+    default int nextLength(int max, int maxFrameSize) {
+        return Math.min(max, maxFrameSize);
+    }
+
+    /**
+     * Reads the next pieces of the body as encoded DATA frames with stream ID 0, if the source has
+     * them and is at a frame boundary. Credit the frames do not use is read with {@link #read(int)}.
+     *
+     * @param length The number of body bytes the sender has credit for.
+     * @return Whole frames carrying at most length body bytes, or null.
+     */
+    default ByteBuffer readFrames(int length) {
+        return null;
+    }
+
+    /**
+     * Reads the next piece of the body. The returned buffer is only valid until the next call.
+     *
+     * @param length The number of bytes wanted.
+     * @return The bytes, fewer than wanted only at the end of the body.
+     * @throws IOException if the body cannot be read.
+     */
+    ByteBuffer read(int length) throws IOException;
+
+    /**
+     * Returns whether the body has been read to its end. Only asked of bodies sent without a
+     * known length, such as one compressed while it is sent, so the sender can end the stream
+     * with the last piece.
+     *
+     * @return true if no bytes are left.
+     */
+    default boolean isAtEnd() {
+        return false;
+    }
+}
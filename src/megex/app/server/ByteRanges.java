@@ -0,0 +1,141 @@
+/************************************************
+ *
+ * Author: Abanisenioluwa K. Orojo
+ * Assignment: Program 2
+ * Class: CSI 5325
+ *
+ ************************************************/
+package megex.app.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * ByteRanges parses the range request header, as in "bytes=0-499, 1000-, -200", against the size
+ * of the document being requested. A header the server does not understand is ignored and the
+ * whole document is sent, as HTTP allows; a header it understands but whose ranges all lie past
+ * the end of the document is answered with 416.
+ */
+public final class ByteRanges {
+    /**
+     * The most ranges served in one response. Requests for more get the whole document, so a
+     * client cannot make the server open the file once per tiny range.
+     */
+    public static final int MAX_RANGES = 16;
+
+    private static final String UNIT = "bytes=";
+
+    private ByteRanges() {
+    }
+
+    /**
+     * Parses a range header.
+     *
+     * @param header The value of the range header.
+     * @param size   The size of the document in bytes.
+     * @return The satisfiable ranges in the order requested, an empty list if none is satisfiable,
+     * or null if the header should be ignored.
+     */
+    public static List<Range> parse(String header, long size) {
+        if (header.length() < UNIT.length() || !header.substring(0, UNIT.length()).toLowerCase(Locale.ROOT).equals(UNIT)) {
+            return null;
+        }
+        List<Range> ranges = new ArrayList<>();
+        int specs = 0;
+        for (String spec : header.substring(UNIT.length()).split(",", -1)) {
+            spec = spec.trim();
+            if (spec.isEmpty()) {
+                continue;
+            }
+            if (++specs > MAX_RANGES) {
+                return null;
+            }
+            int dash = spec.indexOf('-');
+            if (dash < 0) {
+                return null;
+            }
+            long first = parseNumber(spec.substring(0, dash));
+            long last = parseNumber(spec.substring(dash + 1));
+            if (dash == 0) {
+                // Suffix range: the last bytes of the document
+                if (last < 0) {
+                    return null;
+                }
+                if (last > 0 && size > 0) {
+                    ranges.add(new Range(Math.max(0, size - last), size - 1));
+                }
+                continue;
+            }
+            if (first < 0 || (dash < spec.length() - 1 && (last < 0 || last < first))) {
+                return null;
+            }
+            if (first < size) {
+                ranges.add(new Range(first, dash == spec.length() - 1 ? size - 1 : Math.min(last, size - 1)));
+            }
+        }
+        return specs == 0 ? null : ranges;
+    }
+
+    /**
+     * Parses the digits of a range bound.
+     *
+     * @return The number, or -1 if the text is not a number that fits a long.
+     */
+    private static long parseNumber(String text) {
+        if (text.isEmpty()) {
+            return -1;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) < '0' || text.charAt(i) > '9') {
+                return -1;
+            }
+        }
+        try {
+            return Long.parseLong(text);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * A satisfiable range of a document.
+     */
+    public static final class Range {
+        private final long first;
+        private final long last;
+
+        private Range(long first, long last) {
+            this.first = first;
+            this.last = last;
+        }
+
+        /**
+         * Returns the offset of the first byte of the range.
+         *
+         * @return The offset.
+         */
+        public long first() {
+            return first;
+        }
+
+        /**
+         * Returns the number of bytes in the range.
+         *
+         * @return The length.
+         */
+        public long length() {
+            return last - first + 1;
+        }
+
+        /**
+         * Returns the value of the content-range header for the range.
+         *
+         * @param size The size of the whole document.
+         * @return The content range, as in "bytes 0-499/1234".
+         */
+        public String contentRange(long size) {
+            return "bytes " + first + "-" + last + "/" + size;
+        }
+    }
+}
@@ -11,27 +11,27 @@ import megex.serialization.*;
 
 import java.io.*;
 import java.net.*;
-import java.nio.file.*;
 import java.util.Arrays;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.logging.*;
-import java.util.concurrent.*;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import javax.net.ssl.SSLSocket;
 
 /**
- * A Runnable class responsible for handling client connections.
+ * A Runnable class responsible for handling client connections on a blocking socket.
  */
 public class ClientHandler implements Runnable {
-    public static int MAXDATASIZE;
-    public static int MINDATAINTERVAL;
     private final Socket clientSocket;
-    private final String documentRoot;
     private final Logger logger;
-    private final ConcurrentMap<Integer, Boolean> activeStreamIds;
-    private final ConcurrentHashMap<Integer, AtomicInteger> streamWindowSizeMap = new ConcurrentHashMap<>();
+    private final Connection connection;
+    private final ConnectionEvent connectionEvent = new ConnectionEvent();
     private static final String CLIENT_PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n";
-    private final ExecutorService threadPool;
+    // Closes the sockets of expired connections for all handlers, off the timer thread
+    private static final ExecutorService CLOSER = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "megex-timeout");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     /**
      * Constructs a new ClientHandler.
@@ -40,21 +40,27 @@ public class ClientHandler implements Runnable {
      * @param documentRoot   The root directory of the server.
      * @param logger         The logger for logging events.
      * @param MAXDATASIZE    The maximum size of data to be sent.
-     * @param MINDATAINTERVAL The minimum interval between data transmissions.
+     * @param streamExecutor The executor serving the streams of this connection.
+     * @param timerWheel     The timer pacing DATA frames and checking the connection timeouts.
+     * @param templates      The pre-encoded response header blocks.
+     * @param config         The server configuration.
+     * @param headerTableBudget The HPACK table memory budget shared by all connections.
+     * @param contentCache   The cache of popular documents shared by all connections.
+     * @param pathCache      The cache of resolved request paths shared by all connections.
+     * @param variantCache   The cache of compressed documents shared by all connections.
+     * @param metrics        The server metrics.
+     * @throws IOException if the socket output stream cannot be opened.
      */
-    public ClientHandler(Socket clientSocket, String documentRoot, Logger logger, int MAXDATASIZE, int MINDATAINTERVAL, int numThreads) {
+    public ClientHandler(Socket clientSocket, String documentRoot, Logger logger, int MAXDATASIZE, StreamScheduler.ConnectionExecutor streamExecutor, TimerWheel timerWheel, ResponseTemplates templates,
+                         ServerConfig config, HeaderTableBudget headerTableBudget, ContentCache contentCache,
+                         PathCache pathCache, VariantCache variantCache, ServerMetrics metrics) throws IOException {
+        connectionEvent.begin();
         this.clientSocket = clientSocket;
-        this.documentRoot = documentRoot;
         this.logger = logger;
-        ClientHandler.MAXDATASIZE = MAXDATASIZE;
-        ClientHandler.MINDATAINTERVAL = MINDATAINTERVAL;
-        this.activeStreamIds = new ConcurrentHashMap<>();
-        this.threadPool = Executors.newFixedThreadPool(numThreads);
-        try {
-            clientSocket.setSoTimeout(40 * 1000); // 40 seconds timeout
-        } catch (SocketException e) {
-            logger.log(Level.SEVERE, "Error while setting socket timeout", e);
-        }
+        this.connection = new Connection(new Framer(new TimedOutputStream(clientSocket.getOutputStream())), documentRoot, logger, MAXDATASIZE,
+                streamExecutor, timerWheel, templates, config, headerTableBudget, contentCache, pathCache, variantCache, metrics);
+        // The deadlines close the socket, which wakes the thread blocked on it
+        connection.getTimeouts().start(this::expire);
     }
 
     /**
@@ -63,14 +69,23 @@ public class ClientHandler implements Runnable {
     @Override
     public void run() {
         try {
-            InputStream inputStream = clientSocket.getInputStream();
-            OutputStream outputStream = clientSocket.getOutputStream();
+            if (clientSocket instanceof SSLSocket) {
+                try {
+                    handshake((SSLSocket) clientSocket);
+                } catch (IOException e) {
+                    if (!connection.getTimeouts().isExpired()) {
+                        logger.log(Level.WARNING, "TLS handshake failed", e);
+                    }
+                    return;
+                }
+            } else {
+                connection.getTimeouts().handshakeCompleted();
+            }
+            InputStream inputStream = new TimedInputStream(clientSocket.getInputStream());
             BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
 
 
-            Framer framer = new Framer(outputStream);
             Deframer deframer = new Deframer(inputStream);
-            MessageFactory messageFactory = new MessageFactory();
 
 
             // Check if the first thing received is the preface
@@ -79,48 +94,26 @@ public class ClientHandler implements Runnable {
             String receivedPreface = new String(prefaceBuffer);
 
             if (bytesRead != CLIENT_PREFACE.length() || !receivedPreface.equals(CLIENT_PREFACE)) {
-                logger.log(Level.WARNING, "Bad preface: " + String.join("", new String(prefaceBuffer)));
+                logger.log(Level.WARNING, "Bad preface: {0}", receivedPreface);
                 clientSocket.close();
                 return;
             }
 
-            logger.log(Level.WARNING, "Bad preface: " + Arrays.toString(prefaceBuffer));
+            logger.log(Level.WARNING, () -> "Bad preface: " + Arrays.toString(prefaceBuffer));
 
-            sendSettingsFrame(framer, messageFactory, logger);
+            connection.open();
 
             // Inside the run() method, after sending the Settings frame
             while (true) {
                 try {
-                    byte[] receivedFrame = deframer.getFrame();
-                    Message message = messageFactory.decode(receivedFrame);
-                    logger.log(Level.INFO, "Received frame: " + message);
-
-                    if (message instanceof Headers) {
-                        Runnable task = () -> {
-                            try {
-                                handleHeadersFrame((Headers) message, framer, messageFactory);
-                            } catch (IOException | BadAttributeException e) {
-                                logger.log(Level.SEVERE, "Error while handling Headers frame", e);
-                            }
-                        };
-                        threadPool.submit(task);
-                    } else if (message instanceof Settings) {
-                        logger.log(Level.INFO, "Received Settings message: " + message);
-                    } else if (message instanceof Window_Update) {
-                        handleWindowUpdateFrame((Window_Update) message);
-                    } else if (message instanceof Data) {
-                        logger.log(Level.WARNING, "Unexpected Data message: " + message);
-                    } else {
-                        logger.log(Level.WARNING, "Unexpected message: " + message.toString());
-                    }
+                    connection.handleFrame(deframer.getFrame());
                 } catch (EOFException e) {
                     // End of stream, close the connection
                     break;
-                } catch (SocketTimeoutException e) {
-                    logger.log(Level.WARNING, "Connection timed out after 40 seconds of inactivity");
-                    break;
                 } catch (IOException e) {
-                    logger.log(Level.SEVERE, "Error while reading frame", e);
+                    if (!connection.getTimeouts().isExpired()) {
+                        logger.log(Level.SEVERE, "Error while reading frame", e);
+                    }
                     break;
                 } catch (BadAttributeException e) {
                     logger.log(Level.SEVERE, "Error while decoding frame", e);
@@ -130,126 +123,129 @@ public class ClientHandler implements Runnable {
             clientSocket.close();
 
         } catch (BadAttributeException | IOException e) {
-            throw new RuntimeException(e);
+            if (!connection.getTimeouts().isExpired()) {
+                throw new RuntimeException(e);
+            }
         } finally {
+            connection.close();
             try {
                 logger.log(Level.INFO, "Closing connection");
                 clientSocket.close();
             } catch (IOException e) {
                 logger.log(Level.SEVERE, "Error while closing the connection", e);
             }
+            if (connectionEvent.shouldCommit()) {
+                connectionEvent.remoteAddress = String.valueOf(clientSocket.getRemoteSocketAddress());
+                connectionEvent.engine = "blocking";
+                connectionEvent.streams = connection.getStreamCount();
+                connectionEvent.bytesReceived = connection.getBytesReceived();
+                connectionEvent.bytesSent = connection.getBytesSent();
+                connectionEvent.commit();
+            }
         }
     }
 
-    private static void sendSettingsFrame(Framer framer, MessageFactory messageFactory, Logger logger) throws IOException, BadAttributeException {
-        Settings settingsFrame = new Settings();
-        byte[] encodedSettingFrame = messageFactory.encode(settingsFrame);
-        framer.putFrame(encodedSettingFrame);
-        logger.log(Level.INFO, "Sent Settings frame: " + settingsFrame);
+    /**
+     * Runs the TLS handshake, which the accepting thread leaves to the connection.
+     */
+    private void handshake(SSLSocket socket) throws IOException {
+        HandshakeEvent handshakeEvent = new HandshakeEvent();
+        handshakeEvent.begin();
+        long start = System.nanoTime();
+        socket.startHandshake();
+        connection.handshakeCompleted(System.nanoTime() - start);
+        if (handshakeEvent.shouldCommit()) {
+            handshakeEvent.remoteAddress = String.valueOf(socket.getRemoteSocketAddress());
+            handshakeEvent.protocol = socket.getSession().getProtocol();
+            handshakeEvent.cipherSuite = socket.getSession().getCipherSuite();
+            handshakeEvent.applicationProtocol = socket.getApplicationProtocol();
+            handshakeEvent.commit();
+        }
     }
 
-    private void handleHeadersFrame(Headers headersFrame, Framer framer,MessageFactory messageFactory) throws IOException, BadAttributeException {
-        int streamId = headersFrame.getStreamID();
+    /**
+     * Resets the connection once one of its deadlines has passed. Without a linger time, closing
+     * the TLS socket gives up on close_notify when a writer is blocked instead of waiting for it.
+     * Called on the timer thread, so the socket is closed on the closer thread shared by all
+     * connections, which keeps a burst of expiries from starting a thread each.
+     */
+    private void expire(String reason) {
+        logger.log(Level.WARNING, "Closing connection: {0}", reason);
+        CLOSER.execute(() -> {
+            try {
+                clientSocket.setSoLinger(true, 0);
+                clientSocket.close();
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Error while closing the connection", e);
+            }
+        });
+    }
 
-        // Check for illegal stream ID
-        if (streamId % 2 == 0 || streamId <= 0) {
-            logger.log(Level.WARNING, "Illegal stream ID: " + headersFrame);
-            return;
+    /**
+     * Reports the bytes read from the client to the connection timeouts, so a frame the client
+     * starts must be finished in time.
+     */
+    private final class TimedInputStream extends FilterInputStream {
+        TimedInputStream(InputStream in) {
+            super(in);
         }
 
-        // Check for duplicate stream ID
-        if (activeStreamIds.putIfAbsent(streamId, true) != null) {
-            logger.log(Level.WARNING, "Duplicate request: " + headersFrame);
-            return;
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) {
+                connection.getTimeouts().frameStarted();
+            }
+            return b;
         }
 
-        // Extract the requested path from the headers
-        String path = headersFrame.getValue(":path");
-        if (path == null) {
-            logger.log(Level.WARNING, "No path");
-            sendStatusHeaders(streamId, 400, framer, messageFactory); // :status 400
-            // Terminate the stream
-            return;
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int bytesRead = in.read(b, off, len);
+            if (bytesRead > 0) {
+                connection.getTimeouts().frameStarted();
+            }
+            return bytesRead;
         }
+    }
 
-        Path filePath = Paths.get(documentRoot, path);
-        if (Files.isDirectory(filePath)) {
-            logger.log(Level.WARNING, "Cannot request directory");
-            sendStatusHeaders(streamId, 403, framer, messageFactory); // :status 403
-            // Terminate the stream
-            return;
+    /**
+     * Reports blocking writes to the connection timeouts, so a client that stops reading cannot
+     * hold a writer forever.
+     */
+    private final class TimedOutputStream extends FilterOutputStream {
+        TimedOutputStream(OutputStream out) {
+            super(out);
         }
 
-        if (!Files.exists(filePath) || !Files.isReadable(filePath)) {
-            logger.log(Level.WARNING, "File not found");
-            sendStatusHeaders(streamId, 404, framer, messageFactory); // :status 404
-            // Terminate the stream
-            return;
+        @Override
+        public void write(int b) throws IOException {
+            connection.getTimeouts().writeStarted();
+            try {
+                out.write(b);
+            } finally {
+                connection.getTimeouts().writeFinished();
+            }
         }
 
-        // Good stream ID
-        sendStatusHeaders(streamId, 200, framer, messageFactory); // :status 200
-        sendInitialWindowUpdate(streamId, framer, messageFactory);
-        Path documentRootPath = Paths.get(documentRoot);
-        Path relativeFilePath = documentRootPath.relativize(filePath);
-        sendFile(streamId, relativeFilePath, framer, messageFactory);
-
-
-    }
-
-    private void sendStatusHeaders(int streamId, int statusCode, Framer framer, MessageFactory messageFactory) throws IOException, BadAttributeException {
-        Headers responseHeaders = new Headers(streamId, true);
-        responseHeaders.addValue(":status", Integer.toString(statusCode));
-        byte[] encodedHeadersFrame = messageFactory.encode(responseHeaders);
-        framer.putFrame(encodedHeadersFrame);
-        logger.log(Level.INFO, "Sent Headers frame: " + responseHeaders);
-    }
-
-    private void sendFile(int streamId, Path filePath, Framer framer, MessageFactory messageFactory) throws IOException, BadAttributeException {
-        logger.log(Level.INFO, "Attempting to send file: " + filePath);
-        Path documentRootPath = Paths.get(documentRoot);
-        Path combinedPath = documentRootPath.resolve(filePath).normalize();
-        File file = combinedPath.toFile();
-
-        try (InputStream fileInputStream = new FileInputStream(file)) {
-            byte[] buffer = new byte[MAXDATASIZE];
-            int bytesRead;
-            while ((bytesRead = fileInputStream.read(buffer)) != -1) {
-                boolean isEnd = (fileInputStream.available() == 0);
-                byte[] payload = Arrays.copyOf(buffer, bytesRead);
-                logger.log(Level.INFO, "Payload Created For Stream: " + streamId);
-
-                AtomicInteger streamWindowSize = streamWindowSizeMap.computeIfAbsent(streamId, k -> new AtomicInteger(0));
-
-                Data dataFrame = new Data(streamId, isEnd, payload);
-                byte[] encodedDataFrame = messageFactory.encode(dataFrame);
-                framer.putFrame(encodedDataFrame);
-                logger.log(Level.INFO, "Sent Data frame: " + dataFrame); // Add this log statement
-
-                streamWindowSize.addAndGet(-bytesRead);
-
-                try {
-                    Thread.sleep(MINDATAINTERVAL);
-                } catch (InterruptedException e) {
-                    logger.log(Level.SEVERE, "Error while waiting between data frames", e);
-                }
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            connection.getTimeouts().writeStarted();
+            try {
+                out.write(b, off, len);
+            } finally {
+                connection.getTimeouts().writeFinished();
             }
         }
-    }
-
 
-    private void handleWindowUpdateFrame(Window_Update windowUpdateFrame) {
-        int streamId = windowUpdateFrame.getStreamID();
-        int increment = windowUpdateFrame.getIncrement();
-        streamWindowSizeMap.computeIfAbsent(streamId, k -> new AtomicInteger(0)).addAndGet(increment);
-        logger.log(Level.INFO, "Received message: " + windowUpdateFrame);
-    }
-
-    private void sendInitialWindowUpdate(int streamId, Framer framer, MessageFactory messageFactory) throws IOException, BadAttributeException {
-        Window_Update windowUpdateFrame = new Window_Update(streamId, MAXDATASIZE);
-        byte[] encodedWindowUpdateFrame = messageFactory.encode(windowUpdateFrame);
-        framer.putFrame(encodedWindowUpdateFrame);
-        logger.log(Level.INFO, "Sent Window_Update frame: " + windowUpdateFrame);
+        @Override
+        public void flush() throws IOException {
+            connection.getTimeouts().writeStarted();
+            try {
+                out.flush();
+            } finally {
+                connection.getTimeouts().writeFinished();
+            }
+        }
     }
-
 }
@@ -0,0 +1,107 @@
+/************************************************
+ *
+ * Author: Abanisenioluwa K. Orojo
+ * Assignment: Program 2
+ * Class: CSI 5325
+ *
+ ************************************************/
+package megex.app.server;
+
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+
+/**
+ * ConditionalRequests evaluates the validators of a request, if-none-match, if-modified-since and
+ * if-range, against the ETag and modification time of the requested file. If-none-match takes
+ * precedence over if-modified-since, and dates are compared to the second, as HTTP dates carry no
+ * more.
+ */
+public final class ConditionalRequests {
+    private static final DateTimeFormatter HTTP_DATE = DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US)
+            .withZone(ZoneOffset.UTC);
+
+    private ConditionalRequests() {
+    }
+
+    /**
+     * Returns whether a client's cached copy is still current, so the answer is 304 without a
+     * body.
+     *
+     * @param ifNoneMatch     The if-none-match header, or null.
+     * @param ifModifiedSince The if-modified-since header, or null.
+     * @param etag            The ETag of the file.
+     * @param lastModified    The modification time of the file.
+     * @return true if the file has not changed.
+     */
+    public static boolean isNotModified(String ifNoneMatch, String ifModifiedSince, String etag, FileTime lastModified) {
+        if (ifNoneMatch != null) {
+            for (String candidate : ifNoneMatch.split(",")) {
+                candidate = candidate.trim();
+                if (candidate.equals("*") || opaqueTag(candidate).equals(opaqueTag(etag))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (ifModifiedSince != null) {
+            long since = parseDate(ifModifiedSince);
+            return since >= 0 && lastModified.toMillis() / 1000 <= since;
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether the range of a request may be served, which if-range only allows while the
+     * file is the version the client has part of.
+     *
+     * @param ifRange      The if-range header, or null.
+     * @param etag         The ETag of the file.
+     * @param lastModified The modification time of the file.
+     * @return true if the range applies, false if the whole file must be sent.
+     */
+    public static boolean isRangeCurrent(String ifRange, String etag, FileTime lastModified) {
+        if (ifRange == null) {
+            return true;
+        }
+        String value = ifRange.trim();
+        if (value.startsWith("\"") || value.startsWith("W/")) {
+            // Ranges need a strong match, which weak tags never make
+            return !value.startsWith("W/") && value.equals(etag);
+        }
+        return parseDate(value) == lastModified.toMillis() / 1000;
+    }
+
+    /**
+     * Formats a modification time as an HTTP date, as in "Sun, 06 Nov 1994 08:49:37 GMT".
+     *
+     * @param time The time.
+     * @return The date.
+     */
+    public static String httpDate(FileTime time) {
+        return HTTP_DATE.format(time.toInstant());
+    }
+
+    /**
+     * Strips the weakness indicator, as if-none-match uses the weak comparison.
+     */
+    private static String opaqueTag(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
+    /**
+     * Parses an HTTP date.
+     *
+     * @return The time in seconds since the epoch, or -1 if the date is not valid.
+     */
+    private static long parseDate(String date) {
+        try {
+            return DateTimeFormatter.RFC_1123_DATE_TIME.parse(date.trim(), Instant::from).getEpochSecond();
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+}
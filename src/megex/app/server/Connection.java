@@ -0,0 +1,975 @@
+/************************************************
+ *
+ * Author: Abanisenioluwa K. Orojo
+ * Assignment: Program 2
+ * Class: CSI 5325
+ *
+ ************************************************/
+package megex.app.server;
+
+import megex.serialization.*;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.*;
+
+/**
+ * Connection holds the protocol state of one client connection: its HPACK tables, its streams
+ * and the serving of requested files. It does no socket I/O of its own; the engine running the
+ * connection reads frames from the transport and hands them to {@link #handleFrame(byte[])}, and
+ * responses are written through the Framer the connection was created with.
+ */
+public class Connection {
+    private final Framer framer;
+    private final String documentRoot;
+    private final Logger logger;
+    private final int maxDataSize;
+    private final TimerWheel timerWheel;
+    private final TokenBucket connectionBucket;
+    // Streams admitted and not closed yet, and streams waiting for one of them to close
+    private final Map<Integer, OpenStream> openStreams = new HashMap<>();
+    private final Deque<Headers> pendingStreams = new ArrayDeque<>();
+    private final ReentrantLock streamLock = new ReentrantLock();
+    private int highestStreamId = 0;
+    private final StreamScheduler.ConnectionExecutor streamExecutor;
+    private final FlowController flowController;
+    private final SendScheduler sendScheduler;
+    private final ResponseTemplates templates;
+    private final ServerConfig config;
+    private final HeaderTableBudget headerTableBudget;
+    private final ContentCache contentCache;
+    private final PathCache pathCache;
+    private final VariantCache variantCache;
+    private final ServerMetrics metrics;
+    private final Path documentRootPath;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final ConnectionTimeouts timeouts;
+    private MessageFactory messageFactory;
+    private int headerTableSize = -1;
+    private int streamCount = 0;
+    private long bytesReceived = 0;
+    private long bytesSent = 0;
+    // Start of the settings exchange, 0 once the client's SETTINGS arrived
+    private long settingsStart = System.nanoTime();
+    private WriteGate writeGate;
+
+    /**
+     * Constructs a new Connection.
+     *
+     * @param framer            The framer writing to the client.
+     * @param documentRoot      The root directory of the server.
+     * @param logger            The logger for logging events.
+     * @param maxDataSize       The maximum size of data to be sent in one frame.
+     * @param streamExecutor    The executor serving the streams of this connection.
+     * @param timerWheel        The timer pacing DATA frames and checking the connection timeouts.
+     * @param templates         The pre-encoded response header blocks.
+     * @param config            The server configuration.
+     * @param headerTableBudget The HPACK table memory budget shared by all connections.
+     * @param contentCache      The cache of popular documents shared by all connections.
+     * @param pathCache         The cache of resolved request paths shared by all connections.
+     * @param variantCache      The cache of compressed documents shared by all connections.
+     * @param metrics           The server metrics.
+     */
+    public Connection(Framer framer, String documentRoot, Logger logger, int maxDataSize, StreamScheduler.ConnectionExecutor streamExecutor,
+                      TimerWheel timerWheel, ResponseTemplates templates, ServerConfig config, HeaderTableBudget headerTableBudget,
+                      ContentCache contentCache, PathCache pathCache, VariantCache variantCache, ServerMetrics metrics) {
+        this.framer = framer;
+        this.documentRoot = documentRoot;
+        this.logger = logger;
+        this.maxDataSize = maxDataSize;
+        this.timerWheel = timerWheel;
+        this.streamExecutor = streamExecutor;
+        this.templates = templates;
+        this.config = config;
+        this.headerTableBudget = headerTableBudget;
+        this.contentCache = contentCache;
+        this.pathCache = pathCache;
+        this.variantCache = variantCache;
+        this.metrics = metrics;
+        this.documentRootPath = Paths.get(documentRoot).toAbsolutePath().normalize();
+        this.flowController = new FlowController(config.getInitialWindowSize());
+        this.sendScheduler = new SendScheduler(newSendPolicy(), streamExecutor);
+        this.connectionBucket = newTokenBucket(config.getConnectionBytesPerSecond());
+        this.timeouts = new ConnectionTimeouts(timerWheel, config);
+    }
+
+    /**
+     * Opens the connection once the client preface has been received, sending the server settings.
+     *
+     * @throws IOException           if the settings cannot be written.
+     * @throws BadAttributeException if the settings cannot be encoded.
+     */
+    public void open() throws IOException, BadAttributeException {
+        headerTableSize = headerTableBudget.open();
+        metrics.connectionOpened();
+        messageFactory = new MessageFactory(config.getMaxHeaderSize(), headerTableSize, config.isCompactHeaderTables());
+        sendSettingsFrame();
+    }
+
+    /**
+     * Handles a frame received from the client.
+     *
+     * @param receivedFrame The frame, without its length prefix.
+     * @throws IOException           if a response cannot be written.
+     * @throws BadAttributeException if the frame cannot be decoded.
+     */
+    public void handleFrame(byte[] receivedFrame) throws IOException, BadAttributeException {
+        metrics.frameReceived(receivedFrame.length > 0 ? receivedFrame[0] : -1, receivedFrame.length + 3);
+        bytesReceived += receivedFrame.length + 3;
+        timeouts.frameReceived();
+        FrameDecodeEvent decodeEvent = new FrameDecodeEvent();
+        decodeEvent.begin();
+        boolean isHeaders = receivedFrame.length > 0 && receivedFrame[0] == 0x1;
+        long decodeStart = isHeaders ? System.nanoTime() : 0;
+        Message message;
+        try {
+            message = messageFactory.decode(receivedFrame);
+        } catch (BadAttributeException e) {
+            metrics.error();
+            throw e;
+        }
+        if (isHeaders) {
+            metrics.recordPhase(ServerMetrics.Phase.HEADERS_DECODE, System.nanoTime() - decodeStart);
+        }
+        if (decodeEvent.shouldCommit()) {
+            decodeEvent.streamId = message.getStreamID();
+            decodeEvent.type = message.getCode();
+            decodeEvent.length = receivedFrame.length + 3;
+            decodeEvent.commit();
+        }
+        logger.log(Level.INFO, "Received frame: {0}", message);
+
+        if (message instanceof Headers) {
+            Headers headersFrame = (Headers) message;
+            int streamId = headersFrame.getStreamID();
+            if (streamId % 2 == 0 || streamId <= 0) {
+                // Check for illegal stream ID
+                logger.log(Level.WARNING, "Illegal stream ID: {0}", headersFrame);
+                metrics.error();
+            } else if (streamId <= highestStreamId) {
+                // Stream IDs only grow, so this stream was already used
+                logger.log(Level.WARNING, "Duplicate request: {0}", headersFrame);
+                metrics.error();
+            } else {
+                highestStreamId = streamId;
+                streamCount++;
+                admitStream(headersFrame);
+            }
+        } else if (message instanceof Settings) {
+            logger.log(Level.INFO, "Received Settings message: {0}", message);
+            if (settingsStart != 0) {
+                metrics.recordPhase(ServerMetrics.Phase.SETTINGS, System.nanoTime() - settingsStart);
+                settingsStart = 0;
+            }
+            timeouts.prefaceCompleted();
+            handleSettingsFrame((Settings) message);
+        } else if (message instanceof Window_Update) {
+            handleWindowUpdateFrame((Window_Update) message);
+        } else if (message instanceof Data) {
+            logger.log(Level.WARNING, "Unexpected Data message: {0}", message);
+            metrics.error();
+        } else {
+            logger.log(Level.WARNING, "Unexpected message: {0}", message);
+            metrics.error();
+        }
+        rebalanceHeaderTables();
+    }
+
+    /**
+     * Releases the resources of the connection after the transport has closed.
+     */
+    public void close() {
+        timeouts.cancel();
+        streamLock.lock();
+        try {
+            pendingStreams.clear();
+        } finally {
+            streamLock.unlock();
+        }
+        flowController.closeAll();
+        if (headerTableSize >= 0) {
+            headerTableBudget.close(headerTableSize);
+            headerTableSize = -1;
+            metrics.connectionClosed();
+        }
+    }
+
+    /**
+     * Starts a new stream if the client has fewer than the advertised maximum open, queues it if
+     * there is room in the pending queue, and otherwise refuses it.
+     */
+    private void admitStream(Headers headersFrame) throws IOException, BadAttributeException {
+        int streamId = headersFrame.getStreamID();
+        boolean isOpen = false;
+        boolean isPending = false;
+        streamLock.lock();
+        try {
+            if (openStreams.size() < config.getMaxConcurrentStreams()) {
+                openStreams.put(streamId, new OpenStream(headersFrame));
+                isOpen = true;
+            } else if (pendingStreams.size() < config.getPendingStreamCapacity()) {
+                // Queued streams are admitted, and timed, once they get a slot
+                pendingStreams.add(headersFrame);
+                isPending = true;
+            }
+        } finally {
+            streamLock.unlock();
+        }
+        if (!isOpen && !isPending) {
+            logger.log(Level.WARNING, "Too many concurrent streams, refusing stream: {0}", headersFrame);
+            rejectStream(headersFrame);
+            return;
+        }
+        if (isOpen) {
+            metrics.streamOpened();
+        }
+        // Open the send window now, so WINDOW_UPDATEs that follow the request are not lost
+        flowController.open(streamId);
+        if (isOpen) {
+            runStream(headersFrame);
+        } else {
+            logger.log(Level.INFO, "Too many concurrent streams, queueing stream: {0}", headersFrame);
+        }
+    }
+
+    /**
+     * Hands an admitted stream to the stream executor, refusing it if the executor has no room.
+     */
+    private void runStream(Headers headersFrame) {
+        Runnable task = () -> {
+            try {
+                handleHeadersFrame(headersFrame);
+            } catch (IOException | BadAttributeException e) {
+                logger.log(Level.SEVERE, "Error while handling Headers frame", e);
+                metrics.error();
+            }
+        };
+        try {
+            streamExecutor.execute(task);
+        } catch (RejectedExecutionException e) {
+            logger.log(Level.WARNING, "Server busy, rejecting stream: {0}", headersFrame);
+            try {
+                rejectStream(headersFrame);
+            } catch (IOException | BadAttributeException writeError) {
+                logger.log(Level.SEVERE, "Error while rejecting stream", writeError);
+                metrics.error();
+            }
+        }
+    }
+
+    /**
+     * Answers a request that cannot be served now with 503, which tells the client the request
+     * was not processed and can be retried, much like REFUSED_STREAM.
+     */
+    private void rejectStream(Headers headersFrame) throws IOException, BadAttributeException {
+        metrics.streamRefused();
+        sendStatusHeaders(headersFrame.getStreamID(), 503); // :status 503
+    }
+
+    /**
+     * Closes the connection because a stream's response cannot be completed. MegEx has no frame
+     * that resets a single stream, and ending the stream normally would pass a truncated body off as
+     * complete, so the client learns of the failure from the connection closing without END_STREAM.
+     *
+     * @param reason Why the connection is closed.
+     */
+    void abort(String reason) {
+        timeouts.expire(reason);
+    }
+
+    /**
+     * Closes a stream once its response is complete or abandoned, releasing its send window and
+     * its slot, which goes to the oldest pending stream. Closing a stream more than once has no
+     * effect.
+     *
+     * @param streamId The stream ID.
+     */
+    void closeStream(int streamId) {
+        flowController.close(streamId);
+        Headers next = null;
+        OpenStream closed;
+        streamLock.lock();
+        try {
+            closed = openStreams.remove(streamId);
+            if (closed != null) {
+                next = pendingStreams.poll();
+                if (next != null) {
+                    openStreams.put(next.getStreamID(), new OpenStream(next));
+                }
+            }
+        } finally {
+            streamLock.unlock();
+        }
+        if (closed != null) {
+            metrics.streamClosed(System.nanoTime() - closed.admittedAt);
+            closed.event.commit();
+        }
+        if (next != null) {
+            metrics.streamOpened();
+            runStream(next);
+        }
+    }
+
+    /**
+     * Records the TLS handshake of the connection, which starts the settings exchange. Called by
+     * the engine before the client preface is read.
+     *
+     * @param handshakeNanos How long the handshake took.
+     */
+    void handshakeCompleted(long handshakeNanos) {
+        metrics.recordPhase(ServerMetrics.Phase.HANDSHAKE, handshakeNanos);
+        settingsStart = System.nanoTime();
+        timeouts.handshakeCompleted();
+    }
+
+    /**
+     * Sets the gate through which a transport that queues frames holds back the senders of this
+     * connection while the client is behind. Without one, writes block until the client reads.
+     *
+     * @param writeGate The gate of the transport.
+     */
+    void setWriteGate(WriteGate writeGate) {
+        this.writeGate = writeGate;
+    }
+
+    /**
+     * Returns whether frames may be written now. If not, the callback runs once the transport has
+     * room again.
+     *
+     * @param onWritable The callback.
+     * @return true if the caller may write.
+     */
+    boolean awaitWritable(Runnable onWritable) {
+        return writeGate == null || writeGate.awaitWritable(onWritable);
+    }
+
+    /**
+     * Returns the deadlines of the connection, which the engine starts once the connection is
+     * accepted and feeds with what happens on the transport.
+     *
+     * @return The connection timeouts.
+     */
+    ConnectionTimeouts getTimeouts() {
+        return timeouts;
+    }
+
+    /**
+     * Returns when an open stream was admitted.
+     */
+    private long admittedAt(int streamId) {
+        streamLock.lock();
+        try {
+            OpenStream stream = openStreams.get(streamId);
+            return stream != null ? stream.admittedAt : System.nanoTime();
+        } finally {
+            streamLock.unlock();
+        }
+    }
+
+    /**
+     * Records the response of an open stream in its Flight Recorder event.
+     */
+    private void recordResponse(int streamId, int status, long contentLength) {
+        streamLock.lock();
+        try {
+            OpenStream stream = openStreams.get(streamId);
+            if (stream != null) {
+                stream.event.status = status;
+                stream.event.contentLength = contentLength;
+            }
+        } finally {
+            streamLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of streams the client has opened.
+     *
+     * @return The stream count.
+     */
+    int getStreamCount() {
+        return streamCount;
+    }
+
+    /**
+     * Returns the number of frame bytes received from the client.
+     *
+     * @return The bytes received.
+     */
+    long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    /**
+     * Returns the number of frame bytes written to the client.
+     *
+     * @return The bytes sent.
+     */
+    long getBytesSent() {
+        writeLock.lock();
+        try {
+            return bytesSent;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void sendSettingsFrame() throws IOException, BadAttributeException {
+        Settings settingsFrame = new Settings();
+        settingsFrame.addSetting(Settings.HEADER_TABLE_SIZE, messageFactory.getHeaderTableSize());
+        settingsFrame.addSetting(Settings.MAX_CONCURRENT_STREAMS, config.getMaxConcurrentStreams());
+        putFrame(() -> messageFactory.encode(settingsFrame));
+        logger.log(Level.INFO, "Sent Settings frame: {0}", settingsFrame);
+    }
+
+    private void handleSettingsFrame(Settings settingsFrame) throws IOException, BadAttributeException {
+        if (settingsFrame.isAck()) {
+            writeLock.lock();
+            try {
+                messageFactory.settingsAcknowledged();
+            } finally {
+                writeLock.unlock();
+            }
+            return;
+        }
+        Long initialWindowSize = settingsFrame.getSetting(Settings.INITIAL_WINDOW_SIZE);
+        if (initialWindowSize != null) {
+            // At most 2^31-1, which Settings checks
+            flowController.setInitialWindowSize(initialWindowSize.intValue());
+        }
+        Long peerHeaderTableSize = settingsFrame.getSetting(Settings.HEADER_TABLE_SIZE);
+        if (peerHeaderTableSize != null) {
+            writeLock.lock();
+            try {
+                messageFactory.setPeerHeaderTableSize((int) Math.min(peerHeaderTableSize, Integer.MAX_VALUE));
+            } finally {
+                writeLock.unlock();
+            }
+        }
+        Settings ackFrame = new Settings(true);
+        putFrame(() -> messageFactory.encode(ackFrame));
+    }
+
+    /**
+     * Moves the HPACK tables of this connection to the size the shared budget allows, advertising the
+     * new decoder table size to the client.
+     */
+    private void rebalanceHeaderTables() throws IOException, BadAttributeException {
+        int target = headerTableBudget.rebalance(headerTableSize);
+        if (target == headerTableSize) {
+            return;
+        }
+        writeLock.lock();
+        try {
+            // A smaller size reaches the decoder when the client acknowledges these settings
+            Settings settingsFrame = new Settings();
+            settingsFrame.addSetting(Settings.HEADER_TABLE_SIZE, target);
+            FrameEncodeEvent encodeEvent = new FrameEncodeEvent();
+            encodeEvent.begin();
+            byte[] frame = messageFactory.encode(settingsFrame);
+            framer.putFrame(frame);
+            frameSent(encodeEvent, 0, frame[0], 1, frame.length + 3);
+            messageFactory.setHeaderTableSize(target);
+            headerTableSize = target;
+        } finally {
+            writeLock.unlock();
+        }
+        logger.log(Level.INFO, "Resized header tables to {0}", target);
+    }
+
+    /**
+     * Encodes and writes a frame while holding the connection write lock, so frames from different
+     * streams never interleave and header blocks are written in the order they were encoded.
+     */
+    private void putFrame(FrameEncoder frameEncoder) throws IOException, BadAttributeException {
+        writeLock.lock();
+        try {
+            FrameEncodeEvent encodeEvent = new FrameEncodeEvent();
+            encodeEvent.begin();
+            byte[] frame = frameEncoder.encode();
+            framer.putFrame(frame);
+            int streamId = (frame[2] & 0x7f) << 24 | (frame[3] & 0xff) << 16 | (frame[4] & 0xff) << 8 | (frame[5] & 0xff);
+            frameSent(encodeEvent, streamId, frame[0], 1, frame.length + 3);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Accounts for frames just written. Called while holding the write lock.
+     */
+    private void frameSent(FrameEncodeEvent encodeEvent, int streamId, int type, int frames, long bytes) {
+        bytesSent += bytes;
+        timeouts.frameSent();
+        metrics.framesSent(type, frames, bytes);
+        if (encodeEvent.shouldCommit()) {
+            encodeEvent.streamId = streamId;
+            encodeEvent.type = type;
+            encodeEvent.frames = frames;
+            encodeEvent.length = bytes;
+            encodeEvent.commit();
+        }
+    }
+
+    /**
+     * Produces an encoded frame.
+     */
+    @FunctionalInterface
+    private interface FrameEncoder {
+        byte[] encode() throws BadAttributeException;
+    }
+
+    /**
+     * Holds back senders while a transport that queues frames has too many queued.
+     */
+    @FunctionalInterface
+    interface WriteGate {
+        /**
+         * Returns whether more frames may be queued, otherwise arranging for the callback to run
+         * once the queue has drained.
+         *
+         * @param onWritable The callback.
+         * @return true if frames may be queued now.
+         */
+        boolean awaitWritable(Runnable onWritable);
+    }
+
+    private void handleHeadersFrame(Headers headersFrame) throws IOException, BadAttributeException {
+        int streamId = headersFrame.getStreamID();
+
+        // Extract the requested path from the headers
+        String path = headersFrame.getValue(":path");
+        if (path == null) {
+            logger.log(Level.WARNING, "No path");
+            sendStatusHeaders(streamId, 400); // :status 400
+            // Terminate the stream
+            return;
+        }
+
+        if (path.equals(config.getMetricsPath())) {
+            sendMetrics(streamId);
+            return;
+        }
+
+        long resolveStart = System.nanoTime();
+        PathCache.Resolution resolution = pathCache.resolve(path);
+        metrics.recordPhase(ServerMetrics.Phase.PATH_RESOLUTION, System.nanoTime() - resolveStart);
+        if (resolution.type() == PathCache.Type.DIRECTORY) {
+            logger.log(Level.WARNING, "Cannot request directory");
+            sendStatusHeaders(streamId, 403); // :status 403
+            // Terminate the stream
+            return;
+        }
+
+        if (resolution.type() == PathCache.Type.NOT_FOUND) {
+            logger.log(Level.WARNING, "File not found");
+            sendStatusHeaders(streamId, 404); // :status 404
+            // Terminate the stream
+            return;
+        }
+
+        Path filePath = resolution.file();
+        if (headersFrame.getValue("range") == null && AcceptEncoding.acceptsGzip(headersFrame.getValue("accept-encoding"))
+                && sendGzip(streamId, path, resolution, headersFrame)) {
+            return;
+        }
+
+        String etag = pathCache.etag(resolution);
+        String lastModified = ConditionalRequests.httpDate(resolution.lastModified());
+        if (sendNotModified(streamId, path, headersFrame, etag, resolution.lastModified(), lastModified)) {
+            return;
+        }
+
+        String rangeHeader = headersFrame.getValue("range");
+        List<ByteRanges.Range> ranges = null;
+        if (rangeHeader != null && ConditionalRequests.isRangeCurrent(headersFrame.getValue("if-range"), etag, resolution.lastModified())) {
+            ranges = ByteRanges.parse(rangeHeader, resolution.size());
+        }
+        if (ranges != null) {
+            sendRanges(streamId, filePath, resolution.size(), ranges, etag, lastModified);
+            return;
+        }
+
+        FramedBodySource cached = contentCache.get(filePath);
+        if (cached != null) {
+            // Hot document, served without touching the file system
+            logger.log(Level.INFO, "Serving cached document: {0}", path);
+            sendDocument(streamId, ResponseTemplates.contentTypeOf(filePath), cached.length(), cached, etag, lastModified);
+            return;
+        }
+
+        // Good stream ID
+        long contentLength = resolution.size();
+        BodySource body;
+        long openStart = System.nanoTime();
+        try {
+            body = openBody(filePath, contentLength);
+            metrics.recordPhase(ServerMetrics.Phase.FILE_OPEN, System.nanoTime() - openStart);
+        } catch (IOException e) {
+            closeStream(streamId);
+            throw e;
+        }
+        logger.log(Level.INFO, () -> "Attempting to send file: " + documentRootPath.relativize(filePath));
+        sendDocument(streamId, ResponseTemplates.contentTypeOf(filePath), contentLength, body, etag, lastModified);
+    }
+
+    /**
+     * Answers a request that accepts gzip with a compressed representation of a file, if it has
+     * one: a precompressed sidecar with the same name plus ".gz" that is no older than the file,
+     * otherwise the compressed variant kept from an earlier request, otherwise the file compressed
+     * while it is sent. Range requests are always served from the file itself.
+     *
+     * @return false if the file is to be sent as it is.
+     */
+    private boolean sendGzip(int streamId, String path, PathCache.Resolution resolution, Headers headersFrame)
+            throws IOException, BadAttributeException {
+        Path filePath = resolution.file();
+        String contentType = ResponseTemplates.contentTypeOf(filePath);
+        PathCache.Resolution sidecar = pathCache.resolve(path + ".gz");
+        if (sidecar.type() == PathCache.Type.FILE && sidecar.lastModified().compareTo(resolution.lastModified()) >= 0) {
+            String etag = pathCache.etag(sidecar);
+            String lastModified = ConditionalRequests.httpDate(sidecar.lastModified());
+            if (sendNotModified(streamId, path, headersFrame, etag, sidecar.lastModified(), lastModified)) {
+                return true;
+            }
+            BodySource body;
+            try {
+                body = openBody(sidecar.file(), sidecar.size());
+            } catch (IOException e) {
+                closeStream(streamId);
+                throw e;
+            }
+            logger.log(Level.INFO, () -> "Attempting to send precompressed file: " + documentRootPath.relativize(sidecar.file()));
+            sendBody(streamId, 200, templates.contentBlock(contentType, sidecar.size(), etag, lastModified, "gzip"), sidecar.size(), body);
+            return true;
+        }
+
+        if (config.getCompressionLevel() == 0 || resolution.size() < config.getCompressionMinSize()
+                || !ResponseTemplates.isCompressible(contentType)) {
+            return false;
+        }
+        String identityEtag = pathCache.etag(resolution);
+        String etag = pathCache.etag(resolution, "gzip");
+        String lastModified = ConditionalRequests.httpDate(resolution.lastModified());
+        if (sendNotModified(streamId, path, headersFrame, etag, resolution.lastModified(), lastModified)) {
+            return true;
+        }
+        byte[] variant = variantCache.get(filePath, identityEtag);
+        if (variant != null) {
+            logger.log(Level.INFO, "Serving cached compressed document: {0}", path);
+            sendBody(streamId, 200, templates.contentBlock(contentType, variant.length, etag, lastModified, "gzip"), variant.length,
+                    new StreamBodySource(new ByteArrayInputStream(variant)));
+            return true;
+        }
+        InputStream in;
+        try {
+            in = new FileInputStream(filePath.toFile());
+        } catch (IOException e) {
+            closeStream(streamId);
+            throw e;
+        }
+        BodySource body = new GzipBodySource(in, config.getCompressionLevel(), variantCache.getMaxVariantSize(),
+                bytes -> variantCache.put(filePath, identityEtag, bytes));
+        logger.log(Level.INFO, () -> "Attempting to send compressed file: " + documentRootPath.relativize(filePath));
+        sendBody(streamId, 200, templates.contentBlock(contentType, -1, etag, lastModified, "gzip"), -1, resolution.size(), body);
+        return true;
+    }
+
+    /**
+     * Answers 304 if the validators of a request show the client's copy is current.
+     *
+     * @return true if the response was sent.
+     */
+    private boolean sendNotModified(int streamId, String path, Headers headersFrame, String etag, FileTime modified,
+                                    String lastModified) throws IOException, BadAttributeException {
+        if (!ConditionalRequests.isNotModified(headersFrame.getValue("if-none-match"), headersFrame.getValue("if-modified-since"),
+                etag, modified)) {
+            return false;
+        }
+        logger.log(Level.INFO, "Not modified: {0}", path);
+        sendStatusHeaders(streamId, 304, templates.notModifiedBlock(etag, lastModified));
+        return true;
+    }
+
+    /**
+     * Answers a range request with 206 and the requested parts of a file, read from their offsets
+     * without going through the content cache. A single range is sent as it is with its
+     * content-range; several are sent as a multipart/byteranges body. If no range lies within the
+     * file the answer is 416.
+     */
+    private void sendRanges(int streamId, Path filePath, long size, List<ByteRanges.Range> ranges, String etag,
+                            String lastModified) throws IOException, BadAttributeException {
+        if (ranges.isEmpty()) {
+            logger.log(Level.WARNING, "Range not satisfiable");
+            sendStatusHeaders(streamId, 416, templates.rangeNotSatisfiableBlock(size));
+            return;
+        }
+        String contentType = ResponseTemplates.contentTypeOf(filePath);
+        List<BodySource> parts = new ArrayList<>();
+        long[] lengths = new long[ranges.size() == 1 ? 1 : ranges.size() * 2 + 1];
+        byte[] headerBlock;
+        long contentLength = 0;
+        long openStart = System.nanoTime();
+        try {
+            if (ranges.size() == 1) {
+                ByteRanges.Range range = ranges.get(0);
+                parts.add(openBody(filePath, range.first(), range.length()));
+                lengths[0] = range.length();
+                contentLength = range.length();
+                headerBlock = templates.partialContentBlock(contentType, range.contentRange(size), contentLength, etag, lastModified);
+            } else {
+                String boundary = Long.toHexString(ThreadLocalRandom.current().nextLong());
+                for (int i = 0; i < ranges.size(); i++) {
+                    ByteRanges.Range range = ranges.get(i);
+                    byte[] partHeaders = ((i == 0 ? "" : "\r\n") + "--" + boundary + "\r\ncontent-type: " + contentType
+                            + "\r\ncontent-range: " + range.contentRange(size) + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+                    parts.add(new StreamBodySource(new ByteArrayInputStream(partHeaders)));
+                    lengths[2 * i] = partHeaders.length;
+                    parts.add(openBody(filePath, range.first(), range.length()));
+                    lengths[2 * i + 1] = range.length();
+                    contentLength += partHeaders.length + range.length();
+                }
+                byte[] closing = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+                parts.add(new StreamBodySource(new ByteArrayInputStream(closing)));
+                lengths[lengths.length - 1] = closing.length;
+                contentLength += closing.length;
+                headerBlock = templates.partialContentBlock("multipart/byteranges; boundary=" + boundary, null, contentLength,
+                        etag, lastModified);
+            }
+            metrics.recordPhase(ServerMetrics.Phase.FILE_OPEN, System.nanoTime() - openStart);
+        } catch (IOException e) {
+            closeStream(streamId);
+            for (BodySource part : parts) {
+                try {
+                    part.close();
+                } catch (IOException closeError) {
+                    e.addSuppressed(closeError);
+                }
+            }
+            throw e;
+        }
+        logger.log(Level.INFO, () -> "Attempting to send " + ranges.size() + " ranges of file: " + documentRootPath.relativize(filePath));
+        sendBody(streamId, 206, headerBlock, contentLength, parts.size() == 1 ? parts.get(0) : new SequenceBodySource(parts, lengths));
+    }
+
+    /**
+     * Answers a request for the metrics path with the current server metrics as text.
+     */
+    private void sendMetrics(int streamId) throws IOException, BadAttributeException {
+        byte[] text = metrics.toText().getBytes(StandardCharsets.UTF_8);
+        sendDocument(streamId, "text/plain", text.length, new StreamBodySource(new ByteArrayInputStream(text)), null, null);
+    }
+
+    /**
+     * Opens the body of a file: memory-mapped from the map threshold, otherwise from the content
+     * cache if it admits the file, otherwise as a stream.
+     */
+    private BodySource openBody(Path documentPath, long contentLength) throws IOException {
+        if (contentLength >= config.getMapThreshold()) {
+            return new MappedBodySource(documentPath, 0, contentLength);
+        }
+        BodySource loaded = contentCache.load(documentPath, contentLength);
+        if (loaded != null) {
+            return loaded;
+        }
+        return new StreamBodySource(new FileInputStream(documentPath.toFile()));
+    }
+
+    /**
+     * Opens part of a file, seeking to its offset: memory-mapped from the map threshold, otherwise
+     * as a stream.
+     */
+    private BodySource openBody(Path documentPath, long offset, long length) throws IOException {
+        if (length >= config.getMapThreshold()) {
+            return new MappedBodySource(documentPath, offset, length);
+        }
+        FileInputStream in = new FileInputStream(documentPath.toFile());
+        try {
+            in.getChannel().position(offset);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        return new StreamBodySource(in);
+    }
+
+    private void sendStatusHeaders(int streamId, int statusCode) throws IOException, BadAttributeException {
+        sendStatusHeaders(streamId, statusCode, templates.statusBlock(statusCode));
+    }
+
+    /**
+     * Sends a response without a body, ending the stream.
+     */
+    private void sendStatusHeaders(int streamId, int statusCode, byte[] headerBlock) throws IOException, BadAttributeException {
+        recordResponse(streamId, statusCode, 0);
+        try {
+            putFrame(() -> messageFactory.encodeHeaders(streamId, true, headerBlock));
+        } finally {
+            closeStream(streamId);
+        }
+        if (logger.isLoggable(Level.INFO)) {
+            logger.log(Level.INFO, "Sent Headers frame: StreamID={0} status={1}", new Object[]{streamId, statusCode});
+        }
+    }
+
+    /**
+     * Sends the headers of a response with a body, ending the stream if the body is empty.
+     */
+    private void sendContentHeaders(int streamId, int status, byte[] headerBlock, long contentLength) throws IOException, BadAttributeException {
+        boolean isEnd = contentLength == 0;
+        recordResponse(streamId, status, contentLength);
+        putFrame(() -> messageFactory.encodeHeaders(streamId, isEnd, headerBlock));
+        if (isEnd) {
+            closeStream(streamId);
+        }
+        if (contentLength >= 0) {
+            metrics.responseSent(contentLength);
+        }
+        if (logger.isLoggable(Level.INFO)) {
+            logger.log(Level.INFO, "Sent Headers frame: StreamID={0} status={1} content-length={2}",
+                    new Object[]{streamId, status, contentLength});
+        }
+    }
+
+    /**
+     * Sends the 200 response for a document, with its validators if it is a file, and hands its
+     * body to the send scheduler.
+     */
+    private void sendDocument(int streamId, String contentType, long contentLength, BodySource body, String etag,
+                              String lastModified) throws IOException, BadAttributeException {
+        sendBody(streamId, 200, templates.contentBlock(contentType, contentLength, etag, lastModified, null), contentLength, body);
+    }
+
+    /**
+     * Sends the headers of a response and hands its body to the send scheduler, which interleaves
+     * it with the other streams of the connection. If no other stream is sending, the body starts
+     * going out on this thread.
+     */
+    private void sendBody(int streamId, int status, byte[] headerBlock, long contentLength, BodySource body) throws IOException, BadAttributeException {
+        sendBody(streamId, status, headerBlock, contentLength, contentLength, body);
+    }
+
+    /**
+     * Sends the headers of a response and hands its body to the send scheduler, ranking a body of
+     * unknown length by the given size estimate.
+     */
+    private void sendBody(int streamId, int status, byte[] headerBlock, long contentLength, long sizeEstimate, BodySource body)
+            throws IOException, BadAttributeException {
+        try {
+            sendContentHeaders(streamId, status, headerBlock, contentLength);
+            if (contentLength == 0) {
+                // Empty file, the headers ended the stream
+                body.close();
+                return;
+            }
+            sendInitialWindowUpdate(streamId);
+        } catch (IOException | BadAttributeException e) {
+            closeStream(streamId);
+            body.close();
+            throw e;
+        }
+        sendScheduler.start(new StreamSender(streamId, admittedAt(streamId), body, contentLength, sizeEstimate, this, flowController,
+                sendScheduler, timerWheel, connectionBucket, newTokenBucket(config.getStreamBytesPerSecond()), metrics, logger, maxDataSize));
+    }
+
+    private SendPolicy newSendPolicy() {
+        long quantum = Math.max(maxDataSize, config.getSendQuantum());
+        if (config.getInterleaving() == ServerConfig.Interleaving.SRPT) {
+            return new ShortestRemainingFirstPolicy(quantum);
+        }
+        return new DeficitRoundRobinPolicy(quantum);
+    }
+
+    private TokenBucket newTokenBucket(long bytesPerSecond) {
+        return bytesPerSecond > 0 ? new TokenBucket(bytesPerSecond, config.getPacingBurstBytes()) : null;
+    }
+
+    /**
+     * Writes a DATA frame of a stream.
+     *
+     * @param streamId The stream ID.
+     * @param isEnd    Whether the frame ends the stream.
+     * @param payload  The frame payload, written without copying where the transport allows.
+     * @throws IOException           if the frame cannot be written.
+     * @throws BadAttributeException if the frame cannot be encoded.
+     */
+    void sendData(int streamId, boolean isEnd, ByteBuffer payload) throws IOException, BadAttributeException {
+        int length = payload.remaining();
+        writeLock.lock();
+        try {
+            FrameEncodeEvent encodeEvent = new FrameEncodeEvent();
+            encodeEvent.begin();
+            byte[] header = messageFactory.encodeDataHeader(streamId, isEnd);
+            framer.putFrame(header, payload);
+            frameSent(encodeEvent, streamId, 0x0, 1, length + 9L);
+        } finally {
+            writeLock.unlock();
+        }
+        // Per frame, so the arguments are only boxed when INFO is logged
+        if (logger.isLoggable(Level.INFO)) {
+            logger.log(Level.INFO, "Sent Data frame: StreamID={0} isEnd={1} data={2}", new Object[]{streamId, isEnd, length});
+        }
+    }
+
+    /**
+     * Writes a run of DATA frames of a stream that were encoded ahead of time.
+     *
+     * @param streamId The stream ID, written into every frame.
+     * @param frames   The encoded frames.
+     * @return The total payload length of the frames.
+     * @throws IOException if the frames cannot be written.
+     */
+    int sendFrames(int streamId, ByteBuffer frames) throws IOException {
+        int size = frames.remaining();
+        int length;
+        writeLock.lock();
+        try {
+            FrameEncodeEvent encodeEvent = new FrameEncodeEvent();
+            encodeEvent.begin();
+            length = framer.putFrames(frames, streamId);
+            frameSent(encodeEvent, streamId, 0x0, (size - length) / 9, size);
+        } finally {
+            writeLock.unlock();
+        }
+        if (logger.isLoggable(Level.INFO)) {
+            logger.log(Level.INFO, "Sent Data frames: StreamID={0} data={1}", new Object[]{streamId, length});
+        }
+        return length;
+    }
+
+    private void handleWindowUpdateFrame(Window_Update windowUpdateFrame) {
+        int streamId = windowUpdateFrame.getStreamID();
+        int increment = windowUpdateFrame.getIncrement();
+        if (!flowController.increment(streamId, increment)) {
+            logger.log(Level.WARNING, "Flow control window overflow, ignoring: {0}", windowUpdateFrame);
+            metrics.error();
+        }
+        logger.log(Level.INFO, "Received message: {0}", windowUpdateFrame);
+    }
+
+    private void sendInitialWindowUpdate(int streamId) throws IOException, BadAttributeException {
+        Window_Update windowUpdateFrame = new Window_Update(streamId, maxDataSize);
+        putFrame(() -> messageFactory.encode(windowUpdateFrame));
+        logger.log(Level.INFO, "Sent Window_Update frame: {0}", windowUpdateFrame);
+    }
+
+    /**
+     * A stream holding a slot, with the time it got it and its Flight Recorder event.
+     */
+    private static final class OpenStream {
+        private final long admittedAt = System.nanoTime();
+        private final StreamEvent event = new StreamEvent();
+
+        private OpenStream(Headers headersFrame) {
+            event.begin();
+            event.streamId = headersFrame.getStreamID();
+            event.path = headersFrame.getValue(":path");
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/************************************************
+ *
+ * Author: Abanisenioluwa K. Orojo
+ * Assignment: Program 2
+ * Class: CSI 5325
+ *
+ ************************************************/
+package megex.app.server;
+
+import jdk.jfr.*;
+
+/**
+ * ConnectionEvent is a Flight Recorder event spanning a client connection, from accept to close.
+ */
+@Name("megex.Connection")
+@Label("Connection")
+@Category({"MegEx", "Connections"})
+@Description("A client connection, from accept to close")
+@StackTrace(false)
+class ConnectionEvent extends Event {
+    @Label("Remote Address")
+    String remoteAddress;
+
+    @Label("Engine")
+    String engine;
+
+    @Label("Streams")
+    @Description("Streams the client opened")
+    int streams;
+
+    @Label("Bytes Received")
+    @DataAmount
+    long bytesReceived;
+
+    @Label("Bytes Sent")
+    @DataAmount
+    long bytesSent;
+}
@@ -0,0 +1,250 @@
+/************************************************
+ *
+ * Author: Abanisenioluwa K. Orojo
+ * Assignment: Program 2
+ * Class: CSI 5325
+ *
+ ************************************************/
+package megex.app.server;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * ConnectionTimeouts enforces the deadlines of one connection on the server's {@link TimerWheel}:
+ * the TLS handshake, the client preface and SETTINGS, the completion of a frame the client has
+ * started sending, progress of writes to the client, and idleness.
+ *
+ * The engine and the connection only record what happened as volatile timestamps, so reading and
+ * writing frames never touches the wheel. One timeout per connection is armed for the earliest
+ * deadline that can be due; when it fires it either expires the connection or arms itself again,
+ * both in O(1). A deadline pushed back in the meantime only costs an early check. Deadlines that
+ * start after the timeout was armed are caught by checks that run at least every quarter of the
+ * shortest timeout.
+ */
+class ConnectionTimeouts {
+    private static final long NONE = 0;
+
+    private final TimerWheel timerWheel;
+    private final long idleNanos;
+    private final long handshakeNanos;
+    private final long headerNanos;
+    private final long writeStallNanos;
+    private final long checkNanos;
+    private Consumer<String> onExpired;
+    private volatile TimerWheel.Timeout timeout;
+    // Each deadline runs from its timestamp, NONE while it does not apply
+    private volatile long handshakeStartedAt = NONE;
+    private volatile long headerStartedAt = NONE;
+    private volatile long writeStartedAt = NONE;
+    private volatile long lastActivityAt;
+    private volatile boolean isPrefaceComplete = false;
+    private volatile boolean isExpired = false;
+    private volatile boolean isCancelled = false;
+
+    /**
+     * Constructs ConnectionTimeouts with the timeouts of the server configuration.
+     *
+     * @param timerWheel The timer checking the deadlines.
+     * @param config     The server configuration.
+     */
+    ConnectionTimeouts(TimerWheel timerWheel, ServerConfig config) {
+        this.timerWheel = timerWheel;
+        this.idleNanos = TimeUnit.MILLISECONDS.toNanos(config.getIdleTimeoutMillis());
+        this.handshakeNanos = TimeUnit.MILLISECONDS.toNanos(config.getHandshakeTimeoutMillis());
+        this.headerNanos = TimeUnit.MILLISECONDS.toNanos(config.getHeaderTimeoutMillis());
+        this.writeStallNanos = TimeUnit.MILLISECONDS.toNanos(config.getWriteStallTimeoutMillis());
+        long shortest = Long.MAX_VALUE;
+        for (long nanos : new long[] {idleNanos, handshakeNanos, headerNanos, writeStallNanos}) {
+            if (nanos > 0) {
+                shortest = Math.min(shortest, nanos);
+            }
+        }
+        this.checkNanos = shortest == Long.MAX_VALUE ? 0 : Math.max(shortest / 4, timerWheel.getTickNanos());
+    }
+
+    /**
+     * Starts the deadlines of a connection just accepted, beginning with the handshake.
+     *
+     * @param onExpired Called on the timer thread with the reason when a deadline passes. It must
+     *                  not block; closing the connection is left to the engine.
+     */
+    void start(Consumer<String> onExpired) {
+        this.onExpired = onExpired;
+        long now = System.nanoTime();
+        lastActivityAt = now;
+        handshakeStartedAt = now;
+        if (checkNanos > 0) {
+            schedule(now);
+        }
+    }
+
+    /**
+     * Ends the handshake deadline and starts the wait for the client preface and SETTINGS.
+     */
+    void handshakeCompleted() {
+        long now = System.nanoTime();
+        handshakeStartedAt = NONE;
+        if (!isPrefaceComplete) {
+            headerStartedAt = now;
+        }
+        lastActivityAt = now;
+    }
+
+    /**
+     * Ends the wait for the client's SETTINGS, after which the header deadline only covers frames
+     * the client has started.
+     */
+    void prefaceCompleted() {
+        isPrefaceComplete = true;
+        headerStartedAt = NONE;
+    }
+
+    /**
+     * Records bytes of a frame that is not complete yet, starting the header deadline unless it is
+     * already running.
+     */
+    void frameStarted() {
+        if (headerStartedAt == NONE) {
+            headerStartedAt = System.nanoTime();
+        }
+    }
+
+    /**
+     * Records a complete frame from the client.
+     */
+    void frameReceived() {
+        lastActivityAt = System.nanoTime();
+        if (isPrefaceComplete) {
+            headerStartedAt = NONE;
+        }
+    }
+
+    /**
+     * Records a frame sent or queued for the client.
+     */
+    void frameSent() {
+        lastActivityAt = System.nanoTime();
+    }
+
+    /**
+     * Records that bytes are waiting for the client to read them, starting the write-stall
+     * deadline unless it is already running.
+     */
+    void writeStarted() {
+        if (writeStartedAt == NONE) {
+            writeStartedAt = System.nanoTime();
+        }
+    }
+
+    /**
+     * Records bytes the client took, which restarts a running write-stall deadline.
+     */
+    void writeProgressed() {
+        long now = System.nanoTime();
+        lastActivityAt = now;
+        if (writeStartedAt != NONE) {
+            writeStartedAt = now;
+        }
+    }
+
+    /**
+     * Records that nothing is waiting for the client any more.
+     */
+    void writeFinished() {
+        writeStartedAt = NONE;
+    }
+
+    /**
+     * Returns whether a deadline passed.
+     *
+     * @return true if the connection was expired.
+     */
+    boolean isExpired() {
+        return isExpired;
+    }
+
+    /**
+     * Expires the connection at once, without waiting for a deadline, when an error leaves it
+     * unusable. Closing is left to the engine, as for deadlines.
+     *
+     * @param reason Why the connection is closed.
+     */
+    void expire(String reason) {
+        if (isCancelled) {
+            return;
+        }
+        isExpired = true;
+        onExpired.accept(reason);
+    }
+
+    /**
+     * Stops checking the deadlines once the connection is closed.
+     */
+    void cancel() {
+        isCancelled = true;
+        TimerWheel.Timeout current = timeout;
+        if (current != null) {
+            current.cancel();
+        }
+    }
+
+    private void check() {
+        if (isCancelled) {
+            return;
+        }
+        long now = System.nanoTime();
+        String reason = expiredReason(now);
+        if (reason == null) {
+            schedule(now);
+            return;
+        }
+        isExpired = true;
+        onExpired.accept(reason);
+    }
+
+    private String expiredReason(long now) {
+        if (isDue(handshakeStartedAt, handshakeNanos, now)) {
+            return "TLS handshake not completed within " + TimeUnit.NANOSECONDS.toMillis(handshakeNanos) + " ms";
+        }
+        if (isDue(headerStartedAt, headerNanos, now)) {
+            return (isPrefaceComplete ? "Frame" : "Preface and SETTINGS") + " not received within "
+                    + TimeUnit.NANOSECONDS.toMillis(headerNanos) + " ms";
+        }
+        if (isDue(writeStartedAt, writeStallNanos, now)) {
+            return "Client read nothing for " + TimeUnit.NANOSECONDS.toMillis(writeStallNanos) + " ms";
+        }
+        if (isDue(lastActivityAt, idleNanos, now)) {
+            return "Idle for " + TimeUnit.NANOSECONDS.toMillis(idleNanos) + " ms";
+        }
+        return null;
+    }
+
+    /**
+     * Arms the timeout for the earliest running deadline, or the next periodic check.
+     */
+    private void schedule(long now) {
+        long delay = checkNanos;
+        delay = Math.min(delay, remaining(handshakeStartedAt, handshakeNanos, now));
+        delay = Math.min(delay, remaining(headerStartedAt, headerNanos, now));
+        delay = Math.min(delay, remaining(writeStartedAt, writeStallNanos, now));
+        delay = Math.min(delay, remaining(lastActivityAt, idleNanos, now));
+        TimerWheel.Timeout next = timerWheel.schedule(this::check, delay, TimeUnit.NANOSECONDS);
+        timeout = next;
+        if (isCancelled) {
+            // Closed while arming
+            next.cancel();
+        }
+    }
+
+    private static boolean isDue(long startedAt, long timeoutNanos, long now) {
+        return startedAt != NONE && timeoutNanos > 0 && now - startedAt >= timeoutNanos;
+    }
+
+    private static long remaining(long startedAt, long timeoutNanos, long now) {
+        if (startedAt == NONE || timeoutNanos == 0) {
+            return Long.MAX_VALUE;
+        }
+        return startedAt + timeoutNanos - now;
+    }
+}
@@ -0,0 +1,279 @@
+/************************************************
+ *
+ * Author: Abanisenioluwa K. Orojo
+ * Assignment: Program 2
+ * Class: CSI 5325
+ *
+ ************************************************/
+package megex.app.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * ContentCache keeps the contents of popular documents in direct buffers outside the heap, so
+ * hot documents are served without touching the file system. Documents are stored already cut
+ * into encoded DATA frames of the server's frame size, with the stream ID left 0 to be set when a
+ * run of frames is written (see {@link FramedBodySource}), so sending a hot document needs no
+ * framing or encoding work at all. An entry is only valid for the version of the file it was read
+ * from; changes invalidate it.
+ *
+ * Every lookup is counted in a {@link FrequencySketch}. A document that is not cached is only
+ * admitted when the cache has room or when it was requested more often recently than the least
+ * recently used documents it would evict (TinyLFU), so a scan of rarely requested files cannot
+ * push out the popular ones. Entries are dropped when a {@link DocumentWatcher} reports that their
+ * file changed.
+ *
+ * The budget counts the encoded frames. Evicted buffers are freed by the garbage collector once the
+ * streams still sending them finish, and are limited by -XX:MaxDirectMemorySize.
+ */
+public class ContentCache {
+    // Used to size the frequency sketch from the budget
+    private static final int AVERAGE_DOCUMENT_SIZE = 8 * 1024;
+
+    private static final int FRAME_OVERHEAD = 3 + 6;
+    private static final byte DATA = 0x0;
+    private static final byte END_STREAM = 0x1;
+
+    private final long budget;
+    private final long maxDocumentSize;
+    private final int frameSize;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<Path, Document> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final FrequencySketch sketch;
+    private long size;
+    // Bumped by every invalidation, so contents read before a change are not admitted after it
+    private long generation;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Constructs a ContentCache.
+     *
+     * @param budget          The number of encoded bytes to keep, 0 to disable the cache.
+     * @param maxDocumentSize The size of the largest document to keep.
+     * @param frameSize       The payload size of the DATA frames documents are cut into.
+     */
+    public ContentCache(long budget, long maxDocumentSize, int frameSize) {
+        this.budget = budget;
+        this.frameSize = frameSize;
+        // Documents are framed in a single buffer
+        this.maxDocumentSize = Math.min(maxDocumentSize, Math.min(budget, Integer.MAX_VALUE / 2));
+        this.sketch = new FrequencySketch((int) Math.min(Integer.MAX_VALUE, budget / AVERAGE_DOCUMENT_SIZE));
+    }
+
+    /**
+     * Looks up a document, counting the request towards its admission.
+     *
+     * @param file The absolute, normalized path of the document.
+     * @return The body of the document, or null if the document is not cached.
+     */
+    public FramedBodySource get(Path file) {
+        if (budget == 0) {
+            return null;
+        }
+        lock.lock();
+        try {
+            sketch.increment(file.hashCode());
+            Document document = entries.get(file);
+            if (document == null) {
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            return document.newBody(frameSize);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads a document into the cache if the admission policy lets it in. Call after a
+     * {@link #get(Path)} miss.
+     *
+     * @param file The absolute, normalized path of the document.
+     * @param size The size of the document.
+     * @return The body of the document, or null if the document was not admitted.
+     * @throws IOException if the document cannot be read.
+     */
+    public FramedBodySource load(Path file, long size) throws IOException {
+        long frameCount = (size + frameSize - 1) / frameSize;
+        long framedSize = size + frameCount * FRAME_OVERHEAD;
+        long loadGeneration;
+        lock.lock();
+        try {
+            if (size > maxDocumentSize || !canAdmit(file, framedSize)) {
+                return null;
+            }
+            loadGeneration = generation;
+        } finally {
+            lock.unlock();
+        }
+
+        ByteBuffer frames = ByteBuffer.allocateDirect((int) framedSize);
+        DocumentReadEvent readEvent = new DocumentReadEvent();
+        readEvent.begin();
+        try (FileChannel channel = open(file)) {
+            for (long position = 0; position < size; position += frameSize) {
+                int length = (int) Math.min(frameSize, size - position);
+                frames.put((byte) (length >> 16)).put((byte) (length >> 8)).put((byte) length);
+                frames.put(DATA).put(position + length == size ? END_STREAM : 0).putInt(0);
+                frames.limit(frames.position() + length);
+                while (frames.hasRemaining()) {
+                    if (channel.read(frames) < 0) {
+                        // File changed under us
+                        return null;
+                    }
+                }
+                frames.limit(frames.capacity());
+            }
+        }
+        if (readEvent.shouldCommit()) {
+            readEvent.source = "ContentCache";
+            readEvent.bytes = size;
+            readEvent.commit();
+        }
+        Document document = new Document(frames.flip().asReadOnlyBuffer(), size);
+
+        lock.lock();
+        try {
+            if (generation != loadGeneration || !canAdmit(file, framedSize)) {
+                return null;
+            }
+            evict(framedSize);
+            Document previous = entries.put(file, document);
+            if (previous != null) {
+                this.size -= previous.frames.capacity();
+            }
+            this.size += framedSize;
+            return document.newBody(frameSize);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drops a document, or everything below a directory, after a change on disk.
+     *
+     * @param path The changed path, or null if any document may have changed.
+     */
+    public void invalidate(Path path) {
+        lock.lock();
+        try {
+            generation++;
+            Iterator<Map.Entry<Path, Document>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Path, Document> entry = iterator.next();
+                if (path == null || entry.getKey().startsWith(path)) {
+                    size -= entry.getValue().frames.capacity();
+                    iterator.remove();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of bytes cached, frame headers included.
+     *
+     * @return The size in bytes.
+     */
+    public long size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of lookups that found their document cached.
+     *
+     * @return The hits.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of lookups that did not find their document cached.
+     *
+     * @return The misses.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Opens a document to read it into the cache. Called without the lock held, so the document
+     * may be invalidated while it is read.
+     *
+     * @param file The absolute, normalized path of the document.
+     * @return The channel to read the document from.
+     * @throws IOException if the document cannot be opened.
+     */
+    protected FileChannel open(Path file) throws IOException {
+        return FileChannel.open(file, StandardOpenOption.READ);
+    }
+
+    /**
+     * Decides whether a document should take the place of the least recently used documents it
+     * would evict. Called with the lock held.
+     */
+    private boolean canAdmit(Path file, long documentSize) {
+        long needed = size + documentSize - budget;
+        if (needed <= 0 || entries.containsKey(file)) {
+            return true;
+        }
+        int candidateFrequency = sketch.frequency(file.hashCode());
+        for (Map.Entry<Path, Document> victim : entries.entrySet()) {
+            if (sketch.frequency(victim.getKey().hashCode()) >= candidateFrequency) {
+                return false;
+            }
+            needed -= victim.getValue().frames.capacity();
+            if (needed <= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Evicts least recently used documents until another one of the given size fits. Called with
+     * the lock held.
+     */
+    private void evict(long documentSize) {
+        Iterator<Document> iterator = entries.values().iterator();
+        while (size + documentSize > budget && iterator.hasNext()) {
+            size -= iterator.next().frames.capacity();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * A cached document as encoded DATA frames.
+     */
+    private static final class Document {
+        private final ByteBuffer frames;
+        private final long length;
+
+        private Document(ByteBuffer frames, long length) {
+            this.frames = frames;
+            this.length = length;
+        }
+
+        private FramedBodySource newBody(int frameSize) {
+            return new FramedBodySource(frames.duplicate(), frameSize, length);
+        }
+    }
+}
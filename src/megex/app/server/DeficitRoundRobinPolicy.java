@@ -0,0 +1,61 @@
+/************************************************
+ *
+ * Author: Abanisenioluwa K. Orojo
+ * Assignment: Program 2
+ * Class: CSI 5325
+ *
+ ************************************************/
+package megex.app.server;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * DeficitRoundRobinPolicy gives the ready streams turns in rotation. Every turn adds a quantum to
+ * the stream's deficit, and the stream sends whole frames while they fit the deficit; what is
+ * left over carries to its next turn. Over time every busy stream sends the same number of bytes,
+ * whatever the size of its body. A stream that has to wait starts again from zero.
+ */
+class DeficitRoundRobinPolicy implements SendPolicy {
+    private final long quantum;
+    private final Queue<StreamSender> active = new ArrayDeque<>();
+    private final Map<StreamSender, Long> deficits = new HashMap<>();
+
+    /**
+     * Constructs a DeficitRoundRobinPolicy.
+     *
+     * @param quantum The bytes a stream earns per turn, at least the maximum data size.
+     */
+    DeficitRoundRobinPolicy(long quantum) {
+        this.quantum = quantum;
+    }
+
+    @Override
+    public void add(StreamSender sender) {
+        active.add(sender);
+    }
+
+    @Override
+    public StreamSender poll() {
+        return active.poll();
+    }
+
+    @Override
+    public long allowance(StreamSender sender) {
+        long deficit = deficits.getOrDefault(sender, 0L) + quantum;
+        deficits.put(sender, deficit);
+        return deficit;
+    }
+
+    @Override
+    public void turnEnded(StreamSender sender, long sent, boolean ready) {
+        if (ready) {
+            deficits.merge(sender, -sent, Long::sum);
+            active.add(sender);
+        } else {
+            deficits.remove(sender);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+/************************************************
+ *
+ * Author: Abanisenioluwa K. Orojo
+ * Assignment: Program 2
+ * Class: CSI 5325
+ *
+ ************************************************/
+package megex.app.server;
+
+import jdk.jfr.*;
+
+/**
+ * DocumentReadEvent is a Flight Recorder event spanning a read of document contents, either for a
+ * stream or to fill the content cache.
+ */
+@Name("megex.DocumentRead")
+@Label("Document Read")
+@Category({"MegEx", "Files"})
+@Description("Reading document contents for a stream or the content cache")
+@StackTrace(false)
+class DocumentReadEvent extends Event {
+    @Label("Stream ID")
+    @Description("The stream the contents are read for, 0 when filling the cache")
+    int streamId;
+
+    @Label("Source")
+    String source;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+}
@@ -0,0 +1,132 @@
+/************************************************
+ *
+ * Author: Abanisenioluwa K. Orojo
+ * Assignment: Program 2
+ * Class: CSI 5325
+ *
+ ************************************************/
+package megex.app.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.logging.*;
+
+/**
+ * DocumentWatcher watches the document root, including directories created later, and tells its
+ * listeners which paths were created, modified or deleted, so caches of documents can drop stale
+ * entries. A listener given null must assume anything changed, which happens when the platform
+ * dropped events.
+ *
+ * Events arrive shortly after the change, and on platforms without native file notifications only
+ * after the next poll, so caches may serve the old document for a few seconds.
+ */
+public class DocumentWatcher implements Closeable {
+    private final WatchService watchService;
+    private final Logger logger;
+    private final List<Consumer<Path>> listeners = new CopyOnWriteArrayList<>();
+    private final Thread worker;
+
+    /**
+     * Constructs a DocumentWatcher and starts watching.
+     *
+     * @param root   The document root.
+     * @param logger The logger for logging events.
+     * @throws IOException if the document root cannot be watched.
+     */
+    public DocumentWatcher(Path root, Logger logger) throws IOException {
+        this.logger = logger;
+        this.watchService = root.getFileSystem().newWatchService();
+        try {
+            registerAll(root.toAbsolutePath().normalize());
+        } catch (IOException e) {
+            watchService.close();
+            throw e;
+        }
+        this.worker = new Thread(this::run, "megex-watcher");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Adds a listener for changed paths. Listeners run on the watcher thread.
+     *
+     * @param listener Called with the absolute, normalized changed path, or null.
+     */
+    public void addListener(Consumer<Path> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Stops watching.
+     */
+    @Override
+    public void close() {
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Error while closing the document watcher", e);
+        }
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                Path directory = (Path) key.watchable();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        notifyListeners(null);
+                        continue;
+                    }
+                    Path changed = directory.resolve((Path) event.context());
+                    notifyListeners(changed);
+                    if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(changed, LinkOption.NOFOLLOW_LINKS)) {
+                        registerNewDirectory(changed);
+                    }
+                }
+                if (!key.reset()) {
+                    // Directory deleted or no longer accessible
+                    notifyListeners(directory);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Shutting down
+        }
+    }
+
+    private void registerNewDirectory(Path directory) {
+        try {
+            registerAll(directory);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Cannot watch " + directory, e);
+        }
+        // Files may have been created before the directory was registered
+        notifyListeners(directory);
+    }
+
+    private void registerAll(Path start) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) throws IOException {
+                directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void notifyListeners(Path changed) {
+        for (Consumer<Path> listener : listeners) {
+            try {
+                listener.accept(changed);
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Document listener failed", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/************************************************
+ *
+ * Author: Abanisenioluwa K. Orojo
+ * Assignment: Program 2
+ * Class: CSI 5325
+ *
+ ************************************************/
+package megex.app.server;
+
+import java.io.IOException;
+import java.nio.channels.*;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.*;
+
+/**
+ * EventLoop multiplexes many non-blocking connections on one thread with a Selector. All
+ * channel and TLS engine operations of a connection run on the loop it was registered with;
+ * other threads hand work to the loop through {@link #execute(Runnable)}.
+ */
+class EventLoop implements Runnable {
+    private final Selector selector;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final Logger logger;
+    private volatile Thread thread;
+    private volatile boolean isShuttingDown = false;
+
+    /**
+     * Constructs a new EventLoop.
+     *
+     * @param logger The logger for logging events.
+     * @throws IOException if the selector cannot be opened.
+     */
+    EventLoop(Logger logger) throws IOException {
+        this.selector = Selector.open();
+        this.logger = logger;
+    }
+
+    /**
+     * Runs a task on the loop thread.
+     *
+     * @param task The task to run.
+     */
+    void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    /**
+     * Returns whether the calling thread is the loop thread.
+     *
+     * @return true on the loop thread.
+     */
+    boolean inEventLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * Registers an accepted channel with the loop and starts its TLS handshake.
+     *
+     * @param tlsChannel The connection to register.
+     */
+    void register(TlsChannel tlsChannel) {
+        execute(() -> {
+            try {
+                tlsChannel.register(selector);
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Error while registering connection", e);
+                tlsChannel.close();
+            }
+        });
+    }
+
+    /**
+     * Stops the loop, closing all of its connections.
+     */
+    void shutdown() {
+        isShuttingDown = true;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        thread = Thread.currentThread();
+        try {
+            while (!isShuttingDown) {
+                selector.select();
+                runTasks();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    TlsChannel tlsChannel = (TlsChannel) key.attachment();
+                    try {
+                        tlsChannel.handle(key);
+                    } catch (RuntimeException | InternalError e) {
+                        // One broken connection must not take the others on this loop down,
+                        // including one whose mapped body faulted after the transport caught it
+                        logger.log(Level.SEVERE, "Error while handling connection", e);
+                        tlsChannel.close();
+                    }
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            logger.log(Level.SEVERE, "Error in event loop", e);
+        } finally {
+            for (SelectionKey key : new ArrayList<>(selector.keys())) {
+                ((TlsChannel) key.attachment()).close();
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Error while closing the selector", e);
+            }
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException | InternalError e) {
+                logger.log(Level.SEVERE, "Error in event loop task", e);
+            }
+        }
+    }
+}
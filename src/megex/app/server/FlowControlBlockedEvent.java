@@ -0,0 +1,29 @@
+/************************************************
+ *
+ * Author: Abanisenioluwa K. Orojo
+ * Assignment: Program 2
+ * Class: CSI 5325
+ *
+ ************************************************/
+package megex.app.server;
+
+import jdk.jfr.*;
+
+/**
+ * FlowControlBlockedEvent is a Flight Recorder event spanning the time a stream waits for flow
+ * control credit.
+ */
+@Name("megex.FlowControlBlocked")
+@Label("Flow Control Blocked")
+@Category({"MegEx", "Streams"})
+@Description("A stream waiting for flow control credit")
+@StackTrace(false)
+class FlowControlBlockedEvent extends Event {
+    @Label("Stream ID")
+    int streamId;
+
+    @Label("Remaining")
+    @Description("Body bytes not sent yet")
+    @DataAmount
+    long remaining;
+}
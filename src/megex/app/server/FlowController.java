@@ -0,0 +1,225 @@
+/************************************************
+ *
+ * Author: Abanisenioluwa K. Orojo
+ * Assignment: Program 2
+ * Class: CSI 5325
+ *
+ ************************************************/
+package megex.app.server;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * FlowController keeps the send windows of one connection: a window for the connection and one
+ * for each open stream, all starting at the initial window size and grown by the client's
+ * WINDOW_UPDATE frames.
+ *
+ * A sender takes credit with {@link #acquire(int, int, Runnable)} before each DATA frame and gets
+ * at most what both windows allow. When no credit is left, the sender's resume callback is kept
+ * and the sender returns instead of blocking; the callback runs once a WINDOW_UPDATE (or a larger
+ * initial window) gives the stream credit again.
+ */
+class FlowController {
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<Integer, StreamWindow> streams = new HashMap<>();
+    // Streams waiting for credit, in the order they ran out
+    private final Map<Integer, StreamWindow> parked = new LinkedHashMap<>();
+    private int initialWindowSize;
+    private long connectionWindow;
+    private boolean isClosed = false;
+
+    /**
+     * Constructs a new FlowController.
+     *
+     * @param initialWindowSize The initial send window of the connection and of each stream.
+     */
+    FlowController(int initialWindowSize) {
+        this.initialWindowSize = initialWindowSize;
+        this.connectionWindow = initialWindowSize;
+    }
+
+    /**
+     * Opens the send window of a new stream. Opening a stream that is already open has no effect.
+     *
+     * @param streamId The stream ID.
+     */
+    void open(int streamId) {
+        lock.lock();
+        try {
+            streams.putIfAbsent(streamId, new StreamWindow(initialWindowSize));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes the send window of a finished stream.
+     *
+     * @param streamId The stream ID.
+     */
+    void close(int streamId) {
+        lock.lock();
+        try {
+            streams.remove(streamId);
+            parked.remove(streamId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes send credit for a DATA frame.
+     *
+     * @param streamId The stream ID.
+     * @param wanted   The number of bytes the sender would like to send.
+     * @param resume   Called once when credit is available again, if none is now.
+     * @return The number of bytes the sender may send, or 0 if it has to wait for resume.
+     * @throws IOException if the connection has closed or the stream is not open.
+     */
+    int acquire(int streamId, int wanted, Runnable resume) throws IOException {
+        lock.lock();
+        try {
+            StreamWindow stream = streams.get(streamId);
+            if (isClosed || stream == null) {
+                throw new IOException("Stream " + streamId + " is closed");
+            }
+            int granted = (int) Math.min(wanted, Math.min(stream.window, connectionWindow));
+            if (granted <= 0) {
+                stream.resume = resume;
+                parked.put(streamId, stream);
+                return 0;
+            }
+            stream.window -= granted;
+            connectionWindow -= granted;
+            return granted;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds credit from a WINDOW_UPDATE frame, resuming the senders it unblocks.
+     *
+     * @param streamId  The stream ID, or 0 for the connection window.
+     * @param increment The credit to add.
+     * @return false if the update would grow the window past the protocol maximum and was ignored.
+     */
+    boolean increment(int streamId, int increment) {
+        List<Runnable> resumed = new ArrayList<>();
+        lock.lock();
+        try {
+            if (streamId == 0) {
+                if (connectionWindow + increment > Integer.MAX_VALUE) {
+                    return false;
+                }
+                connectionWindow += increment;
+            } else {
+                StreamWindow stream = streams.get(streamId);
+                if (stream == null) {
+                    // Stream already finished
+                    return true;
+                }
+                if (stream.window + increment > Integer.MAX_VALUE) {
+                    return false;
+                }
+                stream.window += increment;
+            }
+            collectResumable(resumed);
+        } finally {
+            lock.unlock();
+        }
+        resumed.forEach(Runnable::run);
+        return true;
+    }
+
+    /**
+     * Gives back credit taken with {@link #acquire(int, int, Runnable)} that the sender did not
+     * use, such as when the body ran out before filling the frame, resuming the senders it unblocks.
+     *
+     * @param streamId The stream ID.
+     * @param unused   The credit to give back.
+     */
+    void release(int streamId, int unused) {
+        List<Runnable> resumed = new ArrayList<>();
+        lock.lock();
+        try {
+            connectionWindow += unused;
+            StreamWindow stream = streams.get(streamId);
+            if (stream != null) {
+                stream.window += unused;
+            }
+            collectResumable(resumed);
+        } finally {
+            lock.unlock();
+        }
+        resumed.forEach(Runnable::run);
+    }
+
+    /**
+     * Applies a new initial window size from the client's SETTINGS, moving the window of every open
+     * stream by the difference.
+     *
+     * @param windowSize The new initial window size.
+     */
+    void setInitialWindowSize(int windowSize) {
+        List<Runnable> resumed = new ArrayList<>();
+        lock.lock();
+        try {
+            long delta = (long) windowSize - initialWindowSize;
+            initialWindowSize = windowSize;
+            for (StreamWindow stream : streams.values()) {
+                stream.window += delta;
+            }
+            collectResumable(resumed);
+        } finally {
+            lock.unlock();
+        }
+        resumed.forEach(Runnable::run);
+    }
+
+    /**
+     * Closes all windows, resuming every waiting sender so it can see the connection is gone.
+     */
+    void closeAll() {
+        List<Runnable> resumed = new ArrayList<>();
+        lock.lock();
+        try {
+            isClosed = true;
+            for (StreamWindow stream : parked.values()) {
+                resumed.add(stream.resume);
+                stream.resume = null;
+            }
+            parked.clear();
+            streams.clear();
+        } finally {
+            lock.unlock();
+        }
+        resumed.forEach(Runnable::run);
+    }
+
+    private void collectResumable(List<Runnable> resumed) {
+        if (connectionWindow <= 0) {
+            return;
+        }
+        Iterator<StreamWindow> waiting = parked.values().iterator();
+        while (waiting.hasNext()) {
+            StreamWindow stream = waiting.next();
+            if (stream.window > 0) {
+                resumed.add(stream.resume);
+                stream.resume = null;
+                waiting.remove();
+            }
+        }
+    }
+
+    private static final class StreamWindow {
+        private long window;
+        private Runnable resume;
+
+        private StreamWindow(long window) {
+            this.window = window;
+        }
+    }
+}
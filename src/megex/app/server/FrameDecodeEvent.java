@@ -0,0 +1,31 @@
+/************************************************
+ *
+ * Author: Abanisenioluwa K. Orojo
+ * Assignment: Program 2
+ * Class: CSI 5325
+ *
+ ************************************************/
+package megex.app.server;
+
+import jdk.jfr.*;
+
+/**
+ * FrameDecodeEvent is a Flight Recorder event spanning the decoding of a received frame.
+ */
+@Name("megex.FrameDecode")
+@Label("Frame Decode")
+@Category({"MegEx", "Frames"})
+@Description("Decoding a received frame")
+@StackTrace(false)
+class FrameDecodeEvent extends Event {
+    @Label("Stream ID")
+    int streamId;
+
+    @Label("Type")
+    int type;
+
+    @Label("Length")
+    @Description("Frame size, including the length prefix and header")
+    @DataAmount
+    int length;
+}
@@ -0,0 +1,36 @@
+/************************************************
+ *
+ * Author: Abanisenioluwa K. Orojo
+ * Assignment: Program 2
+ * Class: CSI 5325
+ *
+ ************************************************/
+package megex.app.server;
+
+import jdk.jfr.*;
+
+/**
+ * FrameEncodeEvent is a Flight Recorder event spanning the encoding of frames and their writing to
+ * the transport. Cached DATA frames are only stamped with their stream ID, so one event covers a
+ * run of them.
+ */
+@Name("megex.FrameEncode")
+@Label("Frame Encode")
+@Category({"MegEx", "Frames"})
+@Description("Encoding frames and writing them to the transport")
+@StackTrace(false)
+class FrameEncodeEvent extends Event {
+    @Label("Stream ID")
+    int streamId;
+
+    @Label("Type")
+    int type;
+
+    @Label("Frames")
+    int frames;
+
+    @Label("Length")
+    @Description("Size of the frames, including length prefixes and headers")
+    @DataAmount
+    long length;
+}
@@ -0,0 +1,103 @@
+/************************************************
+ *
+ * Author: Abanisenioluwa K. Orojo
+ * Assignment: Program 2
+ * Class: CSI 5325
+ *
+ ************************************************/
+package megex.app.server;
+
+import java.nio.ByteBuffer;
+
+/**
+ * FramedBodySource serves a body that is held as a sequence of encoded DATA frames, as the
+ * content cache keeps it: every frame but the last carries exactly frameSize payload bytes, each
+ * is preceded by its 3-byte length and 6-byte header with stream ID 0, and the last one carries
+ * END_STREAM.
+ *
+ * While the sender's position is on a frame boundary, whole frames are handed out with
+ * {@link #readFrames(int)} for the connection to write in bulk. When flow control grants less
+ * than a frame, the rest of that frame is read as plain payload, after which the sender is back
+ * on a boundary.
+ */
+class FramedBodySource implements BodySource {
+    private static final int FRAME_OVERHEAD = 3 + 6;
+
+    private final ByteBuffer frames;
+    private final int frameSize;
+    private final long length;
+    private long position;
+
+    /**
+     * Constructs a new FramedBodySource.
+     *
+     * @param frames    The encoded frames, starting at position 0. The source takes over the buffer.
+     * @param frameSize The payload size of every frame but the last.
+     * @param length    The total payload length.
+     */
+    FramedBodySource(ByteBuffer frames, int frameSize, long length) {
+        this.frames = frames;
+        this.frameSize = frameSize;
+        this.length = length;
+    }
+
+    /**
+     * Returns the body length.
+     *
+     * @return The length in bytes.
+     */
+    long length() {
+        return length;
+    }
+
+    @Override
+    public int nextLength(int max, int maxFrameSize) {
+        int offset = (int) (position % frameSize);
+        if (offset != 0) {
+            // Realign to the next frame boundary
+            return Math.min(max, frameSize - offset);
+        }
+        return max;
+    }
+
+    @Override
+    public ByteBuffer readFrames(int wanted) {
+        if (position % frameSize != 0) {
+            return null;
+        }
+        long available = Math.min(wanted, length - position);
+        long count = available / frameSize;
+        long end = position + count * frameSize;
+        if (available == length - position && end < length) {
+            // The last, short frame completes the body
+            count++;
+            end = length;
+        }
+        if (count == 0) {
+            return null;
+        }
+        int start = frameOffset(position);
+        int runLength = (int) (count * FRAME_OVERHEAD + (end - position));
+        position = end;
+        return frames.slice(start, runLength);
+    }
+
+    @Override
+    public ByteBuffer read(int wanted) {
+        int count = (int) Math.min(wanted, length - position);
+        ByteBuffer piece = frames.slice(frameOffset(position) + FRAME_OVERHEAD + (int) (position % frameSize), count);
+        position += count;
+        return piece;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Returns where the frame holding a body position starts in the buffer.
+     */
+    private int frameOffset(long bodyPosition) {
+        return (int) (bodyPosition / frameSize * (FRAME_OVERHEAD + frameSize));
+    }
+}
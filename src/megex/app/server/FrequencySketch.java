@@ -0,0 +1,84 @@
+/************************************************
+ *
+ * Author: Abanisenioluwa K. Orojo
+ * Assignment: Program 2
+ * Class: CSI 5325
+ *
+ ************************************************/
+package megex.app.server;
+
+/**
+ * FrequencySketch estimates how often keys were seen recently, in the style of TinyLFU: a
+ * count-min sketch of 4-bit counters that are all halved once enough keys have been recorded,
+ * so old popularity fades. Estimates may be too high when keys collide, never too low.
+ *
+ * Not thread safe; callers must hold a lock.
+ */
+class FrequencySketch {
+    private static final int DEPTH = 4;
+    private static final int MAX_COUNT = 15;
+    private static final int[] SEEDS = {0x97cb3127, 0xb1a3cd57, 0xe3c6b6a5, 0x2ef58b1d};
+
+    private final byte[] table;
+    private final int mask;
+    private final int sampleSize;
+    private int samples;
+
+    /**
+     * Constructs a FrequencySketch.
+     *
+     * @param expectedKeys The number of distinct keys expected to be popular at once.
+     */
+    FrequencySketch(int expectedKeys) {
+        int width = Integer.highestOneBit(Math.max(64, Math.min(1 << 24, expectedKeys)) - 1) << 1;
+        this.table = new byte[DEPTH * width];
+        this.mask = width - 1;
+        this.sampleSize = 10 * width;
+    }
+
+    /**
+     * Records one occurrence of a key.
+     *
+     * @param hash The hash code of the key.
+     */
+    void increment(int hash) {
+        boolean added = false;
+        for (int i = 0; i < DEPTH; i++) {
+            int index = indexOf(hash, i);
+            if (table[index] < MAX_COUNT) {
+                table[index]++;
+                added = true;
+            }
+        }
+        if (added && ++samples >= sampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     * Estimates the recent occurrences of a key.
+     *
+     * @param hash The hash code of the key.
+     * @return The estimate, at most 15.
+     */
+    int frequency(int hash) {
+        int frequency = MAX_COUNT;
+        for (int i = 0; i < DEPTH; i++) {
+            frequency = Math.min(frequency, table[indexOf(hash, i)]);
+        }
+        return frequency;
+    }
+
+    private int indexOf(int hash, int row) {
+        int h = (hash ^ (hash >>> 16)) * SEEDS[row];
+        h ^= h >>> 15;
+        return row * (mask + 1) + (h & mask);
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] >>= 1;
+        }
+        samples /= 2;
+    }
+}
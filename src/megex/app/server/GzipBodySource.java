@@ -0,0 +1,159 @@
+/************************************************
+ *
+ * Author: Abanisenioluwa K. Orojo
+ * Assignment: Program 2
+ * Class: CSI 5325
+ *
+ ************************************************/
+package megex.app.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * GzipBodySource compresses a body into the gzip format while it is sent. Each stream has its own
+ * Deflater, fed from the file as the sender asks for pieces, so only about one input buffer of
+ * the file is held at a time and the compressed length is not known until the end.
+ *
+ * Up to a limit, the compressed bytes are also collected and handed over once the body is
+ * complete, so the caller can keep them for the next request of the same file version.
+ */
+public class GzipBodySource implements BodySource {
+    private static final int BUFFER_SIZE = 16 * 1024;
+    // Magic, deflate, no flags, no modification time, no extra flags, unknown OS
+    private static final byte[] HEADER = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private final InputStream in;
+    private final Deflater deflater;
+    private final CRC32 crc = new CRC32();
+    private final byte[] input = new byte[BUFFER_SIZE];
+    private final int maxCollected;
+    private final Consumer<byte[]> onComplete;
+    // Compressed bytes not read yet are output[start, end)
+    private byte[] output = new byte[BUFFER_SIZE];
+    private int start;
+    private int end;
+    private ByteArrayOutputStream collected;
+    private boolean isInputDone = false;
+    private boolean isFinished = false;
+
+    /**
+     * Constructs a new GzipBodySource.
+     *
+     * @param in           The uncompressed body, closed with the source.
+     * @param level        The compression level, from 1 to 9.
+     * @param maxCollected The largest compressed body to hand over, 0 to collect nothing.
+     * @param onComplete   Receives the whole compressed body once it is complete, unless it is
+     *                     larger than maxCollected.
+     */
+    public GzipBodySource(InputStream in, int level, int maxCollected, Consumer<byte[]> onComplete) {
+        this.in = in;
+        this.deflater = new Deflater(level, true);
+        this.maxCollected = maxCollected;
+        this.onComplete = onComplete;
+        this.collected = maxCollected > 0 ? new ByteArrayOutputStream() : null;
+        append(HEADER, 0, HEADER.length);
+    }
+
+    @Override
+    public ByteBuffer read(int length) throws IOException {
+        while (end - start < length && !isFinished) {
+            compress();
+        }
+        int count = Math.min(length, end - start);
+        // A fresh array, as the transport may still hold the previous piece
+        ByteBuffer piece = ByteBuffer.wrap(Arrays.copyOfRange(output, start, start + count));
+        start += count;
+        return piece;
+    }
+
+    @Override
+    public boolean isAtEnd() {
+        return isFinished && start == end;
+    }
+
+    @Override
+    public void close() throws IOException {
+        deflater.end();
+        in.close();
+    }
+
+    /**
+     * Feeds the deflater if it needs input and takes what it produces, adding the trailer once it
+     * has finished.
+     */
+    private void compress() throws IOException {
+        if (deflater.needsInput() && !isInputDone) {
+            int bytesRead = in.read(input);
+            if (bytesRead < 0) {
+                isInputDone = true;
+                deflater.finish();
+            } else {
+                crc.update(input, 0, bytesRead);
+                deflater.setInput(input, 0, bytesRead);
+            }
+        }
+        ensureRoom(BUFFER_SIZE);
+        int produced = deflater.deflate(output, end, output.length - end);
+        collect(output, end, produced);
+        end += produced;
+        if (deflater.finished()) {
+            byte[] trailer = new byte[8];
+            writeIntLE(trailer, 0, (int) crc.getValue());
+            writeIntLE(trailer, 4, (int) deflater.getBytesRead());
+            append(trailer, 0, trailer.length);
+            isFinished = true;
+            if (collected != null) {
+                onComplete.accept(collected.toByteArray());
+                collected = null;
+            }
+        }
+    }
+
+    private void append(byte[] bytes, int offset, int length) {
+        ensureRoom(length);
+        System.arraycopy(bytes, offset, output, end, length);
+        collect(bytes, offset, length);
+        end += length;
+    }
+
+    private void collect(byte[] bytes, int offset, int length) {
+        if (collected == null) {
+            return;
+        }
+        if (collected.size() + length > maxCollected) {
+            // Too large to keep
+            collected = null;
+            return;
+        }
+        collected.write(bytes, offset, length);
+    }
+
+    /**
+     * Makes room for more bytes after the unread ones, moving them to the front of the buffer.
+     */
+    private void ensureRoom(int length) {
+        if (output.length - end >= length) {
+            return;
+        }
+        int pending = end - start;
+        byte[] target = pending + length > output.length ? new byte[Math.max(output.length * 2, pending + length)] : output;
+        System.arraycopy(output, start, target, 0, pending);
+        output = target;
+        start = 0;
+        end = pending;
+    }
+
+    private static void writeIntLE(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) value;
+        bytes[offset + 1] = (byte) (value >>> 8);
+        bytes[offset + 2] = (byte) (value >>> 16);
+        bytes[offset + 3] = (byte) (value >>> 24);
+    }
+}
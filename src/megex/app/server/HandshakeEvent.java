@@ -0,0 +1,32 @@
+/************************************************
+ *
+ * Author: Abanisenioluwa K. Orojo
+ * Assignment: Program 2
+ * Class: CSI 5325
+ *
+ ************************************************/
+package megex.app.server;
+
+import jdk.jfr.*;
+
+/**
+ * HandshakeEvent is a Flight Recorder event spanning the TLS handshake of a client connection.
+ */
+@Name("megex.Handshake")
+@Label("TLS Handshake")
+@Category({"MegEx", "Connections"})
+@Description("The TLS handshake of a client connection")
+@StackTrace(false)
+class HandshakeEvent extends Event {
+    @Label("Remote Address")
+    String remoteAddress;
+
+    @Label("Protocol")
+    String protocol;
+
+    @Label("Cipher Suite")
+    String cipherSuite;
+
+    @Label("Application Protocol")
+    String applicationProtocol;
+}
@@ -0,0 +1,111 @@
+/************************************************
+ *
+ * Author: Abanisenioluwa K. Orojo
+ * Assignment: Program 2
+ * Class: CSI 5325
+ *
+ ************************************************/
+package megex.app.server;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * HeaderTableBudget caps the HPACK dynamic table memory of all connections together.
+ *
+ * Every connection holds an encoder and a decoder table of the same size. A connection is given
+ * the configured size while the budget allows it and a fair share of the budget otherwise, but
+ * never less than the minimum size. Connections call {@link #rebalance(int)} as they run, which
+ * shrinks tables above the fair share while the budget is exceeded and grows them back once
+ * memory is available again.
+ */
+public class HeaderTableBudget {
+    private final long maxBytes;
+    private final int tableSize;
+    private final int minTableSize;
+    private final AtomicLong used = new AtomicLong();
+    private final AtomicInteger connections = new AtomicInteger();
+
+    /**
+     * Constructs a new HeaderTableBudget.
+     *
+     * @param maxBytes     The total table memory of all connections.
+     * @param tableSize    The table size of a connection when memory is available.
+     * @param minTableSize The table size a connection keeps under pressure.
+     */
+    public HeaderTableBudget(long maxBytes, int tableSize, int minTableSize) {
+        if (maxBytes < 0 || minTableSize < 0 || tableSize < minTableSize) {
+            throw new IllegalArgumentException("Invalid header table budget");
+        }
+        this.maxBytes = maxBytes;
+        this.tableSize = tableSize;
+        this.minTableSize = minTableSize;
+    }
+
+    /**
+     * Registers a new connection.
+     *
+     * @return The size of each of the connection's dynamic tables.
+     */
+    public int open() {
+        int size = clamp(fairShare(connections.incrementAndGet()));
+        used.addAndGet(2L * size);
+        return size;
+    }
+
+    /**
+     * Unregisters a connection and releases its tables.
+     *
+     * @param size The current size of each of the connection's dynamic tables.
+     */
+    public void close(int size) {
+        connections.decrementAndGet();
+        used.addAndGet(-2L * size);
+    }
+
+    /**
+     * Returns the table size a connection should move to.
+     *
+     * @param size The current size of each of the connection's dynamic tables.
+     * @return The new table size, or size if the connection should keep its tables.
+     */
+    public int rebalance(int size) {
+        long share = fairShare(connections.get());
+        while (true) {
+            long current = used.get();
+            int target;
+            if (current > maxBytes && size > share) {
+                // Shrink to the fair share while over budget
+                target = clamp(share);
+            } else if (current < maxBytes && size < tableSize && share - size > size / 4) {
+                // Grow back when well below the fair share and the budget allows it
+                target = clamp(Math.min(share, size + (maxBytes - current) / 2));
+            } else {
+                return size;
+            }
+            if (target == size || (current <= maxBytes && target < size)) {
+                return size;
+            }
+            if (used.compareAndSet(current, current + 2L * (target - size))) {
+                return target;
+            }
+        }
+    }
+
+    /**
+     * Returns the table memory currently reserved by all connections.
+     *
+     * @return The reserved memory in bytes.
+     */
+    public long getUsed() {
+        return used.get();
+    }
+
+    private long fairShare(int connections) {
+        return maxBytes / (2L * Math.max(connections, 1));
+    }
+
+    private int clamp(long size) {
+        return (int) Math.max(minTableSize, Math.min(tableSize, size));
+    }
+}
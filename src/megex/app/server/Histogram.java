@@ -0,0 +1,130 @@
+/************************************************
+ *
+ * Author: Abanisenioluwa K. Orojo
+ * Assignment: Program 2
+ * Class: CSI 5325
+ *
+ ************************************************/
+package megex.app.server;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram counts non-negative values in fixed memory, in the style of HdrHistogram. Values below
+ * {@link #SUB_BUCKETS} are counted exactly; above that, each power of two is split into
+ * {@link #SUB_BUCKETS} equal sub-buckets, so every recorded value is known to within about 3%
+ * whatever its magnitude. All counts live in one array allocated up front.
+ *
+ * Recording is lock-free, so any thread can record on a hot path; reading walks the array and is
+ * meant for occasional snapshots, which may miss values recorded meanwhile. Quantiles are reported
+ * as the highest value of their bucket.
+ */
+public class Histogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Exact counts below SUB_BUCKETS, then SUB_BUCKETS per power of two up to 2^63
+    private static final int BUCKETS = SUB_BUCKETS + (Long.SIZE - 1 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Records a value. Negative values count as 0.
+     *
+     * @param value The value.
+     */
+    public void record(long value) {
+        long clamped = Math.max(0, value);
+        counts.incrementAndGet(indexOf(clamped));
+        count.increment();
+        sum.add(clamped);
+        max.accumulate(clamped);
+    }
+
+    /**
+     * Returns the number of recorded values.
+     *
+     * @return The count.
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Returns the sum of the recorded values.
+     *
+     * @return The sum.
+     */
+    public long getSum() {
+        return sum.sum();
+    }
+
+    /**
+     * Returns the largest recorded value.
+     *
+     * @return The maximum, or 0 if nothing was recorded.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns the value below which the given fraction of the recorded values fall.
+     *
+     * @param quantile The fraction, from 0 to 1.
+     * @return The highest value of the bucket holding the quantile, or 0 if nothing was recorded.
+     */
+    public long getQuantile(double quantile) {
+        return getQuantiles(quantile)[0];
+    }
+
+    /**
+     * Returns several quantiles from one pass over the buckets.
+     *
+     * @param quantiles The fractions, from 0 to 1, in ascending order.
+     * @return The quantiles, as for {@link #getQuantile(double)}.
+     */
+    public long[] getQuantiles(double... quantiles) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        long[] values = new long[quantiles.length];
+        int next = 0;
+        long seen = 0;
+        for (int i = 0; i < BUCKETS && next < quantiles.length && total > 0; i++) {
+            seen += snapshot[i];
+            while (next < quantiles.length && seen > 0 && seen >= Math.ceil(quantiles[next] * total)) {
+                // The bucket can reach past the largest value actually recorded
+                values[next++] = Math.min(highestValueOf(i), getMax());
+            }
+        }
+        return values;
+    }
+
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int magnitude = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int shift = magnitude - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+        return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket;
+    }
+
+    private static long highestValueOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+        long subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS;
+        long lowest = (SUB_BUCKETS + subBucket) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
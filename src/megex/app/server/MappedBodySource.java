@@ -0,0 +1,79 @@
+/************************************************
+ *
+ * Author: Abanisenioluwa K. Orojo
+ * Assignment: Program 2
+ * Class: CSI 5325
+ *
+ ************************************************/
+package megex.app.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * MappedBodySource serves a file body, or a range of one, from a read-only memory mapping. Each
+ * piece is a slice of the mapping, so the bytes go from the page cache to the transport without
+ * being copied into the heap or allocating an array per frame.
+ *
+ * Files are mapped {@link #REGION_SIZE} bytes at a time, which also covers files larger than a
+ * single mapping can address; the file size is checked once per region. The JDK releases a
+ * mapping when it is garbage collected, not when the source is closed. A file truncated while it
+ * is being sent makes access past its new end fail with an InternalError wherever the slice is
+ * read, so the transports turn that error into an IOException that closes only the connection
+ * sending the file.
+ */
+class MappedBodySource implements BodySource {
+    private static final long REGION_SIZE = 64L * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final long end;
+    private MappedByteBuffer region;
+    private long regionStart;
+    private long position;
+
+    /**
+     * Opens a file for mapping.
+     *
+     * @param file   The file.
+     * @param offset The offset of the first byte to serve.
+     * @param length The number of bytes to serve.
+     * @throws IOException if the file cannot be opened.
+     */
+    MappedBodySource(Path file, long offset, long length) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.end = offset + length;
+        this.position = offset;
+    }
+
+    @Override
+    public ByteBuffer read(int wanted) throws IOException {
+        int count = (int) Math.min(wanted, end - position);
+        if (count <= 0) {
+            return ByteBuffer.allocate(0);
+        }
+        if (region == null || position + count > regionStart + region.capacity()) {
+            // Map from the current position, so a piece never spans two regions
+            regionStart = position;
+            long size = Math.min(REGION_SIZE, Math.min(end, channel.size()) - position);
+            if (size <= 0) {
+                // File shrank
+                return ByteBuffer.allocate(0);
+            }
+            region = channel.map(FileChannel.MapMode.READ_ONLY, regionStart, size);
+            count = (int) Math.min(count, size);
+        }
+        ByteBuffer piece = region.slice((int) (position - regionStart), count);
+        position += count;
+        return piece;
+    }
+
+    @Override
+    public void close() throws IOException {
+        region = null;
+        channel.close();
+    }
+}
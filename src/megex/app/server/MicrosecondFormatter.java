@@ -7,7 +7,9 @@
  ************************************************/
 package megex.app.server;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.logging.Formatter;
 import java.util.logging.LogRecord;
@@ -16,10 +18,24 @@ import java.util.logging.LogRecord;
  * MicrosecondFormatter is a custom log formatter that extends the java.util.logging.Formatter
  * class. It provides a custom format for log messages, including a timestamp with microsecond
  * precision.
+ *
+ * The timestamp is the time the record was created, not the time it is formatted, so records
+ * written late by an {@link AsyncLogHandler} keep their time. The date and time up to the second
+ * are formatted once per second and cached; only the microseconds are appended per record.
+ * Messages with parameters are filled in here, so callers that pass parameters instead of
+ * concatenating strings leave that work to the thread doing the formatting.
+ *
+ * A MicrosecondFormatter is not thread safe; it is meant to be used by one handler.
  */
 public class MicrosecondFormatter extends Formatter {
-    // Define the DateTimeFormatter with the desired pattern (microsecond precision)
-    private static final DateTimeFormatter dateTimeFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSSSSS");
+    // Define the DateTimeFormatter with the desired pattern (seconds; microseconds are appended)
+    private static final DateTimeFormatter dateTimeFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.");
+    private static final String lineSeparator = System.lineSeparator();
+
+    private final ZoneId zone = ZoneId.systemDefault();
+    private final StringBuilder builder = new StringBuilder(256);
+    private long cachedSecond = Long.MIN_VALUE;
+    private String cachedPrefix;
 
     /**
      * Format the given LogRecord with a custom timestamp format and log level.
@@ -29,11 +45,57 @@ public class MicrosecondFormatter extends Formatter {
      */
     @Override
     public String format(LogRecord record) {
-        // Get the current timestamp with LocalDateTime and format it with the defined DateTimeFormatter
-        LocalDateTime dateTime = LocalDateTime.now();
-        String timestamp = dateTime.format(dateTimeFormatter);
+        // Reuse the date and time of the second the record was created in
+        Instant instant = record.getInstant();
+        if (instant.getEpochSecond() != cachedSecond) {
+            cachedSecond = instant.getEpochSecond();
+            cachedPrefix = LocalDateTime.ofInstant(Instant.ofEpochSecond(cachedSecond), zone).format(dateTimeFormatter);
+        }
+        builder.setLength(0);
+        builder.append(cachedPrefix);
+        int micros = instant.getNano() / 1000;
+        for (int digit = 100000; digit > 0; digit /= 10) {
+            builder.append((char) ('0' + micros / digit % 10));
+        }
 
-        // Return the formatted log message, including the timestamp, log level, and the log message
-        return String.format("%s %s %s%n", timestamp, record.getLevel(), formatMessage(record));
+        // Append the log level and the log message
+        builder.append(' ').append(record.getLevel().getName()).append(' ');
+        appendMessage(record);
+        builder.append(lineSeparator);
+        return builder.toString();
+    }
+
+    /**
+     * Appends the message, replacing {0}, {1}, ... with the parameters. Anything else, such as a
+     * localized message or a MessageFormat pattern, goes through {@link #formatMessage(LogRecord)}.
+     */
+    private void appendMessage(LogRecord record) {
+        String message = record.getMessage();
+        Object[] parameters = record.getParameters();
+        if (message == null || parameters == null || parameters.length == 0) {
+            builder.append(message);
+            return;
+        }
+        if (record.getResourceBundle() != null || message.indexOf('\'') >= 0 || parameters.length > 10) {
+            builder.append(formatMessage(record));
+            return;
+        }
+        int start = builder.length();
+        int length = message.length();
+        for (int i = 0; i < length; i++) {
+            char c = message.charAt(i);
+            if (c == '{' && i + 2 < length && message.charAt(i + 2) == '}' && Character.isDigit(message.charAt(i + 1))) {
+                int index = message.charAt(i + 1) - '0';
+                if (index >= parameters.length) {
+                    builder.setLength(start);
+                    builder.append(formatMessage(record));
+                    return;
+                }
+                builder.append(parameters[index]);
+                i += 2;
+            } else {
+                builder.append(c);
+            }
+        }
     }
 }
@@ -0,0 +1,314 @@
+/************************************************
+ *
+ * Author: Abanisenioluwa K. Orojo
+ * Assignment: Program 2
+ * Class: CSI 5325
+ *
+ ************************************************/
+package megex.app.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * PathCache maps request paths to what they resolve to under the document root: a readable file
+ * with its size and modification time, a directory, or nothing, which is also what paths leading
+ * out of the root resolve to. Failed lookups are cached too, so clients requesting paths that do
+ * not exist cost one map lookup instead of several file system calls per request.
+ *
+ * Entries are dropped when a {@link DocumentWatcher} reports a change below the root, and in any
+ * case once they are older than the time to live, which bounds staleness where the platform
+ * cannot watch the root. The number of entries is bounded, so scans of random paths cannot grow
+ * the cache without limit.
+ *
+ * The cache also hands out the ETag of each file, computed once per version of the file: a
+ * lookup that finds the same size and modification time as the entry it replaces keeps that
+ * entry's ETag, so content hashes are not recomputed every time to live.
+ */
+public class PathCache {
+    // Entries looked at for an expired one before evicting an arbitrary one
+    private static final int EVICTION_SAMPLE = 8;
+
+    /**
+     * What a request path resolves to.
+     */
+    enum Type {
+        /** A regular, readable file. */
+        FILE,
+        /** A directory. */
+        DIRECTORY,
+        /** Nothing that can be served. */
+        NOT_FOUND
+    }
+
+    private final Path root;
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final long hashMaxSize;
+    private final ConcurrentMap<String, Resolution> entries = new ConcurrentHashMap<>();
+    // Bumped by every invalidation, so lookups that raced with a change are not cached
+    private final AtomicLong generation = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Constructs a PathCache.
+     *
+     * @param root        The document root.
+     * @param maxEntries  The number of paths to remember, 0 to disable the cache.
+     * @param ttlMillis   The time after which an entry is looked up again.
+     * @param hashMaxSize The size up to which ETags are hashed from the file content, 0 for none.
+     */
+    public PathCache(Path root, int maxEntries, long ttlMillis, long hashMaxSize) {
+        this.root = root.toAbsolutePath().normalize();
+        this.maxEntries = maxEntries;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.hashMaxSize = hashMaxSize;
+    }
+
+    /**
+     * Resolves a request path.
+     *
+     * @param path The :path of the request.
+     * @return The resolution.
+     */
+    Resolution resolve(String path) {
+        long now = System.nanoTime();
+        Resolution cached = entries.get(path);
+        if (cached != null && now - cached.resolvedAt < ttlNanos) {
+            hits.increment();
+            return cached;
+        }
+        misses.increment();
+
+        long lookupGeneration = generation.get();
+        Resolution resolution = lookUp(path, now);
+        if (cached != null && cached.isSameVersion(resolution)) {
+            resolution.tag = cached.tag;
+        }
+        if (maxEntries > 0 && resolution.file != null && resolution.file.startsWith(root)) {
+            if (entries.size() >= maxEntries) {
+                evictOne(now);
+            }
+            entries.put(path, resolution);
+            if (generation.get() != lookupGeneration) {
+                // Changed while looking up
+                entries.remove(path, resolution);
+            }
+        }
+        return resolution;
+    }
+
+    /**
+     * Drops the entries for a path and everything below it after a change on disk.
+     *
+     * @param changed The changed path, or null if any path may have changed.
+     */
+    public void invalidate(Path changed) {
+        generation.incrementAndGet();
+        if (changed == null) {
+            entries.clear();
+            return;
+        }
+        entries.values().removeIf(resolution -> resolution.file.startsWith(changed));
+    }
+
+    /**
+     * Returns the ETag of a resolved file: a hash of its content if it is no larger than the hash
+     * limit, otherwise its modification time and size.
+     *
+     * @param resolution The resolution of a file.
+     * @return The quoted entity tag.
+     */
+    String etag(Resolution resolution) {
+        return "\"" + tag(resolution) + "\"";
+    }
+
+    /**
+     * Returns the ETag of an encoded variant of a resolved file. A variant is a different
+     * representation, so its strong tag is derived from the file's but never equals it.
+     *
+     * @param resolution    The resolution of a file.
+     * @param contentCoding The content coding of the variant, as in "gzip".
+     * @return The quoted entity tag.
+     */
+    String etag(Resolution resolution, String contentCoding) {
+        return "\"" + tag(resolution) + "-" + contentCoding + "\"";
+    }
+
+    /**
+     * Returns the opaque part of the ETag of a resolved file, computing it on first use.
+     */
+    private String tag(Resolution resolution) {
+        String tag = resolution.tag;
+        if (tag == null) {
+            tag = resolution.size <= hashMaxSize && hashMaxSize > 0 ? hash(resolution.file) : null;
+            if (tag == null) {
+                tag = Long.toHexString(resolution.lastModified.toMillis()) + "-" + Long.toHexString(resolution.size);
+            }
+            resolution.tag = tag;
+        }
+        return tag;
+    }
+
+    /**
+     * Returns the number of resolutions answered from the cache.
+     *
+     * @return The hits.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of resolutions that looked at the file system.
+     *
+     * @return The misses.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    private Resolution lookUp(String path, long now) {
+        Path file;
+        try {
+            file = root.getFileSystem().getPath(root.toString(), path).normalize();
+        } catch (InvalidPathException e) {
+            return new Resolution(null, Type.NOT_FOUND, 0, null, now);
+        }
+        if (!file.startsWith(root)) {
+            // Dot segments climbed out of the document root
+            return new Resolution(null, Type.NOT_FOUND, 0, null, now);
+        }
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            if (attributes.isDirectory()) {
+                return new Resolution(file, Type.DIRECTORY, 0, attributes.lastModifiedTime(), now);
+            }
+            if (!Files.isReadable(file)) {
+                return new Resolution(file, Type.NOT_FOUND, 0, null, now);
+            }
+            return new Resolution(file, Type.FILE, attributes.size(), attributes.lastModifiedTime(), now);
+        } catch (IOException e) {
+            return new Resolution(file, Type.NOT_FOUND, 0, null, now);
+        }
+    }
+
+    /**
+     * Hashes the content of a file into an entity tag.
+     *
+     * @return The tag without quotes, or null if the file cannot be read.
+     */
+    private static String hash(Path file) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest)) {
+                in.transferTo(OutputStream.nullOutputStream());
+            }
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest.digest(), 16));
+        } catch (IOException | NoSuchAlgorithmException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Makes room for an entry, preferring an expired one among the first few.
+     */
+    private void evictOne(long now) {
+        Iterator<Resolution> iterator = entries.values().iterator();
+        Resolution first = null;
+        for (int i = 0; i < EVICTION_SAMPLE && iterator.hasNext(); i++) {
+            Resolution resolution = iterator.next();
+            if (now - resolution.resolvedAt >= ttlNanos) {
+                iterator.remove();
+                return;
+            }
+            if (first == null) {
+                first = resolution;
+            }
+        }
+        if (first != null) {
+            entries.values().remove(first);
+        }
+    }
+
+    /**
+     * A resolved request path.
+     */
+    static final class Resolution {
+        private final Path file;
+        private final Type type;
+        private final long size;
+        private final FileTime lastModified;
+        private final long resolvedAt;
+        // The opaque part of the ETag, computed on first use
+        private volatile String tag;
+
+        private Resolution(Path file, Type type, long size, FileTime lastModified, long resolvedAt) {
+            this.file = file;
+            this.type = type;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.resolvedAt = resolvedAt;
+        }
+
+        /**
+         * Returns the absolute, normalized file the path resolves to.
+         *
+         * @return The file, or null if the path is not valid.
+         */
+        Path file() {
+            return file;
+        }
+
+        /**
+         * Returns what the path resolves to.
+         *
+         * @return The type.
+         */
+        Type type() {
+            return type;
+        }
+
+        /**
+         * Returns the size of the file when it was resolved.
+         *
+         * @return The size in bytes.
+         */
+        long size() {
+            return size;
+        }
+
+        /**
+         * Returns the modification time of the file or directory when it was resolved.
+         *
+         * @return The time, or null if the path was not found.
+         */
+        FileTime lastModified() {
+            return lastModified;
+        }
+
+        /**
+         * Returns whether another resolution found the same version of the same file.
+         */
+        private boolean isSameVersion(Resolution other) {
+            return type == Type.FILE && other.type == Type.FILE && file.equals(other.file) && size == other.size
+                    && lastModified.equals(other.lastModified);
+        }
+    }
+}
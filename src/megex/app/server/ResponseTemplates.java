@@ -0,0 +1,219 @@
+/************************************************
+ *
+ * Author: Abanisenioluwa K. Orojo
+ * Assignment: Program 2
+ * Class: CSI 5325
+ *
+ ************************************************/
+package megex.app.server;
+
+import com.twitter.hpack.Encoder;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ResponseTemplates caches pre-encoded HPACK header blocks for the response shapes the
+ * server sends most often. Blocks only reference the static table, so they are valid on
+ * every connection whatever the state of its dynamic table, and only the variable parts
+ * (such as content-length) are encoded per response.
+ */
+public class ResponseTemplates {
+    private static final Charset CHARENC = StandardCharsets.US_ASCII;
+    private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+    private static final Map<String, String> CONTENT_TYPES = Map.ofEntries(
+            Map.entry("html", "text/html"),
+            Map.entry("htm", "text/html"),
+            Map.entry("txt", "text/plain"),
+            Map.entry("css", "text/css"),
+            Map.entry("js", "text/javascript"),
+            Map.entry("json", "application/json"),
+            Map.entry("xml", "application/xml"),
+            Map.entry("svg", "image/svg+xml"),
+            Map.entry("png", "image/png"),
+            Map.entry("jpg", "image/jpeg"),
+            Map.entry("jpeg", "image/jpeg"),
+            Map.entry("gif", "image/gif"),
+            Map.entry("ico", "image/x-icon"),
+            Map.entry("pdf", "application/pdf"));
+    private static final Set<String> COMPRESSIBLE_TYPES = Set.of("application/json", "application/xml", "image/svg+xml");
+    private static final int[] COMMON_STATUSES = {200, 304, 400, 403, 404, 503};
+
+    private final Map<Integer, byte[]> statusBlocks = new ConcurrentHashMap<>();
+    private final Map<String, byte[]> contentBlocks = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a new ResponseTemplates instance with the common statuses pre-encoded.
+     */
+    public ResponseTemplates() {
+        for (int status : COMMON_STATUSES) {
+            statusBlock(status);
+        }
+        for (String contentType : CONTENT_TYPES.values()) {
+            contentBlock(contentType);
+        }
+    }
+
+    /**
+     * Returns the header block of a response that only carries a status.
+     *
+     * @param status The response status code.
+     * @return The encoded header block. Callers must not modify it.
+     */
+    public byte[] statusBlock(int status) {
+        return statusBlocks.computeIfAbsent(status, s -> encode(":status", Integer.toString(s)));
+    }
+
+    /**
+     * Returns the header block of a 200 response carrying a body.
+     *
+     * @param contentType   The content type of the body.
+     * @param contentLength The length of the body in bytes.
+     * @return The encoded header block.
+     */
+    public byte[] contentBlock(String contentType, long contentLength) {
+        return contentBlock(contentType, contentLength, null, null, null);
+    }
+
+    /**
+     * Returns the header block of a 200 response carrying a file. Responses whose content type
+     * is compressible vary with the accept-encoding of the request, and say so.
+     *
+     * @param contentType     The content type of the body.
+     * @param contentLength   The length of the body in bytes, or -1 if it is not known.
+     * @param etag            The ETag of the file, or null.
+     * @param lastModified    The last-modified date of the file, or null.
+     * @param contentEncoding The content coding of the body, or null for none.
+     * @return The encoded header block.
+     */
+    public byte[] contentBlock(String contentType, long contentLength, String etag, String lastModified, String contentEncoding) {
+        byte[] prefix = contentBlock(contentType);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(prefix.length + 64);
+        out.writeBytes(prefix);
+        if (contentLength >= 0) {
+            encodeHeader(out, "content-length", Long.toString(contentLength));
+        }
+        if (contentEncoding != null) {
+            encodeHeader(out, "content-encoding", contentEncoding);
+        }
+        if (etag != null && (contentEncoding != null || isCompressible(contentType))) {
+            encodeHeader(out, "vary", "accept-encoding");
+        }
+        encodeValidators(out, etag, lastModified);
+        return out.toByteArray();
+    }
+
+    /**
+     * Returns the header block of a 206 response carrying part of a document.
+     *
+     * @param contentType   The content type of the body.
+     * @param contentRange  The content-range of a single part, or null for a multipart body.
+     * @param contentLength The length of the body in bytes.
+     * @param etag          The ETag of the file, or null.
+     * @param lastModified  The last-modified date of the file, or null.
+     * @return The encoded header block.
+     */
+    public byte[] partialContentBlock(String contentType, String contentRange, long contentLength, String etag, String lastModified) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(statusBlock(206));
+        encodeHeader(out, "content-type", contentType);
+        if (contentRange != null) {
+            encodeHeader(out, "content-range", contentRange);
+        }
+        encodeHeader(out, "content-length", Long.toString(contentLength));
+        encodeValidators(out, etag, lastModified);
+        return out.toByteArray();
+    }
+
+    /**
+     * Returns the header block of a 304 response, telling the client its cached copy is current.
+     *
+     * @param etag         The ETag of the file.
+     * @param lastModified The last-modified date of the file.
+     * @return The encoded header block.
+     */
+    public byte[] notModifiedBlock(String etag, String lastModified) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(statusBlock(304));
+        encodeValidators(out, etag, lastModified);
+        return out.toByteArray();
+    }
+
+    /**
+     * Returns the header block of a 416 response to a range request none of whose ranges lies
+     * within the document.
+     *
+     * @param size The size of the document in bytes.
+     * @return The encoded header block.
+     */
+    public byte[] rangeNotSatisfiableBlock(long size) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(statusBlock(416));
+        encodeHeader(out, "content-range", "bytes */" + size);
+        return out.toByteArray();
+    }
+
+    private byte[] contentBlock(String contentType) {
+        return contentBlocks.computeIfAbsent(contentType, type -> {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            out.writeBytes(statusBlock(200));
+            encodeHeader(out, "content-type", type);
+            return out.toByteArray();
+        });
+    }
+
+    /**
+     * Guesses the content type of a file from its extension.
+     *
+     * @param filePath The path of the file.
+     * @return The content type.
+     */
+    public static String contentTypeOf(Path filePath) {
+        String fileName = filePath.getFileName().toString();
+        int dot = fileName.lastIndexOf('.');
+        if (dot < 0) {
+            return DEFAULT_CONTENT_TYPE;
+        }
+        return CONTENT_TYPES.getOrDefault(fileName.substring(dot + 1).toLowerCase(Locale.ROOT), DEFAULT_CONTENT_TYPE);
+    }
+
+    /**
+     * Returns whether documents of a content type are worth compressing.
+     *
+     * @param contentType The content type.
+     * @return true for text and other textual formats.
+     */
+    public static boolean isCompressible(String contentType) {
+        return contentType.startsWith("text/") || COMPRESSIBLE_TYPES.contains(contentType);
+    }
+
+    private static byte[] encode(String name, String value) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encodeHeader(out, name, value);
+        return out.toByteArray();
+    }
+
+    private static void encodeValidators(ByteArrayOutputStream out, String etag, String lastModified) {
+        if (etag != null) {
+            encodeHeader(out, "etag", etag);
+        }
+        if (lastModified != null) {
+            encodeHeader(out, "last-modified", lastModified);
+        }
+    }
+
+    private static void encodeHeader(ByteArrayOutputStream out, String name, String value) {
+        try {
+            Encoder.encodeStaticHeader(out, name.getBytes(CHARENC), value.getBytes(CHARENC));
+        } catch (IOException e) {
+            // ByteArrayOutputStream does not throw
+            throw new UncheckedIOException(e);
+        }
+    }
+}
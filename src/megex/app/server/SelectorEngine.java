@@ -0,0 +1,108 @@
+/************************************************
+ *
+ * Author: Abanisenioluwa K. Orojo
+ * Assignment: Program 2
+ * Class: CSI 5325
+ *
+ ************************************************/
+package megex.app.server;
+
+import megex.serialization.Framer;
+import tls.TLSFactory;
+
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.*;
+import java.util.function.Function;
+import java.util.logging.*;
+
+/**
+ * SelectorEngine serves connections on non-blocking channels. One thread accepts connections and
+ * deals them out round-robin to a small, fixed set of {@link EventLoop}s, so an idle connection
+ * costs buffers and a selection key rather than a thread.
+ */
+class SelectorEngine {
+    private final int port;
+    private final SSLContext sslContext;
+    private final Logger logger;
+    private final Function<Framer, Connection> connectionFactory;
+    private final EventLoop[] eventLoops;
+    private volatile ServerSocketChannel serverChannel;
+    private volatile boolean isShuttingDown = false;
+
+    /**
+     * Constructs a new SelectorEngine.
+     *
+     * @param port              The port number to listen for incoming connections.
+     * @param sslContext        The server TLS context.
+     * @param numEventLoops     The number of event loops.
+     * @param logger            The logger for logging events.
+     * @param connectionFactory Creates the protocol state of a connection for a framer.
+     * @throws IOException if an event loop cannot be created.
+     */
+    SelectorEngine(int port, SSLContext sslContext, int numEventLoops, Logger logger, Function<Framer, Connection> connectionFactory) throws IOException {
+        this.port = port;
+        this.sslContext = sslContext;
+        this.logger = logger;
+        this.connectionFactory = connectionFactory;
+        this.eventLoops = new EventLoop[numEventLoops];
+        for (int i = 0; i < numEventLoops; i++) {
+            eventLoops[i] = new EventLoop(logger);
+        }
+    }
+
+    /**
+     * Starts the event loops and accepts connections until the engine is shut down.
+     *
+     * @throws IOException if the server channel cannot be opened.
+     */
+    void start() throws IOException {
+        for (int i = 0; i < eventLoops.length; i++) {
+            Thread thread = new Thread(eventLoops[i], "megex-loop-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        try (ServerSocketChannel channel = ServerSocketChannel.open()) {
+            serverChannel = channel;
+            channel.bind(new InetSocketAddress(port));
+            int next = 0;
+            while (!isShuttingDown) {
+                try {
+                    SocketChannel clientChannel = channel.accept();
+                    clientChannel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                    EventLoop eventLoop = eventLoops[next];
+                    next = (next + 1) % eventLoops.length;
+                    eventLoop.register(new TlsChannel(clientChannel, TLSFactory.getServerEngine(sslContext), eventLoop, logger, connectionFactory));
+                } catch (ClosedChannelException e) {
+                    break;
+                } catch (IOException e) {
+                    if (!isShuttingDown) {
+                        logger.log(Level.SEVERE, "Error while accepting a connection", e);
+                    }
+                }
+            }
+        } finally {
+            shutdown();
+        }
+    }
+
+    /**
+     * Stops accepting connections and closes the connections of all event loops.
+     */
+    void shutdown() {
+        isShuttingDown = true;
+        try {
+            ServerSocketChannel channel = serverChannel;
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error while closing the server channel", e);
+        }
+        for (EventLoop eventLoop : eventLoops) {
+            eventLoop.shutdown();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/************************************************
+ *
+ * Author: Abanisenioluwa K. Orojo
+ * Assignment: Program 2
+ * Class: CSI 5325
+ *
+ ************************************************/
+package megex.app.server;
+
+/**
+ * SendPolicy decides which stream of a connection sends next and how much it may send in its
+ * turn. The {@link SendScheduler} calls it while holding its lock.
+ */
+interface SendPolicy {
+    /**
+     * Adds a stream that has data to send and the credit to send it.
+     *
+     * @param sender The stream.
+     */
+    void add(StreamSender sender);
+
+    /**
+     * Removes and returns the stream to send next.
+     *
+     * @return The stream, or null if no stream is ready.
+     */
+    StreamSender poll();
+
+    /**
+     * Returns how many bytes a stream taken with {@link #poll()} may send in this turn.
+     *
+     * @param sender The stream.
+     * @return The allowance in bytes.
+     */
+    long allowance(StreamSender sender);
+
+    /**
+     * Ends the turn of a stream.
+     *
+     * @param sender The stream.
+     * @param sent   The bytes it sent.
+     * @param ready  Whether it has more to send right away, in which case it is added back.
+     */
+    void turnEnded(StreamSender sender, long sent, boolean ready);
+}
@@ -0,0 +1,166 @@
+/************************************************
+ *
+ * Author: Abanisenioluwa K. Orojo
+ * Assignment: Program 2
+ * Class: CSI 5325
+ *
+ ************************************************/
+package megex.app.server;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * SendScheduler interleaves the DATA frames of the streams of one connection. Streams with data
+ * to send are queued with a {@link SendPolicy}, and one thread at a time drains the queue, giving
+ * each stream a turn of a bounded number of bytes, so a large download cannot hold the
+ * connection while small responses wait behind it.
+ *
+ * The thread that starts the first stream drains inline. Streams handed back after waiting for
+ * flow control credit or pacing are drained on the stream executor, and a drain gives up its
+ * thread every {@link #TURNS_PER_RUN} turns so other connections get a turn too.
+ */
+class SendScheduler {
+    private static final int TURNS_PER_RUN = 16;
+
+    private final SendPolicy policy;
+    private final StreamScheduler.ConnectionExecutor streamExecutor;
+    private final ReentrantLock lock = new ReentrantLock();
+    private boolean isDraining = false;
+
+    /**
+     * Constructs a SendScheduler.
+     *
+     * @param policy         The order in which streams send.
+     * @param streamExecutor The executor of the connection's streams.
+     */
+    SendScheduler(SendPolicy policy, StreamScheduler.ConnectionExecutor streamExecutor) {
+        this.policy = policy;
+        this.streamExecutor = streamExecutor;
+    }
+
+    /**
+     * Queues a new stream, sending on this thread if no other thread is sending.
+     *
+     * @param sender The stream.
+     */
+    void start(StreamSender sender) {
+        if (enqueue(sender)) {
+            drain();
+        }
+    }
+
+    /**
+     * Queues a stream that can send again. Safe to call from any thread; never sends on it.
+     *
+     * @param sender The stream.
+     */
+    void ready(StreamSender sender) {
+        if (enqueue(sender)) {
+            submitDrain();
+        }
+    }
+
+    /**
+     * Queues a stream and returns whether the caller has to start draining.
+     */
+    private boolean enqueue(StreamSender sender) {
+        lock.lock();
+        try {
+            policy.add(sender);
+            if (isDraining) {
+                return false;
+            }
+            isDraining = true;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void submitDrain() {
+        try {
+            streamExecutor.resume(this::drain);
+        } catch (RejectedExecutionException e) {
+            // Server shutting down
+            abandonAll();
+        }
+    }
+
+    private void drain() {
+        // Whether this drain passed on the right to drain, normally or to a new run
+        boolean isReleased = false;
+        try {
+            for (int turns = 0; ; turns++) {
+                if (turns == TURNS_PER_RUN) {
+                    isReleased = true;
+                    submitDrain();
+                    return;
+                }
+                StreamSender sender;
+                long allowance;
+                lock.lock();
+                try {
+                    sender = policy.poll();
+                    if (sender == null) {
+                        isDraining = false;
+                        isReleased = true;
+                        return;
+                    }
+                    allowance = policy.allowance(sender);
+                } finally {
+                    lock.unlock();
+                }
+
+                turn(sender, allowance);
+            }
+        } finally {
+            if (!isReleased) {
+                // An error escaped a turn; let the next stream handed in start a new drain
+                lock.lock();
+                try {
+                    isDraining = false;
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Gives a stream one turn and puts it back in line if it has more to send.
+     */
+    private void turn(StreamSender sender, long allowance) {
+        long before = sender.remaining();
+        StreamSender.Status status;
+        try {
+            status = sender.send(allowance);
+        } catch (RuntimeException e) {
+            // Drop the stream, keep the others going; report like an uncaught exception
+            sender.abandon();
+            status = StreamSender.Status.DONE;
+            Thread thread = Thread.currentThread();
+            thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+        }
+
+        lock.lock();
+        try {
+            policy.turnEnded(sender, before - sender.remaining(), status == StreamSender.Status.READY);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void abandonAll() {
+        lock.lock();
+        try {
+            StreamSender sender;
+            while ((sender = policy.poll()) != null) {
+                sender.abandon();
+            }
+            isDraining = false;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/************************************************
+ *
+ * Author: Abanisenioluwa K. Orojo
+ * Assignment: Program 2
+ * Class: CSI 5325
+ *
+ ************************************************/
+package megex.app.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * SequenceBodySource serves the bodies of several sources one after the other, such as the parts
+ * of a multipart/byteranges response. Flow control credit is only taken up to the end of the
+ * current part, so every read returns a single piece of one source without copying.
+ */
+class SequenceBodySource implements BodySource {
+    private final List<BodySource> parts;
+    private final long[] lengths;
+    private int current;
+    private long currentRemaining;
+
+    /**
+     * Constructs a new SequenceBodySource.
+     *
+     * @param parts   The sources, all closed with this one.
+     * @param lengths The number of bytes to serve from each source.
+     */
+    SequenceBodySource(List<BodySource> parts, long[] lengths) {
+        if (parts.size() != lengths.length) {
+            throw new IllegalArgumentException("Expected " + parts.size() + " lengths, got " + lengths.length);
+        }
+        this.parts = parts;
+        this.lengths = lengths;
+        this.current = 0;
+        this.currentRemaining = lengths.length > 0 ? lengths[0] : 0;
+    }
+
+    @Override
+    public int nextLength(int max, int maxFrameSize) {
+        skipFinishedParts();
+        // At least 1, so a sender at the end of the body still reads and sees it end
+        return (int) Math.max(Math.min(max, 1), Math.min(Math.min(max, maxFrameSize), currentRemaining));
+    }
+
+    @Override
+    public ByteBuffer read(int length) throws IOException {
+        skipFinishedParts();
+        if (current == parts.size()) {
+            return ByteBuffer.allocate(0);
+        }
+        int wanted = (int) Math.min(length, currentRemaining);
+        ByteBuffer piece = parts.get(current).read(wanted);
+        currentRemaining -= piece.remaining();
+        if (piece.remaining() < wanted) {
+            // The part ended early, so the body is over
+            current = parts.size();
+        }
+        return piece;
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (BodySource part : parts) {
+            try {
+                part.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void skipFinishedParts() {
+        while (current < parts.size() && currentRemaining == 0) {
+            current++;
+            currentRemaining = current < parts.size() ? lengths[current] : 0;
+        }
+    }
+}
@@ -10,11 +10,19 @@ package megex.app.server;
 import tls.TLSFactory;
 import java.io.*;
 import java.net.*;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.util.Properties;
 import java.util.concurrent.*;
 import java.util.logging.*;
+import javax.management.JMException;
+import javax.net.ssl.SSLContext;
 
 /**
- * Server is a multithreaded, SSL/TLS-secured HTTP server.
+ * Server is a multithreaded, SSL/TLS-secured HTTP server. Connections are served either by a
+ * thread each on blocking sockets or, with -Dmegex.server.engine=nio, by selector event loops.
+ * With -Dmegex.server.virtualThreads=true every connection and stream runs on its own virtual
+ * thread, so blocking reads and pacing sleeps park instead of holding a platform thread.
  */
 public class Server {
     private final int port;
@@ -24,7 +32,19 @@ public class Server {
     private final int numThreads;
     private final String documentRoot;
     private final ExecutorService threadPool;
+    private final ExecutorService virtualThreads;
+    private final StreamScheduler streamScheduler;
+    private final TimerWheel timerWheel = new TimerWheel(10, TimeUnit.MILLISECONDS);
     private final Logger logger;
+    private final ResponseTemplates templates = new ResponseTemplates();
+    private final ServerConfig config;
+    private final HeaderTableBudget headerTableBudget;
+    private final DocumentWatcher documentWatcher;
+    private final ContentCache contentCache;
+    private final PathCache pathCache;
+    private final VariantCache variantCache;
+    private final ServerMetrics metrics;
+    private volatile SelectorEngine selectorEngine;
     public static final int MAXDATASIZE = 500;
     public static final int MINDATAINTERVAL = 500;
 
@@ -35,24 +55,97 @@ public class Server {
      * @param numThreads   The number of worker threads for handling client requests.
      * @param documentRoot The path to the server's document root directory.
      * @param logger       The Logger instance to use for logging.
+     * @param config       The tunable server limits.
      */
-    public Server(int port, int numThreads, String documentRoot, Logger logger) {
+    public Server(int port, int numThreads, String documentRoot, Logger logger, ServerConfig config) {
         this.port = port;
         this.numThreads = numThreads;
         this.documentRoot = documentRoot;
-        this.threadPool = Executors.newFixedThreadPool(numThreads);
         this.logger = logger;
+        this.config = config;
+        this.virtualThreads = config.isVirtualThreads() ? newVirtualThreadPerTaskExecutor() : null;
+        this.threadPool = virtualThreads != null ? virtualThreads : Executors.newFixedThreadPool(numThreads);
+        int streamsPerConnection = config.getMaxStreamsPerConnection() > 0 ? config.getMaxStreamsPerConnection() : numThreads;
+        this.streamScheduler = virtualThreads != null
+                ? new StreamScheduler(virtualThreads, streamsPerConnection, config.getConnectionStreamQueueCapacity())
+                : new StreamScheduler(numThreads, Math.max(numThreads, config.getMaxStreamThreads()), config.getStreamQueueCapacity(),
+                        config.getStreamQueueDelayMillis(), streamsPerConnection, config.getConnectionStreamQueueCapacity());
+        this.headerTableBudget = new HeaderTableBudget(config.getHeaderTableBudget(), config.getHeaderTableSize(), config.getMinHeaderTableSize());
+        this.documentWatcher = config.getContentCacheBudget() > 0 || config.getPathCacheEntries() > 0 ? newDocumentWatcher() : null;
+        // Without a watcher the content cache could serve stale documents for good, so it is disabled
+        this.contentCache = documentWatcher != null
+                ? new ContentCache(config.getContentCacheBudget(), config.getMaxCachedDocumentSize(), MAXDATASIZE)
+                : new ContentCache(0, 0, MAXDATASIZE);
+        // Without a watcher, path resolutions are only refreshed when their time to live runs out
+        this.pathCache = new PathCache(Paths.get(documentRoot), config.getPathCacheEntries(), config.getPathCacheTtlMillis(),
+                config.getEtagHashMaxSize());
+        // Variants are tagged with the version they were compressed from, so they never go stale
+        this.variantCache = new VariantCache(config.getVariantCacheBudget(), config.getMaxCachedDocumentSize());
+        if (documentWatcher != null) {
+            documentWatcher.addListener(contentCache::invalidate);
+            documentWatcher.addListener(pathCache::invalidate);
+            documentWatcher.addListener(variantCache::invalidate);
+        }
+        this.metrics = new ServerMetrics(headerTableBudget, contentCache, pathCache, variantCache);
+        if (config.isMetricsJmx()) {
+            try {
+                metrics.register();
+            } catch (JMException e) {
+                logger.log(Level.WARNING, "Cannot register the metrics MBean", e);
+            }
+        }
+        if (config.getLatencyReportSeconds() > 0) {
+            scheduleLatencyReport();
+        }
+    }
+
+    /**
+     * Creates the watcher keeping the document caches coherent, or returns null if the document
+     * root cannot be watched.
+     */
+    private DocumentWatcher newDocumentWatcher() {
+        try {
+            return new DocumentWatcher(Paths.get(documentRoot), logger);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Cannot watch the document root; content cache disabled", e);
+            return null;
+        }
+    }
+
+    /**
+     * Writes the latency percentiles to the log once per report interval.
+     */
+    private void scheduleLatencyReport() {
+        timerWheel.schedule(() -> {
+            logger.log(Level.INFO, "Latency report:{0}{1}", new Object[]{System.lineSeparator(), metrics.dumpLatencies()});
+            scheduleLatencyReport();
+        }, config.getLatencyReportSeconds(), TimeUnit.SECONDS);
     }
 
     /**
      * Starts the server, listening for incoming connections.
      */
     public void start() {
-        try (ServerSocket serverSocket = TLSFactory.getServerListeningSocket(port, keystoreFile, keystorePassword)) {
+        // One context for all connections, so they share its session cache
+        SSLContext sslContext;
+        try {
+            sslContext = TLSFactory.getServerContext(keystoreFile, keystorePassword, config.getTlsSessionCacheSize(),
+                    config.getTlsSessionTimeoutSeconds());
+        } catch (IOException | GeneralSecurityException e) {
+            logger.log(Level.SEVERE, "Cannot load the keystore", e);
+            System.exit(1);
+            return;
+        }
+        if (config.getEngine() == ServerConfig.Engine.NIO) {
+            startSelectorEngine(sslContext);
+            return;
+        }
+        try (ServerSocket serverSocket = TLSFactory.getServerListeningSocket(port, sslContext)) {
             while (!isShuttingDown) {
                 try {
-                    Socket clientSocket = TLSFactory.getServerConnectedSocket(serverSocket);
-                    threadPool.submit(new ClientHandler(clientSocket, documentRoot, logger, MAXDATASIZE, MINDATAINTERVAL, numThreads));
+                    // The handshake runs on the connection's thread, so a slow client cannot stall accepting
+                    Socket clientSocket = TLSFactory.getServerAcceptedSocket(serverSocket);
+                    threadPool.submit(new ClientHandler(clientSocket, documentRoot, logger, MAXDATASIZE, newStreamExecutor(), timerWheel, templates, config, headerTableBudget, contentCache, pathCache, variantCache, metrics));
                 } catch (SocketTimeoutException e) {
                     if (isShuttingDown) {
                         break;
@@ -71,6 +164,40 @@ public class Server {
         }
     }
 
+    /**
+     * Returns the executor for the streams of a new connection, which runs them on the shared
+     * stream scheduler.
+     */
+    private StreamScheduler.ConnectionExecutor newStreamExecutor() {
+        return streamScheduler.newConnectionExecutor();
+    }
+
+    /**
+     * Creates the virtual thread executor, falling back to platform threads when the JDK has none.
+     */
+    private ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return VirtualThreads.newVirtualThreadPerTaskExecutor();
+        } catch (UnsupportedOperationException e) {
+            logger.log(Level.WARNING, e.getMessage() + "; using platform threads");
+            return null;
+        }
+    }
+
+    /**
+     * Serves connections with selector event loops until the server shuts down.
+     */
+    private void startSelectorEngine(SSLContext sslContext) {
+        try {
+            selectorEngine = new SelectorEngine(port, sslContext, config.getEventLoops(), logger,
+                    framer -> new Connection(framer, documentRoot, logger, MAXDATASIZE, newStreamExecutor(), timerWheel, templates, config, headerTableBudget, contentCache, pathCache, variantCache, metrics));
+            selectorEngine.start();
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error while starting the server", e);
+            System.exit(1);
+        }
+    }
+
     public static void main(String[] args) {
         // Configure logger for the server
         Logger logger = Logger.getLogger(Server.class.getName());
@@ -85,15 +212,28 @@ public class Server {
             }
         }
 
-        // Set up file handler for logging
+        // Read the tunable limits; an invalid value is reported once logging is set up
+        ServerConfig config = null;
+        IllegalArgumentException configError = null;
         try {
-            FileHandler fileHandler = new FileHandler("server.log");
-            fileHandler.setFormatter(new MicrosecondFormatter());
-            logger.addHandler(fileHandler);
+            config = ServerConfig.fromSystemProperties();
+        } catch (IllegalArgumentException e) {
+            configError = e;
+        }
+        ServerConfig logConfig = config != null ? config : new ServerConfig(new Properties());
+
+        // Set up file handler for logging; records are written by a background thread
+        try {
+            logger.addHandler(new AsyncLogHandler("server.log", logConfig.getLogBufferSize()));
+            logger.setLevel(logConfig.getLogLevel());
         } catch (IOException e) {
             logger.log(Level.SEVERE, "Unable to set up logger", e);
             System.exit(1);
         }
+        if (configError != null) {
+            logger.log(Level.WARNING, "Error: " + configError.getMessage());
+            System.exit(-5);
+        }
 
         // Validate command line arguments
         if (args.length < 3) {
@@ -134,15 +274,22 @@ public class Server {
         }
 
         // Create and start the server
-        Server server = new Server(port, numThreads, documentRoot, logger);
+        Server server = new Server(port, numThreads, documentRoot, logger, config);
 
         // Add shutdown hook
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             server.isShuttingDown = true;
             logger.log(Level.INFO, "Shutting down the server...");
+            if (server.selectorEngine != null) {
+                server.selectorEngine.shutdown();
+            }
+            if (server.documentWatcher != null) {
+                server.documentWatcher.close();
+            }
             server.threadPool.shutdown();
             try {
                 server.threadPool.awaitTermination(10, TimeUnit.SECONDS);
+                server.streamScheduler.shutdown(1000);
             } catch (InterruptedException e) {
                 // Do nothing
             }
@@ -0,0 +1,602 @@
+/************************************************
+ *
+ * Author: Abanisenioluwa K. Orojo
+ * Assignment: Program 2
+ * Class: CSI 5325
+ *
+ ************************************************/
+package megex.app.server;
+
+import megex.serialization.MessageFactory;
+
+import java.util.Locale;
+import java.util.Properties;
+import java.util.logging.Level;
+
+/**
+ * ServerConfig holds the tunable limits of the server. Values are read from system properties
+ * (for example -Dmegex.hpack.headerTableSize=4096) so they can be set per deployment.
+ */
+public class ServerConfig {
+    /**
+     * The engine accepting and serving connections.
+     */
+    public enum Engine {
+        /** A thread per connection on blocking sockets. */
+        BLOCKING,
+        /** Selector event loops on non-blocking channels. */
+        NIO
+    }
+
+    /**
+     * The order in which the streams of a connection send DATA.
+     */
+    public enum Interleaving {
+        /** Deficit round-robin: busy streams share the connection equally. */
+        DRR,
+        /** Shortest remaining first: the stream closest to done sends first. */
+        SRPT
+    }
+
+    private final int maxHeaderSize;
+    private final int headerTableSize;
+    private final int minHeaderTableSize;
+    private final long headerTableBudget;
+    private final boolean compactHeaderTables;
+    private final Engine engine;
+    private final int eventLoops;
+    private final boolean virtualThreads;
+    private final int maxStreamThreads;
+    private final int streamQueueCapacity;
+    private final long streamQueueDelayMillis;
+    private final int maxStreamsPerConnection;
+    private final int connectionStreamQueueCapacity;
+    private final int maxConcurrentStreams;
+    private final int pendingStreamCapacity;
+    private final int initialWindowSize;
+    private final long streamBytesPerSecond;
+    private final long connectionBytesPerSecond;
+    private final long pacingBurstBytes;
+    private final long mapThreshold;
+    private final long contentCacheBudget;
+    private final long maxCachedDocumentSize;
+    private final int pathCacheEntries;
+    private final long pathCacheTtlMillis;
+    private final long etagHashMaxSize;
+    private final int compressionLevel;
+    private final long compressionMinSize;
+    private final long variantCacheBudget;
+    private final Interleaving interleaving;
+    private final int sendQuantum;
+    private final Level logLevel;
+    private final int logBufferSize;
+    private final String metricsPath;
+    private final boolean metricsJmx;
+    private final long latencyReportSeconds;
+    private final long idleTimeoutMillis;
+    private final long handshakeTimeoutMillis;
+    private final long headerTimeoutMillis;
+    private final long writeStallTimeoutMillis;
+    private final int tlsSessionCacheSize;
+    private final int tlsSessionTimeoutSeconds;
+
+    /**
+     * Constructs a ServerConfig from the given properties, using defaults for missing values.
+     *
+     * @param properties The properties to read.
+     * @throws IllegalArgumentException if a value is not a valid number or out of range.
+     */
+    public ServerConfig(Properties properties) {
+        this.maxHeaderSize = getInt(properties, "megex.hpack.maxHeaderSize", 1024, 1);
+        this.headerTableSize = getInt(properties, "megex.hpack.headerTableSize", MessageFactory.MAXHEADERTBLSZ, 0);
+        this.minHeaderTableSize = Math.min(headerTableSize,
+                getInt(properties, "megex.hpack.minHeaderTableSize", 256, 0));
+        this.headerTableBudget = getLong(properties, "megex.hpack.budget", 64L * 1024 * 1024, 0);
+        this.compactHeaderTables = getBoolean(properties, "megex.hpack.compactTables", false);
+        this.engine = getEnum(properties, "megex.server.engine", Engine.class, Engine.BLOCKING);
+        this.eventLoops = getInt(properties, "megex.server.eventLoops", Runtime.getRuntime().availableProcessors(), 1);
+        this.virtualThreads = getBoolean(properties, "megex.server.virtualThreads", false);
+        this.maxStreamThreads = getInt(properties, "megex.streams.maxThreads", 256, 1);
+        this.streamQueueCapacity = getInt(properties, "megex.streams.queueCapacity", 1024, 1);
+        this.streamQueueDelayMillis = getLong(properties, "megex.streams.targetQueueDelayMillis", 20, 0);
+        this.maxStreamsPerConnection = getInt(properties, "megex.streams.perConnection", 0, 0);
+        this.connectionStreamQueueCapacity = getInt(properties, "megex.streams.connectionQueueCapacity", 64, 0);
+        this.maxConcurrentStreams = getInt(properties, "megex.streams.maxConcurrent", 100, 1);
+        this.pendingStreamCapacity = getInt(properties, "megex.streams.pendingCapacity", 0, 0);
+        this.initialWindowSize = getInt(properties, "megex.flow.initialWindowSize", 65535, 0);
+        this.streamBytesPerSecond = getLong(properties, "megex.pacing.streamBytesPerSecond",
+                Server.MAXDATASIZE * 1000L / Server.MINDATAINTERVAL, 0);
+        this.connectionBytesPerSecond = getLong(properties, "megex.pacing.connectionBytesPerSecond", 0, 0);
+        this.pacingBurstBytes = getLong(properties, "megex.pacing.burstBytes", 0, 0);
+        this.mapThreshold = getLong(properties, "megex.files.mapThreshold", 1024 * 1024, 0);
+        this.contentCacheBudget = getLong(properties, "megex.cache.budget", 64L * 1024 * 1024, 0);
+        this.maxCachedDocumentSize = getLong(properties, "megex.cache.maxDocumentSize", 1024 * 1024, 0);
+        this.pathCacheEntries = getInt(properties, "megex.pathCache.maxEntries", 10000, 0);
+        this.pathCacheTtlMillis = getLong(properties, "megex.pathCache.ttlMillis", 10000, 0);
+        this.etagHashMaxSize = getLong(properties, "megex.etag.hashMaxSize", 0, 0);
+        this.compressionLevel = getInt(properties, "megex.compression.level", 6, 0);
+        if (compressionLevel > 9) {
+            throw new IllegalArgumentException("Invalid megex.compression.level: " + compressionLevel);
+        }
+        this.compressionMinSize = getLong(properties, "megex.compression.minSize", 1024, 0);
+        this.variantCacheBudget = getLong(properties, "megex.compression.cacheBudget", 16L * 1024 * 1024, 0);
+        this.interleaving = getEnum(properties, "megex.send.interleaving", Interleaving.class, Interleaving.DRR);
+        this.sendQuantum = getInt(properties, "megex.send.quantum", 16 * 1024, 1);
+        this.logLevel = getLevel(properties, "megex.log.level", Level.INFO);
+        this.logBufferSize = getInt(properties, "megex.log.bufferSize", 8192, 1);
+        this.metricsPath = getPath(properties, "megex.metrics.path", null);
+        this.metricsJmx = getBoolean(properties, "megex.metrics.jmx", true);
+        this.latencyReportSeconds = getLong(properties, "megex.metrics.latencyReportSeconds", 0, 0);
+        this.idleTimeoutMillis = getLong(properties, "megex.timeouts.idleMillis", 40 * 1000, 0);
+        this.handshakeTimeoutMillis = getLong(properties, "megex.timeouts.handshakeMillis", 10 * 1000, 0);
+        this.headerTimeoutMillis = getLong(properties, "megex.timeouts.headerMillis", 10 * 1000, 0);
+        this.writeStallTimeoutMillis = getLong(properties, "megex.timeouts.writeStallMillis", 30 * 1000, 0);
+        this.tlsSessionCacheSize = getInt(properties, "megex.tls.sessionCacheSize", 20480, 0);
+        this.tlsSessionTimeoutSeconds = getInt(properties, "megex.tls.sessionTimeoutSeconds", 24 * 60 * 60, 0);
+    }
+
+    /**
+     * Constructs a ServerConfig from the system properties.
+     *
+     * @return The server configuration.
+     */
+    public static ServerConfig fromSystemProperties() {
+        return new ServerConfig(System.getProperties());
+    }
+
+    /**
+     * Returns the maximum size of a decoded request header list.
+     *
+     * @return The maximum header list size in bytes.
+     */
+    public int getMaxHeaderSize() {
+        return maxHeaderSize;
+    }
+
+    /**
+     * Returns the HPACK dynamic table size of each connection when memory is not under pressure.
+     *
+     * @return The dynamic table size in bytes.
+     */
+    public int getHeaderTableSize() {
+        return headerTableSize;
+    }
+
+    /**
+     * Returns the HPACK dynamic table size connections keep even when the budget is exhausted.
+     *
+     * @return The minimum dynamic table size in bytes.
+     */
+    public int getMinHeaderTableSize() {
+        return minHeaderTableSize;
+    }
+
+    /**
+     * Returns the total HPACK dynamic table memory shared by all connections.
+     *
+     * @return The budget in bytes.
+     */
+    public long getHeaderTableBudget() {
+        return headerTableBudget;
+    }
+
+    /**
+     * Returns whether connections pack their HPACK dynamic tables into single byte arrays.
+     *
+     * @return true for compact tables.
+     */
+    public boolean isCompactHeaderTables() {
+        return compactHeaderTables;
+    }
+
+    /**
+     * Returns the engine accepting and serving connections.
+     *
+     * @return The engine.
+     */
+    public Engine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Returns the number of selector event loops of the NIO engine.
+     *
+     * @return The number of event loops.
+     */
+    public int getEventLoops() {
+        return eventLoops;
+    }
+
+    /**
+     * Returns whether connections and streams run on virtual threads.
+     *
+     * @return true for virtual threads.
+     */
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Returns the largest number of threads of the shared stream pool.
+     *
+     * @return The maximum number of stream threads.
+     */
+    public int getMaxStreamThreads() {
+        return maxStreamThreads;
+    }
+
+    /**
+     * Returns the number of streams that may wait for a thread of the shared stream pool.
+     *
+     * @return The stream queue capacity.
+     */
+    public int getStreamQueueCapacity() {
+        return streamQueueCapacity;
+    }
+
+    /**
+     * Returns the queueing delay above which the shared stream pool adds threads.
+     *
+     * @return The target queueing delay in milliseconds.
+     */
+    public long getStreamQueueDelayMillis() {
+        return streamQueueDelayMillis;
+    }
+
+    /**
+     * Returns the number of streams of one connection that run at once, or 0 to use the number of
+     * worker threads given on the command line.
+     *
+     * @return The per-connection stream limit.
+     */
+    public int getMaxStreamsPerConnection() {
+        return maxStreamsPerConnection;
+    }
+
+    /**
+     * Returns the number of streams of one connection that may wait for a slot before new streams
+     * are refused.
+     *
+     * @return The per-connection stream queue capacity.
+     */
+    public int getConnectionStreamQueueCapacity() {
+        return connectionStreamQueueCapacity;
+    }
+
+    /**
+     * Returns the number of streams a client may have open on one connection, advertised as
+     * SETTINGS_MAX_CONCURRENT_STREAMS.
+     *
+     * @return The number of streams.
+     */
+    public int getMaxConcurrentStreams() {
+        return maxConcurrentStreams;
+    }
+
+    /**
+     * Returns the number of streams beyond the concurrent stream limit that wait for a stream to
+     * close instead of being refused.
+     *
+     * @return The number of streams, 0 to refuse every stream over the limit.
+     */
+    public int getPendingStreamCapacity() {
+        return pendingStreamCapacity;
+    }
+
+    /**
+     * Returns the send window a connection and each of its streams start with, until the client
+     * advertises its own initial window size or grants more with WINDOW_UPDATE.
+     *
+     * @return The initial send window in bytes.
+     */
+    public int getInitialWindowSize() {
+        return initialWindowSize;
+    }
+
+    /**
+     * Returns the rate each stream's DATA is paced to, by default one maximum size frame per
+     * minimum data interval.
+     *
+     * @return The stream rate in bytes per second, or 0 for no limit.
+     */
+    public long getStreamBytesPerSecond() {
+        return streamBytesPerSecond;
+    }
+
+    /**
+     * Returns the rate all DATA of one connection is paced to.
+     *
+     * @return The connection rate in bytes per second, or 0 for no limit.
+     */
+    public long getConnectionBytesPerSecond() {
+        return connectionBytesPerSecond;
+    }
+
+    /**
+     * Returns the number of bytes a paced stream or connection may send at once after idling.
+     *
+     * @return The burst size in bytes.
+     */
+    public long getPacingBurstBytes() {
+        return pacingBurstBytes;
+    }
+
+    /**
+     * Returns the size from which file bodies are memory-mapped instead of read through a stream.
+     *
+     * @return The threshold in bytes.
+     */
+    public long getMapThreshold() {
+        return mapThreshold;
+    }
+
+    /**
+     * Returns the memory the content cache may use for documents.
+     *
+     * @return The budget in bytes, or 0 if documents are not cached.
+     */
+    public long getContentCacheBudget() {
+        return contentCacheBudget;
+    }
+
+    /**
+     * Returns the size of the largest document the content cache keeps.
+     *
+     * @return The size in bytes.
+     */
+    public long getMaxCachedDocumentSize() {
+        return maxCachedDocumentSize;
+    }
+
+    /**
+     * Returns the number of request paths whose resolution is remembered.
+     *
+     * @return The number of entries, or 0 if paths are not cached.
+     */
+    public int getPathCacheEntries() {
+        return pathCacheEntries;
+    }
+
+    /**
+     * Returns how long a resolved request path is trusted, even if no change was reported.
+     *
+     * @return The time to live in milliseconds.
+     */
+    public long getPathCacheTtlMillis() {
+        return pathCacheTtlMillis;
+    }
+
+    /**
+     * Returns the size up to which files get an ETag hashed from their content rather than made
+     * from their size and modification time.
+     *
+     * @return The size in bytes, or 0 if no file is hashed.
+     */
+    public long getEtagHashMaxSize() {
+        return etagHashMaxSize;
+    }
+
+    /**
+     * Returns the deflate level used to compress documents on the fly for clients accepting gzip.
+     *
+     * @return The level from 1 to 9, or 0 if only precompressed .gz files are served.
+     */
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * Returns the size below which documents are not worth compressing on the fly.
+     *
+     * @return The size in bytes.
+     */
+    public long getCompressionMinSize() {
+        return compressionMinSize;
+    }
+
+    /**
+     * Returns the memory for documents compressed on the fly and kept for later requests.
+     *
+     * @return The budget in bytes, or 0 if compressed documents are not kept.
+     */
+    public long getVariantCacheBudget() {
+        return variantCacheBudget;
+    }
+
+    /**
+     * Returns the order in which the streams of a connection send DATA.
+     *
+     * @return The interleaving policy.
+     */
+    public Interleaving getInterleaving() {
+        return interleaving;
+    }
+
+    /**
+     * Returns the bytes a stream may send per turn before another stream of the connection gets
+     * one. Values below the maximum data size are raised to it.
+     *
+     * @return The quantum in bytes.
+     */
+    public int getSendQuantum() {
+        return sendQuantum;
+    }
+
+    /**
+     * Returns the lowest level the server logs.
+     *
+     * @return The log level.
+     */
+    public Level getLogLevel() {
+        return logLevel;
+    }
+
+    /**
+     * Returns the number of log records waiting for the log writer before records below WARNING
+     * are dropped.
+     *
+     * @return The log buffer size in records.
+     */
+    public int getLogBufferSize() {
+        return logBufferSize;
+    }
+
+    /**
+     * Returns the request path on which the server answers with its metrics instead of a
+     * document. Anyone who can reach the server can read them there, so there is none unless
+     * megex.metrics.path is set.
+     *
+     * @return The metrics path, or null if metrics are not served.
+     */
+    public String getMetricsPath() {
+        return metricsPath;
+    }
+
+    /**
+     * Returns whether the metrics are registered as a JMX MBean.
+     *
+     * @return true if the metrics are exposed over JMX.
+     */
+    public boolean isMetricsJmx() {
+        return metricsJmx;
+    }
+
+    /**
+     * Returns how often the latency percentiles of every phase are written to the log.
+     *
+     * @return The interval in seconds, or 0 if the report is only produced on demand.
+     */
+    public long getLatencyReportSeconds() {
+        return latencyReportSeconds;
+    }
+
+    /**
+     * Returns how long a connection may go without a frame in either direction before it is
+     * closed.
+     *
+     * @return The timeout in milliseconds, or 0 for none.
+     */
+    public long getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    /**
+     * Returns how long the TLS handshake of a new connection may take.
+     *
+     * @return The timeout in milliseconds, or 0 for none.
+     */
+    public long getHandshakeTimeoutMillis() {
+        return handshakeTimeoutMillis;
+    }
+
+    /**
+     * Returns how long the client may take to send its preface and SETTINGS after the handshake,
+     * and to finish a frame once it has started sending it.
+     *
+     * @return The timeout in milliseconds, or 0 for none.
+     */
+    public long getHeaderTimeoutMillis() {
+        return headerTimeoutMillis;
+    }
+
+    /**
+     * Returns how long a write to the client may go without progress before the client is
+     * considered gone.
+     *
+     * @return The timeout in milliseconds, or 0 for none.
+     */
+    public long getWriteStallTimeoutMillis() {
+        return writeStallTimeoutMillis;
+    }
+
+    /**
+     * Returns the number of TLS sessions the server keeps for clients to resume.
+     *
+     * @return The session count, or 0 for no limit.
+     */
+    public int getTlsSessionCacheSize() {
+        return tlsSessionCacheSize;
+    }
+
+    /**
+     * Returns how long a TLS session, or a TLS 1.3 session ticket, may be resumed.
+     *
+     * @return The lifetime in seconds, or 0 for no limit.
+     */
+    public int getTlsSessionTimeoutSeconds() {
+        return tlsSessionTimeoutSeconds;
+    }
+
+    private static String getPath(Properties properties, String key, String defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        if (value.trim().isEmpty()) {
+            return null;
+        }
+        if (!value.trim().startsWith("/")) {
+            throw new IllegalArgumentException("Invalid " + key + ": " + value);
+        }
+        return value.trim();
+    }
+
+    private static Level getLevel(Properties properties, String key, Level defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Level.parse(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid " + key + ": " + value);
+        }
+    }
+
+    private static <E extends Enum<E>> E getEnum(Properties properties, String key, Class<E> type, E defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Enum.valueOf(type, value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid " + key + ": " + value);
+        }
+    }
+
+    private static boolean getBoolean(Properties properties, String key, boolean defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        if (!value.trim().equalsIgnoreCase("true") && !value.trim().equalsIgnoreCase("false")) {
+            throw new IllegalArgumentException("Invalid " + key + ": " + value);
+        }
+        return Boolean.parseBoolean(value.trim());
+    }
+
+    private static int getInt(Properties properties, String key, int defaultValue, int min) {
+        long value = getLong(properties, key, defaultValue, min);
+        if (value > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid " + key + ": " + value);
+        }
+        return (int) value;
+    }
+
+    private static long getLong(Properties properties, String key, long defaultValue, long min) {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            long parsed = Long.parseLong(value.trim());
+            if (parsed < min) {
+                throw new NumberFormatException();
+            }
+            return parsed;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + key + ": " + value);
+        }
+    }
+}
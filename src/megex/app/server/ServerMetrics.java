@@ -0,0 +1,460 @@
+/************************************************
+ *
+ * Author: Abanisenioluwa K. Orojo
+ * Assignment: Program 2
+ * Class: CSI 5325
+ *
+ ************************************************/
+package megex.app.server;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * ServerMetrics counts what the server does: connections, streams, frames and bytes in each
+ * direction, flow control stalls, cache hits and errors. Counters are striped LongAdders, so the
+ * threads serving connections update them without contending; readers sum the stripes when a
+ * snapshot is taken. Sizes kept by other components, such as the HPACK tables and the content
+ * cache, are read from them at snapshot time.
+ *
+ * The latency of each phase of a connection and its streams, from the TLS handshake to the last
+ * byte of a response, is recorded in nanoseconds in a fixed-memory {@link Histogram}, so
+ * percentiles can be read at any time without keeping samples.
+ *
+ * The metrics are readable over JMX as {@value #OBJECT_NAME} and as text from
+ * {@link #toText()}, which the server serves on a reserved request path.
+ */
+public class ServerMetrics implements ServerMetricsMXBean {
+    /**
+     * The JMX object name the metrics are registered under.
+     */
+    public static final String OBJECT_NAME = "megex:type=ServerMetrics";
+
+    // Frame types are a byte, but only the low codes are defined
+    private static final int FRAME_TYPES = 16;
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    /**
+     * A phase of the life of a connection or stream whose latency is recorded.
+     */
+    enum Phase {
+        /** The TLS handshake. */
+        HANDSHAKE("handshake"),
+        /** From the end of the handshake to the client's SETTINGS, preface included. */
+        SETTINGS("settings"),
+        /** Decoding a request HEADERS frame. */
+        HEADERS_DECODE("headers_decode"),
+        /** Resolving the request path under the document root. */
+        PATH_RESOLUTION("path_resolution"),
+        /** Opening the body of a document that is not cached. */
+        FILE_OPEN("file_open"),
+        /** From the request being admitted to the first DATA frame being written. */
+        FIRST_BYTE("first_byte"),
+        /** From the request being admitted to the stream closing. */
+        LAST_BYTE("last_byte");
+
+        private final String label;
+
+        Phase(String label) {
+            this.label = label;
+        }
+    }
+
+    private final HeaderTableBudget headerTableBudget;
+    private final ContentCache contentCache;
+    private final PathCache pathCache;
+    private final VariantCache variantCache;
+    private final LongAdder connectionsOpened = new LongAdder();
+    private final LongAdder connectionsClosed = new LongAdder();
+    private final LongAdder streamsOpened = new LongAdder();
+    private final LongAdder streamsClosed = new LongAdder();
+    private final LongAdder streamsRefused = new LongAdder();
+    private final LongAdder[] framesReceived = newAdders(FRAME_TYPES + 1);
+    private final LongAdder[] framesSent = newAdders(FRAME_TYPES + 1);
+    private final LongAdder bytesReceived = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder flowControlStalls = new LongAdder();
+    private final LongAdder flowControlStallNanos = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final Histogram[] phaseNanos = new Histogram[Phase.values().length];
+    private final Histogram responseBytes = new Histogram();
+
+    /**
+     * Constructs a new ServerMetrics.
+     *
+     * @param headerTableBudget The HPACK table budget, read for table usage.
+     * @param contentCache      The content cache, read for its size and hit rate.
+     * @param pathCache         The path cache, read for its hit rate.
+     * @param variantCache      The cache of compressed documents, read for its size and hit rate.
+     */
+    public ServerMetrics(HeaderTableBudget headerTableBudget, ContentCache contentCache, PathCache pathCache, VariantCache variantCache) {
+        this.headerTableBudget = headerTableBudget;
+        this.contentCache = contentCache;
+        this.pathCache = pathCache;
+        this.variantCache = variantCache;
+        for (int i = 0; i < phaseNanos.length; i++) {
+            phaseNanos[i] = new Histogram();
+        }
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server.
+     *
+     * @throws JMException if the metrics cannot be registered.
+     */
+    public void register() throws JMException {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+    }
+
+    /**
+     * Counts a connection that completed its preface.
+     */
+    void connectionOpened() {
+        connectionsOpened.increment();
+    }
+
+    /**
+     * Counts a connection that was opened and has closed.
+     */
+    void connectionClosed() {
+        connectionsClosed.increment();
+    }
+
+    /**
+     * Counts a stream that was admitted.
+     */
+    void streamOpened() {
+        streamsOpened.increment();
+    }
+
+    /**
+     * Counts an admitted stream that finished, recording how long it was open as its
+     * {@link Phase#LAST_BYTE} latency.
+     *
+     * @param durationNanos The time since the stream was admitted.
+     */
+    void streamClosed(long durationNanos) {
+        streamsClosed.increment();
+        phaseNanos[Phase.LAST_BYTE.ordinal()].record(durationNanos);
+    }
+
+    /**
+     * Records the latency of a phase.
+     *
+     * @param phase The phase.
+     * @param nanos How long it took.
+     */
+    void recordPhase(Phase phase, long nanos) {
+        phaseNanos[phase.ordinal()].record(nanos);
+    }
+
+    /**
+     * Counts a stream refused with 503.
+     */
+    void streamRefused() {
+        streamsRefused.increment();
+    }
+
+    /**
+     * Counts a received frame.
+     *
+     * @param type  The frame type.
+     * @param bytes The frame size, including its length prefix and header.
+     */
+    void frameReceived(int type, int bytes) {
+        framesReceived[typeIndex(type)].increment();
+        bytesReceived.add(bytes);
+    }
+
+    /**
+     * Counts sent frames of one type.
+     *
+     * @param type   The frame type.
+     * @param frames The number of frames.
+     * @param bytes  Their size, including length prefixes and headers.
+     */
+    void framesSent(int type, int frames, long bytes) {
+        framesSent[typeIndex(type)].add(frames);
+        bytesSent.add(bytes);
+    }
+
+    /**
+     * Records the size of a response body.
+     *
+     * @param bytes The content length.
+     */
+    void responseSent(long bytes) {
+        responseBytes.record(bytes);
+    }
+
+    /**
+     * Counts a stream running out of flow control credit.
+     */
+    void flowControlStalled() {
+        flowControlStalls.increment();
+    }
+
+    /**
+     * Adds the time a stream waited for flow control credit.
+     *
+     * @param nanos The wait.
+     */
+    void flowControlResumed(long nanos) {
+        flowControlStallNanos.add(nanos);
+    }
+
+    /**
+     * Counts a protocol or I/O error.
+     */
+    void error() {
+        errors.increment();
+    }
+
+    @Override
+    public long getOpenConnections() {
+        // Closed first, so a connection closing meanwhile cannot make the count negative
+        long closed = connectionsClosed.sum();
+        return connectionsOpened.sum() - closed;
+    }
+
+    @Override
+    public long getConnectionsOpened() {
+        return connectionsOpened.sum();
+    }
+
+    @Override
+    public long getActiveStreams() {
+        long closed = streamsClosed.sum();
+        return streamsOpened.sum() - closed;
+    }
+
+    @Override
+    public long getStreamsOpened() {
+        return streamsOpened.sum();
+    }
+
+    @Override
+    public long getStreamsRefused() {
+        return streamsRefused.sum();
+    }
+
+    @Override
+    public Map<String, Long> getFramesReceived() {
+        return snapshot(framesReceived);
+    }
+
+    @Override
+    public Map<String, Long> getFramesSent() {
+        return snapshot(framesSent);
+    }
+
+    @Override
+    public long getBytesReceived() {
+        return bytesReceived.sum();
+    }
+
+    @Override
+    public long getBytesSent() {
+        return bytesSent.sum();
+    }
+
+    @Override
+    public long getFlowControlStalls() {
+        return flowControlStalls.sum();
+    }
+
+    @Override
+    public long getFlowControlStallMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(flowControlStallNanos.sum());
+    }
+
+    @Override
+    public long getHeaderTableBytes() {
+        return headerTableBudget.getUsed();
+    }
+
+    @Override
+    public long getContentCacheBytes() {
+        return contentCache.size();
+    }
+
+    @Override
+    public double getContentCacheHitRate() {
+        return hitRate(contentCache.getHits(), contentCache.getMisses());
+    }
+
+    @Override
+    public double getPathCacheHitRate() {
+        return hitRate(pathCache.getHits(), pathCache.getMisses());
+    }
+
+    @Override
+    public long getVariantCacheBytes() {
+        return variantCache.size();
+    }
+
+    @Override
+    public double getVariantCacheHitRate() {
+        return hitRate(variantCache.getHits(), variantCache.getMisses());
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    @Override
+    public long getStreamDurationMedianMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(phaseNanos[Phase.LAST_BYTE.ordinal()].getQuantile(0.5));
+    }
+
+    @Override
+    public long getStreamDuration99thPercentileMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(phaseNanos[Phase.LAST_BYTE.ordinal()].getQuantile(0.99));
+    }
+
+    @Override
+    public Map<String, Long> getPhaseLatency99thPercentileMicros() {
+        Map<String, Long> latencies = new LinkedHashMap<>();
+        for (Phase phase : Phase.values()) {
+            latencies.put(phase.label, TimeUnit.NANOSECONDS.toMicros(phaseNanos[phase.ordinal()].getQuantile(0.99)));
+        }
+        return latencies;
+    }
+
+    @Override
+    public String dumpLatencies() {
+        StringBuilder report = new StringBuilder(512);
+        report.append(String.format("%-16s %10s %10s %10s %10s %10s %10s%n", "phase (us)", "count", "p50", "p90", "p99", "p99.9", "max"));
+        for (Phase phase : Phase.values()) {
+            Histogram histogram = phaseNanos[phase.ordinal()];
+            long[] quantiles = histogram.getQuantiles(QUANTILES);
+            report.append(String.format("%-16s %10d", phase.label, histogram.getCount()));
+            for (long quantile : quantiles) {
+                report.append(String.format(" %10d", TimeUnit.NANOSECONDS.toMicros(quantile)));
+            }
+            report.append(String.format(" %10d%n", TimeUnit.NANOSECONDS.toMicros(histogram.getMax())));
+        }
+        return report.toString();
+    }
+
+    /**
+     * Renders the metrics in the Prometheus text exposition format.
+     *
+     * @return The metrics text.
+     */
+    public String toText() {
+        StringBuilder text = new StringBuilder(2048);
+        appendMetric(text, "megex_connections_open", "gauge", getOpenConnections());
+        appendMetric(text, "megex_connections_opened_total", "counter", getConnectionsOpened());
+        appendMetric(text, "megex_streams_active", "gauge", getActiveStreams());
+        appendMetric(text, "megex_streams_opened_total", "counter", getStreamsOpened());
+        appendMetric(text, "megex_streams_refused_total", "counter", getStreamsRefused());
+        appendFrames(text, "megex_frames_received_total", framesReceived);
+        appendFrames(text, "megex_frames_sent_total", framesSent);
+        appendMetric(text, "megex_bytes_received_total", "counter", getBytesReceived());
+        appendMetric(text, "megex_bytes_sent_total", "counter", getBytesSent());
+        appendMetric(text, "megex_flow_control_stalls_total", "counter", getFlowControlStalls());
+        appendMetric(text, "megex_flow_control_stall_seconds_total", "counter", flowControlStallNanos.sum() / 1e9);
+        appendMetric(text, "megex_hpack_table_bytes", "gauge", getHeaderTableBytes());
+        appendMetric(text, "megex_content_cache_bytes", "gauge", getContentCacheBytes());
+        appendMetric(text, "megex_content_cache_hits_total", "counter", contentCache.getHits());
+        appendMetric(text, "megex_content_cache_misses_total", "counter", contentCache.getMisses());
+        appendMetric(text, "megex_path_cache_hits_total", "counter", pathCache.getHits());
+        appendMetric(text, "megex_path_cache_misses_total", "counter", pathCache.getMisses());
+        appendMetric(text, "megex_variant_cache_bytes", "gauge", getVariantCacheBytes());
+        appendMetric(text, "megex_variant_cache_hits_total", "counter", variantCache.getHits());
+        appendMetric(text, "megex_variant_cache_misses_total", "counter", variantCache.getMisses());
+        appendMetric(text, "megex_errors_total", "counter", getErrors());
+        appendPhases(text);
+        appendSummary(text, "megex_response_bytes", responseBytes);
+        return text.toString();
+    }
+
+    private static void appendMetric(StringBuilder text, String name, String type, Object value) {
+        text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        text.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void appendFrames(StringBuilder text, String name, LongAdder[] frames) {
+        text.append("# TYPE ").append(name).append(" counter\n");
+        for (Map.Entry<String, Long> entry : snapshot(frames).entrySet()) {
+            text.append(name).append("{type=\"").append(entry.getKey()).append("\"} ").append(entry.getValue()).append('\n');
+        }
+    }
+
+    private static void appendSummary(StringBuilder text, String name, Histogram histogram) {
+        text.append("# TYPE ").append(name).append(" summary\n");
+        long[] values = histogram.getQuantiles(QUANTILES);
+        for (int i = 0; i < QUANTILES.length; i++) {
+            text.append(name).append("{quantile=\"").append(QUANTILES[i]).append("\"} ").append(values[i]).append('\n');
+        }
+        text.append(name).append("_sum ").append(histogram.getSum()).append('\n');
+        text.append(name).append("_count ").append(histogram.getCount()).append('\n');
+    }
+
+    private void appendPhases(StringBuilder text) {
+        String name = "megex_phase_latency_seconds";
+        text.append("# TYPE ").append(name).append(" summary\n");
+        for (Phase phase : Phase.values()) {
+            Histogram histogram = phaseNanos[phase.ordinal()];
+            long[] values = histogram.getQuantiles(QUANTILES);
+            for (int i = 0; i < QUANTILES.length; i++) {
+                text.append(name).append("{phase=\"").append(phase.label).append("\",quantile=\"").append(QUANTILES[i]).append("\"} ")
+                        .append(values[i] / 1e9).append('\n');
+            }
+            text.append(name).append("_sum{phase=\"").append(phase.label).append("\"} ").append(histogram.getSum() / 1e9).append('\n');
+            text.append(name).append("_count{phase=\"").append(phase.label).append("\"} ").append(histogram.getCount()).append('\n');
+        }
+    }
+
+    private static Map<String, Long> snapshot(LongAdder[] frames) {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (int type = 0; type < frames.length; type++) {
+            long count = frames[type].sum();
+            if (count > 0) {
+                counts.put(typeName(type), count);
+            }
+        }
+        return counts;
+    }
+
+    private static String typeName(int typeIndex) {
+        switch (typeIndex) {
+            case 0x0:
+                return "DATA";
+            case 0x1:
+                return "HEADERS";
+            case 0x4:
+                return "SETTINGS";
+            case 0x8:
+                return "WINDOW_UPDATE";
+            case FRAME_TYPES:
+                return "OTHER";
+            default:
+                return "0x" + Integer.toHexString(typeIndex);
+        }
+    }
+
+    private static int typeIndex(int type) {
+        return type >= 0 && type < FRAME_TYPES ? type : FRAME_TYPES;
+    }
+
+    private static double hitRate(long hits, long misses) {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    private static LongAdder[] newAdders(int count) {
+        LongAdder[] adders = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+}
@@ -0,0 +1,173 @@
+/************************************************
+ *
+ * Author: Abanisenioluwa K. Orojo
+ * Assignment: Program 2
+ * Class: CSI 5325
+ *
+ ************************************************/
+package megex.app.server;
+
+import java.util.Map;
+
+/**
+ * ServerMetricsMXBean is the management interface of {@link ServerMetrics}, registered with the
+ * platform MBean server as {@value ServerMetrics#OBJECT_NAME}.
+ */
+public interface ServerMetricsMXBean {
+    /**
+     * Returns the number of open connections.
+     *
+     * @return The open connections.
+     */
+    long getOpenConnections();
+
+    /**
+     * Returns the number of connections opened since the server started.
+     *
+     * @return The connections opened.
+     */
+    long getConnectionsOpened();
+
+    /**
+     * Returns the number of streams being served.
+     *
+     * @return The active streams.
+     */
+    long getActiveStreams();
+
+    /**
+     * Returns the number of streams served since the server started.
+     *
+     * @return The streams opened.
+     */
+    long getStreamsOpened();
+
+    /**
+     * Returns the number of streams refused with 503 because the connection or the server had no
+     * room for them.
+     *
+     * @return The streams refused.
+     */
+    long getStreamsRefused();
+
+    /**
+     * Returns the number of frames received, by frame type.
+     *
+     * @return The frame counts keyed by type name.
+     */
+    Map<String, Long> getFramesReceived();
+
+    /**
+     * Returns the number of frames sent, by frame type.
+     *
+     * @return The frame counts keyed by type name.
+     */
+    Map<String, Long> getFramesSent();
+
+    /**
+     * Returns the number of frame bytes received, including frame headers.
+     *
+     * @return The bytes received.
+     */
+    long getBytesReceived();
+
+    /**
+     * Returns the number of frame bytes sent, including frame headers.
+     *
+     * @return The bytes sent.
+     */
+    long getBytesSent();
+
+    /**
+     * Returns the number of times a stream ran out of flow control credit.
+     *
+     * @return The stalls.
+     */
+    long getFlowControlStalls();
+
+    /**
+     * Returns the total time streams waited for flow control credit.
+     *
+     * @return The stall time in milliseconds.
+     */
+    long getFlowControlStallMillis();
+
+    /**
+     * Returns the memory taken by the HPACK tables of all connections.
+     *
+     * @return The table bytes.
+     */
+    long getHeaderTableBytes();
+
+    /**
+     * Returns the memory taken by cached documents.
+     *
+     * @return The cached bytes.
+     */
+    long getContentCacheBytes();
+
+    /**
+     * Returns the fraction of document lookups served from the content cache.
+     *
+     * @return The hit rate, from 0 to 1.
+     */
+    double getContentCacheHitRate();
+
+    /**
+     * Returns the fraction of request paths resolved from the path cache.
+     *
+     * @return The hit rate, from 0 to 1.
+     */
+    double getPathCacheHitRate();
+
+    /**
+     * Returns the memory taken by documents compressed on the fly.
+     *
+     * @return The cached bytes.
+     */
+    long getVariantCacheBytes();
+
+    /**
+     * Returns the fraction of compressed responses served from the variant cache.
+     *
+     * @return The hit rate, from 0 to 1.
+     */
+    double getVariantCacheHitRate();
+
+    /**
+     * Returns the number of protocol and I/O errors.
+     *
+     * @return The errors.
+     */
+    long getErrors();
+
+    /**
+     * Returns the median time from a stream being admitted to its response being complete.
+     *
+     * @return The duration in microseconds.
+     */
+    long getStreamDurationMedianMicros();
+
+    /**
+     * Returns the 99th percentile of the time from a stream being admitted to its response being
+     * complete.
+     *
+     * @return The duration in microseconds.
+     */
+    long getStreamDuration99thPercentileMicros();
+
+    /**
+     * Returns the 99th percentile latency of each phase of a connection or stream: handshake,
+     * settings exchange, HEADERS decode, path resolution, file open, first byte and last byte.
+     *
+     * @return The latencies in microseconds keyed by phase.
+     */
+    Map<String, Long> getPhaseLatency99thPercentileMicros();
+
+    /**
+     * Renders a table of the latency percentiles of every phase.
+     *
+     * @return The latency report.
+     */
+    String dumpLatencies();
+}
@@ -0,0 +1,53 @@
+/************************************************
+ *
+ * Author: Abanisenioluwa K. Orojo
+ * Assignment: Program 2
+ * Class: CSI 5325
+ *
+ ************************************************/
+package megex.app.server;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.Queue;
+
+/**
+ * ShortestRemainingFirstPolicy always lets the ready stream with the fewest bytes left send next,
+ * a quantum at a time. Small responses finish as early as possible, which minimises the mean
+ * completion time, but a large body only progresses while no shorter stream is ready.
+ */
+class ShortestRemainingFirstPolicy implements SendPolicy {
+    private final long quantum;
+    private final Queue<StreamSender> ready = new PriorityQueue<>(Comparator.comparingLong(StreamSender::estimatedRemaining));
+
+    /**
+     * Constructs a ShortestRemainingFirstPolicy.
+     *
+     * @param quantum The bytes a stream may send per turn, at least the maximum data size.
+     */
+    ShortestRemainingFirstPolicy(long quantum) {
+        this.quantum = quantum;
+    }
+
+    @Override
+    public void add(StreamSender sender) {
+        ready.add(sender);
+    }
+
+    @Override
+    public StreamSender poll() {
+        return ready.poll();
+    }
+
+    @Override
+    public long allowance(StreamSender sender) {
+        return quantum;
+    }
+
+    @Override
+    public void turnEnded(StreamSender sender, long sent, boolean isReady) {
+        if (isReady) {
+            ready.add(sender);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/************************************************
+ *
+ * Author: Abanisenioluwa K. Orojo
+ * Assignment: Program 2
+ * Class: CSI 5325
+ *
+ ************************************************/
+package megex.app.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * StreamBodySource reads a body from an input stream, for files too small to be worth mapping.
+ */
+class StreamBodySource implements BodySource {
+    private final InputStream in;
+
+    /**
+     * Constructs a new StreamBodySource.
+     *
+     * @param in The stream to read, closed with the source.
+     */
+    StreamBodySource(InputStream in) {
+        this.in = in;
+    }
+
+    @Override
+    public ByteBuffer read(int length) throws IOException {
+        return ByteBuffer.wrap(in.readNBytes(length));
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
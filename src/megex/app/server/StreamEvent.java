@@ -0,0 +1,34 @@
+/************************************************
+ *
+ * Author: Abanisenioluwa K. Orojo
+ * Assignment: Program 2
+ * Class: CSI 5325
+ *
+ ************************************************/
+package megex.app.server;
+
+import jdk.jfr.*;
+
+/**
+ * StreamEvent is a Flight Recorder event spanning a stream, from its request HEADERS being
+ * admitted to its last frame being written.
+ */
+@Name("megex.Stream")
+@Label("Stream")
+@Category({"MegEx", "Streams"})
+@Description("A stream, from its request headers to its last frame")
+@StackTrace(false)
+class StreamEvent extends Event {
+    @Label("Stream ID")
+    int streamId;
+
+    @Label("Path")
+    String path;
+
+    @Label("Status")
+    int status;
+
+    @Label("Content Length")
+    @DataAmount
+    long contentLength;
+}
@@ -0,0 +1,292 @@
+/************************************************
+ *
+ * Author: Abanisenioluwa K. Orojo
+ * Assignment: Program 2
+ * Class: CSI 5325
+ *
+ ************************************************/
+package megex.app.server;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * StreamScheduler runs the streams of all connections on one server-wide executor.
+ *
+ * Each connection submits through an executor of its own from {@link #newConnectionExecutor()},
+ * which runs at most a fixed number of that connection's streams at once and queues a bounded
+ * number more, so one busy connection cannot take every worker. The shared pool has a bounded
+ * queue as well; when both are full, submissions are rejected with a RejectedExecutionException.
+ * Streams that were already admitted and are resumed after waiting, for example for flow control
+ * credit, are never rejected: if the shared queue is full they wait in an overflow queue that the
+ * workers drain as they finish tasks.
+ *
+ * The pool sizes itself by queueing delay: while streams wait longer than the target delay
+ * before starting, the core size grows towards the maximum, and once streams start promptly
+ * with most workers idle it shrinks back towards the minimum. Workers above the core size
+ * exit after {@link #KEEP_ALIVE_SECONDS} idle.
+ */
+public class StreamScheduler {
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private final ExecutorService executor;
+    private final ThreadPoolExecutor pool;
+    private final int minThreads;
+    private final int maxThreads;
+    private final long targetDelayNanos;
+    private final int maxStreamsPerConnection;
+    private final int connectionQueueCapacity;
+    private final ReentrantLock resizeLock = new ReentrantLock();
+    private final Queue<Runnable> overflow = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Constructs a StreamScheduler with a pool of platform threads.
+     *
+     * @param minThreads              The core pool size when the server is idle.
+     * @param maxThreads              The largest pool size.
+     * @param queueCapacity           The number of streams waiting for a worker.
+     * @param targetDelayMillis       The queueing delay above which the pool grows.
+     * @param maxStreamsPerConnection The number of streams of one connection running at once.
+     * @param connectionQueueCapacity The number of streams of one connection waiting for a slot.
+     */
+    public StreamScheduler(int minThreads, int maxThreads, int queueCapacity, long targetDelayMillis, int maxStreamsPerConnection,
+                           int connectionQueueCapacity) {
+        if (minThreads < 1 || maxThreads < minThreads || queueCapacity < 1 || targetDelayMillis < 0
+                || maxStreamsPerConnection < 1 || connectionQueueCapacity < 0) {
+            throw new IllegalArgumentException("Invalid stream scheduler limits");
+        }
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(minThreads, maxThreads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), task -> {
+                    Thread thread = new Thread(task, "megex-stream-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.executor = pool;
+        this.minThreads = minThreads;
+        this.maxThreads = maxThreads;
+        this.targetDelayNanos = TimeUnit.MILLISECONDS.toNanos(targetDelayMillis);
+        this.maxStreamsPerConnection = maxStreamsPerConnection;
+        this.connectionQueueCapacity = connectionQueueCapacity;
+    }
+
+    /**
+     * Constructs a StreamScheduler on an executor that needs no sizing, such as a virtual thread
+     * per task executor. Only the per-connection limits apply.
+     *
+     * @param executor                The executor running the streams.
+     * @param maxStreamsPerConnection The number of streams of one connection running at once.
+     * @param connectionQueueCapacity The number of streams of one connection waiting for a slot.
+     */
+    public StreamScheduler(ExecutorService executor, int maxStreamsPerConnection, int connectionQueueCapacity) {
+        if (maxStreamsPerConnection < 1 || connectionQueueCapacity < 0) {
+            throw new IllegalArgumentException("Invalid stream scheduler limits");
+        }
+        this.executor = executor;
+        this.pool = null;
+        this.minThreads = 0;
+        this.maxThreads = 0;
+        this.targetDelayNanos = 0;
+        this.maxStreamsPerConnection = maxStreamsPerConnection;
+        this.connectionQueueCapacity = connectionQueueCapacity;
+    }
+
+    /**
+     * Creates the executor a connection submits its streams to.
+     *
+     * @return The connection executor.
+     */
+    public ConnectionExecutor newConnectionExecutor() {
+        return new ConnectionExecutor();
+    }
+
+    /**
+     * Returns the number of pool threads, or 0 if the scheduler does not own a pool.
+     *
+     * @return The number of threads.
+     */
+    public int getPoolSize() {
+        return pool == null ? 0 : pool.getPoolSize();
+    }
+
+    /**
+     * Stops accepting streams and waits briefly for running streams to finish.
+     *
+     * @param timeoutMillis The time to wait.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public void shutdown(long timeoutMillis) throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void submit(Runnable task) {
+        if (pool == null) {
+            executor.execute(task);
+            return;
+        }
+        long enqueued = System.nanoTime();
+        pool.execute(() -> {
+            adjustPoolSize(System.nanoTime() - enqueued);
+            try {
+                task.run();
+            } finally {
+                drainOverflow();
+            }
+        });
+    }
+
+    /**
+     * Submits a task that must not be dropped, parking it in the overflow queue if the shared
+     * queue is full. A full queue means busy workers, and each of them drains the overflow queue
+     * when it finishes its task.
+     */
+    private void submitAlways(Runnable task) {
+        try {
+            submit(task);
+        } catch (RejectedExecutionException e) {
+            if (executor.isShutdown()) {
+                throw e;
+            }
+            overflow.add(task);
+            try {
+                // In case the workers went idle in the meantime
+                submit(this::drainOverflow);
+            } catch (RejectedExecutionException busy) {
+                // A worker will drain it
+            }
+        }
+    }
+
+    private void drainOverflow() {
+        Runnable task;
+        while ((task = overflow.poll()) != null) {
+            task.run();
+        }
+    }
+
+    /**
+     * Grows the core pool while streams queue for longer than the target delay and shrinks it
+     * while streams start at once and at most half of the workers are busy.
+     */
+    private void adjustPoolSize(long queueDelayNanos) {
+        int coreSize = pool.getCorePoolSize();
+        boolean grow = queueDelayNanos > targetDelayNanos && coreSize < maxThreads;
+        boolean shrink = queueDelayNanos <= targetDelayNanos / 4 && coreSize > minThreads
+                && pool.getActiveCount() <= coreSize / 2;
+        if ((grow || shrink) && resizeLock.tryLock()) {
+            try {
+                coreSize = pool.getCorePoolSize();
+                if (grow && coreSize < maxThreads) {
+                    pool.setCorePoolSize(coreSize + 1);
+                } else if (shrink && coreSize > minThreads) {
+                    pool.setCorePoolSize(coreSize - 1);
+                }
+            } finally {
+                resizeLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Limits the streams of one connection running at once. A finishing stream hands its slot to
+     * the next waiting stream of the same connection.
+     */
+    public final class ConnectionExecutor implements Executor {
+        private final Deque<Runnable> waiting = new ArrayDeque<>();
+        private final ReentrantLock lock = new ReentrantLock();
+        private int running;
+
+        private ConnectionExecutor() {
+        }
+
+        /**
+         * Runs a new stream once the connection has a free slot.
+         *
+         * @param task The stream task.
+         * @throws RejectedExecutionException if the connection or the server has no room for it.
+         */
+        @Override
+        public void execute(Runnable task) {
+            lock.lock();
+            try {
+                if (running >= maxStreamsPerConnection) {
+                    if (waiting.size() >= connectionQueueCapacity) {
+                        throw new RejectedExecutionException("Too many streams queued for the connection");
+                    }
+                    waiting.add(task);
+                    return;
+                }
+                running++;
+            } finally {
+                lock.unlock();
+            }
+            try {
+                submit(() -> runAndHandOff(task));
+            } catch (RejectedExecutionException e) {
+                lock.lock();
+                try {
+                    running--;
+                } finally {
+                    lock.unlock();
+                }
+                throw e;
+            }
+        }
+
+        /**
+         * Continues an admitted stream that returned from its task to wait, ahead of streams that
+         * have not started yet. Never rejects while the scheduler is running.
+         *
+         * @param task The stream task.
+         */
+        public void resume(Runnable task) {
+            lock.lock();
+            try {
+                if (running >= maxStreamsPerConnection) {
+                    waiting.addFirst(task);
+                    return;
+                }
+                running++;
+            } finally {
+                lock.unlock();
+            }
+            submitAlways(() -> runAndHandOff(task));
+        }
+
+        private void runAndHandOff(Runnable task) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                // Keep the slot moving; report the failure like an uncaught exception
+                Thread thread = Thread.currentThread();
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+            }
+            Runnable next = release();
+            if (next != null) {
+                // Go to the back of the shared queue so other connections get a turn
+                submitAlways(() -> runAndHandOff(next));
+            }
+        }
+
+        /**
+         * Frees a slot, or keeps it for the next waiting stream and returns that stream.
+         */
+        private Runnable release() {
+            lock.lock();
+            try {
+                Runnable next = waiting.poll();
+                if (next == null) {
+                    running--;
+                }
+                return next;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,268 @@
+/************************************************
+ *
+ * Author: Abanisenioluwa K. Orojo
+ * Assignment: Program 2
+ * Class: CSI 5325
+ *
+ ************************************************/
+package megex.app.server;
+
+import megex.serialization.BadAttributeException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.*;
+
+/**
+ * StreamSender sends the body of one response as DATA frames. It does not run on its own: the
+ * connection's {@link SendScheduler} gives it turns, and in each turn it sends up to the number of
+ * bytes the scheduler allows. Each frame is sized from the send credit the {@link FlowController}
+ * grants, up to the maximum data size. When the credit runs out the sender ends its turn without
+ * holding a thread, and the flow controller hands it back to the scheduler once a WINDOW_UPDATE
+ * arrives.
+ *
+ * Sent bytes are charged to the stream's and the connection's token buckets. When either is
+ * overdrawn the sender likewise ends its turn, and a timer hands it back to the scheduler once the
+ * rate allows the next frame. The same happens while the transport holds back writes because the
+ * client is not reading fast enough.
+ *
+ * A body that cannot be sent to its end, such as a file that shrank or failed while it was read,
+ * is never ended with END_STREAM; the sender aborts the connection instead.
+ */
+class StreamSender {
+    // Most bytes an unpaced sender writes at once when its body is cached as encoded frames
+    private static final int BATCH_BYTES = 16 * 1024;
+
+    /**
+     * How a turn ended.
+     */
+    enum Status {
+        /** The turn's allowance is used up and the sender has more to send. */
+        READY,
+        /** The sender waits for flow control credit, pacing or the transport and will be handed back. */
+        WAITING,
+        /** The body is sent, or sending failed. */
+        DONE
+    }
+
+    private final int streamId;
+    private final long admittedAt;
+    private final BodySource body;
+    private final Connection connection;
+    private final FlowController flowController;
+    private final SendScheduler sendScheduler;
+    private final TimerWheel timerWheel;
+    private final TokenBucket connectionBucket;
+    private final TokenBucket streamBucket;
+    private final ServerMetrics metrics;
+    private final Logger logger;
+    private final int maxDataSize;
+    private final int batchBytes;
+    private final boolean isLengthKnown;
+    private final long sizeEstimate;
+    private long remaining;
+    private long sentTotal = 0;
+    // When the sender ran out of flow control credit, 0 while it has credit
+    private long stalledSince = 0;
+    private FlowControlBlockedEvent blockedEvent;
+    private boolean isFirstFrameSent = false;
+
+    /**
+     * Constructs a new StreamSender.
+     *
+     * @param streamId         The stream ID.
+     * @param admittedAt       When the stream was admitted, from System.nanoTime().
+     * @param body             The body to send, closed when the sender finishes.
+     * @param contentLength    The number of body bytes, or -1 if the body ends when it runs out.
+     * @param sizeEstimate     The expected number of body bytes, used to rank the stream when the
+     *                         content length is unknown.
+     * @param connection       The connection writing the frames.
+     * @param flowController   The send windows of the connection.
+     * @param sendScheduler    The scheduler giving the sender its turns.
+     * @param timerWheel       The timer that resumes a paced sender.
+     * @param connectionBucket The rate limit of the connection, or null for none.
+     * @param streamBucket     The rate limit of the stream, or null for none.
+     * @param metrics          The server metrics, charged with flow control stalls.
+     * @param logger           The logger for logging events.
+     * @param maxDataSize      The maximum size of data to be sent in one frame.
+     */
+    StreamSender(int streamId, long admittedAt, BodySource body, long contentLength, long sizeEstimate, Connection connection,
+                 FlowController flowController, SendScheduler sendScheduler, TimerWheel timerWheel,
+                 TokenBucket connectionBucket, TokenBucket streamBucket, ServerMetrics metrics, Logger logger, int maxDataSize) {
+        this.streamId = streamId;
+        this.admittedAt = admittedAt;
+        this.body = body;
+        this.isLengthKnown = contentLength >= 0;
+        this.remaining = isLengthKnown ? contentLength : Long.MAX_VALUE;
+        this.sizeEstimate = sizeEstimate;
+        this.connection = connection;
+        this.flowController = flowController;
+        this.sendScheduler = sendScheduler;
+        this.timerWheel = timerWheel;
+        this.connectionBucket = connectionBucket;
+        this.streamBucket = streamBucket;
+        this.metrics = metrics;
+        this.logger = logger;
+        this.maxDataSize = maxDataSize;
+        this.batchBytes = connectionBucket == null && streamBucket == null ? Math.max(BATCH_BYTES, maxDataSize) : maxDataSize;
+    }
+
+    /**
+     * Returns the number of body bytes not sent yet.
+     *
+     * @return The remaining bytes, or a very large number while a body of unknown length lasts.
+     */
+    long remaining() {
+        return remaining;
+    }
+
+    /**
+     * Returns an estimate of the body bytes not sent yet, for ranking streams by how close they are
+     * to done. A body of unknown length is ranked by its size estimate less what has been sent.
+     *
+     * @return The estimated remaining bytes, never more than the size estimate.
+     */
+    long estimatedRemaining() {
+        return isLengthKnown ? remaining : Math.max(0, sizeEstimate - sentTotal);
+    }
+
+    /**
+     * Sends DATA frames until the next frame does not fit the allowance, the body is done or the
+     * sender has to wait. Frames are only split to fit flow control credit, so bodies cached as
+     * encoded frames stay on frame boundaries.
+     *
+     * @param allowance The most bytes to send in this turn, at least the maximum data size.
+     * @return How the turn ended.
+     */
+    Status send(long allowance) {
+        if (stalledSince != 0) {
+            metrics.flowControlResumed(System.nanoTime() - stalledSince);
+            stalledSince = 0;
+            blockedEvent.commit();
+            blockedEvent = null;
+        }
+        try {
+            long sent = 0;
+            while (remaining > 0) {
+                long budget = allowance - sent;
+                if (budget < Math.min(maxDataSize, remaining)) {
+                    return Status.READY;
+                }
+                if (!connection.awaitWritable(this::resume)) {
+                    logger.log(Level.FINE, "Stream {0} waiting for the client to read", streamId);
+                    return Status.WAITING;
+                }
+                int limit = (int) Math.min(batchBytes, Math.min(remaining, budget));
+                if (limit < remaining) {
+                    // Whole frames only
+                    limit -= limit % maxDataSize;
+                }
+                int wanted = body.nextLength(limit, maxDataSize);
+                int granted = flowController.acquire(streamId, wanted, this::resume);
+                if (granted == 0) {
+                    stalledSince = System.nanoTime();
+                    metrics.flowControlStalled();
+                    blockedEvent = new FlowControlBlockedEvent();
+                    blockedEvent.begin();
+                    blockedEvent.streamId = streamId;
+                    blockedEvent.remaining = remaining;
+                    logger.log(Level.FINE, "Stream {0} waiting for flow control credit", streamId);
+                    return Status.WAITING;
+                }
+                int length = 0;
+                ByteBuffer frames = body.readFrames(granted);
+                if (frames != null) {
+                    length = connection.sendFrames(streamId, frames);
+                    remaining -= length;
+                }
+                if (length < granted) {
+                    DocumentReadEvent readEvent = new DocumentReadEvent();
+                    readEvent.begin();
+                    ByteBuffer payload = body.read(granted - length);
+                    int pieceLength = payload.remaining();
+                    if (pieceLength < granted - length) {
+                        // Give back the credit the body could not fill
+                        flowController.release(streamId, granted - length - pieceLength);
+                    }
+                    if (readEvent.shouldCommit()) {
+                        readEvent.streamId = streamId;
+                        readEvent.source = body.getClass().getSimpleName();
+                        readEvent.bytes = pieceLength;
+                        readEvent.commit();
+                    }
+                    remaining -= pieceLength;
+                    if (!isLengthKnown) {
+                        if (pieceLength < granted - length || body.isAtEnd()) {
+                            remaining = 0;
+                        }
+                    } else if (pieceLength < granted - length) {
+                        // Not the end of the body the client was promised
+                        throw new IOException("File shrank while sending stream " + streamId);
+                    }
+                    if (logger.isLoggable(Level.INFO)) {
+                        logger.log(Level.INFO, "Payload Created For Stream: {0}", streamId);
+                    }
+                    connection.sendData(streamId, remaining == 0, payload);
+                    length += pieceLength;
+                }
+                sent += length;
+                sentTotal += length;
+                if (!isFirstFrameSent && length > 0) {
+                    isFirstFrameSent = true;
+                    metrics.recordPhase(ServerMetrics.Phase.FIRST_BYTE, System.nanoTime() - admittedAt);
+                }
+
+                // Waits shorter than a timer tick are left as debt in the buckets
+                long delay = pace(length);
+                if (remaining > 0 && delay >= timerWheel.getTickNanos()) {
+                    timerWheel.schedule(this::resume, delay, TimeUnit.NANOSECONDS);
+                    return Status.WAITING;
+                }
+            }
+        } catch (IOException | BadAttributeException | InternalError e) {
+            // InternalError: a mapped file was truncated under a slice the transport copies here
+            logger.log(Level.SEVERE, e, () -> "Error while sending stream " + streamId);
+            metrics.error();
+            connection.abort("Stream " + streamId + " cannot be completed");
+        }
+        finish();
+        return Status.DONE;
+    }
+
+    /**
+     * Releases the stream without sending the rest of the body.
+     */
+    void abandon() {
+        finish();
+    }
+
+    /**
+     * Charges sent bytes to the rate limits.
+     *
+     * @return The time in nanoseconds until the next frame may be sent.
+     */
+    private long pace(int bytes) {
+        long delay = 0;
+        if (connectionBucket != null) {
+            delay = connectionBucket.reserve(bytes);
+        }
+        if (streamBucket != null) {
+            delay = Math.max(delay, streamBucket.reserve(bytes));
+        }
+        return delay;
+    }
+
+    private void resume() {
+        sendScheduler.ready(this);
+    }
+
+    private void finish() {
+        connection.closeStream(streamId);
+        try {
+            body.close();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, e, () -> "Error while closing stream " + streamId + " body");
+        }
+    }
+}
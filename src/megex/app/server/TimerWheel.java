@@ -0,0 +1,165 @@
+/************************************************
+ *
+ * Author: Abanisenioluwa K. Orojo
+ * Assignment: Program 2
+ * Class: CSI 5325
+ *
+ ************************************************/
+package megex.app.server;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * TimerWheel runs delayed tasks for the whole server on one thread. Timeouts are hashed into a
+ * ring of buckets by their deadline tick, so scheduling and cancelling cost O(1) however many
+ * timeouts are pending, at the price of firing up to one tick late.
+ *
+ * Tasks run on the timer thread and must be short; anything that blocks should be handed to an
+ * executor.
+ */
+public class TimerWheel {
+    private static final int WHEEL_SIZE = 512;
+
+    private final long tickNanos;
+    private final Queue<Timeout>[] wheel;
+    private final Queue<Timeout> scheduled = new ConcurrentLinkedQueue<>();
+    private final Thread worker;
+    private final long startTime;
+    private volatile boolean isShuttingDown = false;
+
+    /**
+     * Constructs a TimerWheel and starts its thread.
+     *
+     * @param tick The resolution of the wheel.
+     * @param unit The unit of tick.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public TimerWheel(long tick, TimeUnit unit) {
+        this.tickNanos = unit.toNanos(tick);
+        if (tickNanos <= 0) {
+            throw new IllegalArgumentException("Invalid tick: " + tick);
+        }
+        this.wheel = new Queue[WHEEL_SIZE];
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel[i] = new ArrayDeque<>();
+        }
+        this.startTime = System.nanoTime();
+        this.worker = new Thread(this::run, "megex-timer");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Schedules a task to run once after a delay.
+     *
+     * @param task  The task to run on the timer thread.
+     * @param delay The delay.
+     * @param unit  The unit of delay.
+     * @return The timeout, which can be cancelled.
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        Timeout timeout = new Timeout(task, System.nanoTime() - startTime + Math.max(0, unit.toNanos(delay)));
+        scheduled.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Returns the resolution of the wheel. Timeouts fire up to one tick late.
+     *
+     * @return The tick in nanoseconds.
+     */
+    public long getTickNanos() {
+        return tickNanos;
+    }
+
+    /**
+     * Stops the timer thread. Pending timeouts do not run.
+     */
+    public void shutdown() {
+        isShuttingDown = true;
+        LockSupport.unpark(worker);
+    }
+
+    private void run() {
+        long tick = 0;
+        while (!isShuttingDown) {
+            long deadline = (tick + 1) * tickNanos;
+            long now;
+            while ((now = System.nanoTime() - startTime) < deadline && !isShuttingDown) {
+                LockSupport.parkNanos(deadline - now);
+            }
+            transferScheduled(tick);
+            expire(wheel[(int) (tick & (WHEEL_SIZE - 1))], now);
+            tick++;
+        }
+    }
+
+    /**
+     * Moves newly scheduled timeouts into the bucket of their deadline tick.
+     */
+    private void transferScheduled(long currentTick) {
+        Timeout timeout;
+        while ((timeout = scheduled.poll()) != null) {
+            if (timeout.isCancelled()) {
+                continue;
+            }
+            long deadlineTick = Math.max(currentTick, timeout.deadline / tickNanos);
+            timeout.rounds = (deadlineTick - currentTick) / WHEEL_SIZE;
+            wheel[(int) (deadlineTick & (WHEEL_SIZE - 1))].add(timeout);
+        }
+    }
+
+    private void expire(Queue<Timeout> bucket, long now) {
+        for (int i = bucket.size(); i > 0; i--) {
+            Timeout timeout = bucket.poll();
+            if (timeout.isCancelled()) {
+                continue;
+            }
+            if (timeout.rounds > 0 || timeout.deadline > now) {
+                timeout.rounds--;
+                bucket.add(timeout);
+                continue;
+            }
+            try {
+                timeout.task.run();
+            } catch (RuntimeException e) {
+                Thread.currentThread().getUncaughtExceptionHandler().uncaughtException(Thread.currentThread(), e);
+            }
+        }
+    }
+
+    /**
+     * A scheduled task.
+     */
+    public static final class Timeout {
+        private final Runnable task;
+        private final long deadline;
+        private long rounds;
+        private volatile boolean isCancelled = false;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Cancels the timeout. Has no effect once the task has run.
+         */
+        public void cancel() {
+            isCancelled = true;
+        }
+
+        /**
+         * Returns whether the timeout was cancelled.
+         *
+         * @return true if cancelled.
+         */
+        public boolean isCancelled() {
+            return isCancelled;
+        }
+    }
+}
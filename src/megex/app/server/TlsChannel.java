@@ -0,0 +1,596 @@
+/************************************************
+ *
+ * Author: Abanisenioluwa K. Orojo
+ * Assignment: Program 2
+ * Class: CSI 5325
+ *
+ ************************************************/
+package megex.app.server;
+
+import megex.serialization.BadAttributeException;
+import megex.serialization.Framer;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.logging.*;
+
+/**
+ * TlsChannel runs one client connection on a non-blocking channel. It drives the TLS handshake
+ * and record layer with an SSLEngine, checks the client preface, cuts the decrypted byte stream
+ * into frames for the {@link Connection} and writes the frames the connection produces.
+ *
+ * Reads, writes and engine calls only happen on the owning event loop. Stream threads write
+ * through an output stream that queues whole frames and asks the loop to flush them, so a slow
+ * client never blocks a thread. Once {@link #HIGH_WATER_BYTES} are queued, the connection's
+ * senders are held back through its {@link Connection.WriteGate} until the queue drains below
+ * {@link #LOW_WATER_BYTES}; a client that stops reading altogether runs into the write stall
+ * timeout. DATA payloads written as buffers, such as slices
+ * of a memory-mapped file, are queued as they are and only copied when the engine encrypts them.
+ * Write progress and partial frames are reported to the connection's {@link ConnectionTimeouts},
+ * which close the channel on the loop when a client stalls.
+ */
+class TlsChannel {
+    private static final byte[] CLIENT_PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final int MAX_PAYLOAD_LENGTH = 16384;
+    private static final int HIGH_WATER_BYTES = 1024 * 1024;
+    private static final int LOW_WATER_BYTES = 256 * 1024;
+    private static final ByteBuffer[] EMPTY = {ByteBuffer.allocate(0)};
+
+    private final SocketChannel channel;
+    private final SSLEngine engine;
+    private final EventLoop eventLoop;
+    private final Logger logger;
+    private final Connection connection;
+    private ByteBuffer netIn;
+    private final ByteBuffer netOut;
+    private ByteBuffer appIn;
+    // Each entry is a frame, or the part of one, to be wrapped together
+    private final Queue<ByteBuffer[]> outbound = new ArrayDeque<>();
+    private final ReentrantLock outboundLock = new ReentrantLock();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private int pendingBytes;
+    // Senders waiting for the queue to drain
+    private final List<Runnable> writableCallbacks = new ArrayList<>();
+    private SelectionKey key;
+    private boolean prefaceReceived = false;
+    private volatile boolean isClosed = false;
+    private final ConnectionEvent connectionEvent = new ConnectionEvent();
+    // Until the handshake completes
+    private HandshakeEvent handshakeEvent;
+    private long handshakeStart;
+
+    /**
+     * Constructs a new TlsChannel.
+     *
+     * @param channel           The accepted channel.
+     * @param engine            The server-side TLS engine for the channel.
+     * @param eventLoop         The event loop serving the channel.
+     * @param logger            The logger for logging events.
+     * @param connectionFactory Creates the protocol state of the connection for a framer.
+     */
+    TlsChannel(SocketChannel channel, SSLEngine engine, EventLoop eventLoop, Logger logger, Function<Framer, Connection> connectionFactory) {
+        connectionEvent.begin();
+        this.channel = channel;
+        this.engine = engine;
+        this.eventLoop = eventLoop;
+        this.logger = logger;
+        this.connection = connectionFactory.apply(new Framer(new ChannelOutputStream()));
+        connection.setWriteGate(this::awaitWritable);
+        this.netIn = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+        this.netOut = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+        this.netOut.flip(); // nothing to write yet
+        this.appIn = ByteBuffer.allocate(engine.getSession().getApplicationBufferSize());
+        connection.getTimeouts().start(this::expire);
+    }
+
+    /**
+     * Registers the channel for reading and starts the handshake. Called on the event loop.
+     *
+     * @param selector The selector of the event loop.
+     * @throws IOException if the channel cannot be registered.
+     */
+    void register(Selector selector) throws IOException {
+        channel.configureBlocking(false);
+        key = channel.register(selector, SelectionKey.OP_READ, this);
+        handshakeEvent = new HandshakeEvent();
+        handshakeEvent.begin();
+        handshakeStart = System.nanoTime();
+        engine.beginHandshake();
+    }
+
+    /**
+     * Handles a selected key. Called on the event loop.
+     *
+     * @param selectionKey The key of this channel.
+     */
+    void handle(SelectionKey selectionKey) {
+        try {
+            if (selectionKey.isValid() && selectionKey.isReadable()) {
+                read();
+            }
+            if (selectionKey.isValid() && selectionKey.isWritable()) {
+                flush();
+                process();
+            }
+        } catch (SSLException e) {
+            logger.log(Level.WARNING, "TLS error", e);
+            close();
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error while reading frame", e);
+            close();
+        } catch (BadAttributeException e) {
+            logger.log(Level.SEVERE, "Error while decoding frame", e);
+            close();
+        } catch (CancelledKeyException e) {
+            close();
+        }
+    }
+
+    /**
+     * Closes the channel and releases the connection. Safe to call more than once.
+     */
+    void close() {
+        outboundLock.lock();
+        try {
+            if (isClosed) {
+                return;
+            }
+            isClosed = true;
+            outbound.clear();
+            pendingBytes = 0;
+        } finally {
+            outboundLock.unlock();
+        }
+        // Waiting senders find the connection closed and finish
+        runWritableCallbacks();
+        try {
+            // Best effort close_notify
+            engine.closeOutbound();
+            if (key != null) {
+                flush();
+            }
+        } catch (IOException | CancelledKeyException e) {
+            // The peer is gone
+        }
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            logger.log(Level.INFO, "Closing connection");
+            channel.close();
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error while closing the connection", e);
+        }
+        connection.close();
+        if (connectionEvent.shouldCommit()) {
+            connectionEvent.remoteAddress = remoteAddress();
+            connectionEvent.engine = "nio";
+            connectionEvent.streams = connection.getStreamCount();
+            connectionEvent.bytesReceived = connection.getBytesReceived();
+            connectionEvent.bytesSent = connection.getBytesSent();
+            connectionEvent.commit();
+        }
+    }
+
+    /**
+     * Closes the connection on the event loop once one of its deadlines has passed. Called on the
+     * timer thread.
+     */
+    private void expire(String reason) {
+        eventLoop.execute(() -> {
+            if (!isClosed) {
+                logger.log(Level.WARNING, "Closing connection: {0}", reason);
+                close();
+            }
+        });
+    }
+
+    private void read() throws IOException, BadAttributeException {
+        int bytesRead = channel.read(netIn);
+        if (bytesRead < 0) {
+            try {
+                engine.closeInbound();
+            } catch (SSLException e) {
+                // Closed without close_notify
+            }
+            close();
+            return;
+        }
+        process();
+    }
+
+    private void process() throws IOException, BadAttributeException {
+        unwrap();
+        if (!isClosed) {
+            flush();
+        }
+        if (handshakeEvent != null && !isClosed && engine.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING) {
+            connection.handshakeCompleted(System.nanoTime() - handshakeStart);
+            if (handshakeEvent.shouldCommit()) {
+                handshakeEvent.remoteAddress = remoteAddress();
+                handshakeEvent.protocol = engine.getSession().getProtocol();
+                handshakeEvent.cipherSuite = engine.getSession().getCipherSuite();
+                handshakeEvent.applicationProtocol = engine.getApplicationProtocol();
+                handshakeEvent.commit();
+            }
+            handshakeEvent = null;
+        }
+    }
+
+    private String remoteAddress() {
+        // Only for events; the channel may be closed by now
+        return String.valueOf(channel.socket().getRemoteSocketAddress());
+    }
+
+    /**
+     * Feeds received TLS records to the engine, completing handshake steps as they become
+     * possible, and passes the decrypted bytes on as frames.
+     */
+    private void unwrap() throws IOException, BadAttributeException {
+        netIn.flip();
+        try {
+            records:
+            while (!isClosed) {
+                SSLEngineResult.HandshakeStatus handshakeStatus = engine.getHandshakeStatus();
+                if (handshakeStatus == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+                    runDelegatedTasks();
+                    continue;
+                }
+                if (handshakeStatus == SSLEngineResult.HandshakeStatus.NEED_WRAP) {
+                    if (!flush() || engine.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_WRAP) {
+                        // Handshake output is still waiting for the socket
+                        break;
+                    }
+                    continue;
+                }
+                if (!netIn.hasRemaining()) {
+                    break;
+                }
+                SSLEngineResult result = engine.unwrap(netIn, appIn);
+                switch (result.getStatus()) {
+                    case BUFFER_UNDERFLOW:
+                        if (netIn.position() == 0 && netIn.limit() == netIn.capacity()) {
+                            netIn = enlarge(netIn, engine.getSession().getPacketBufferSize());
+                            netIn.flip();
+                        }
+                        break records;
+                    case BUFFER_OVERFLOW:
+                        deframe();
+                        if (appIn.remaining() < engine.getSession().getApplicationBufferSize()) {
+                            appIn.flip();
+                            appIn = enlarge(appIn, engine.getSession().getApplicationBufferSize());
+                        }
+                        break;
+                    case CLOSED:
+                        close();
+                        return;
+                    default:
+                        if (result.bytesConsumed() == 0 && result.bytesProduced() == 0
+                                && result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_UNWRAP) {
+                            break records;
+                        }
+                        break;
+                }
+            }
+        } finally {
+            if (!isClosed) {
+                netIn.compact();
+            }
+        }
+        deframe();
+    }
+
+    /**
+     * Cuts the decrypted bytes into frames, checking the client preface first.
+     */
+    private void deframe() throws IOException, BadAttributeException {
+        if (isClosed) {
+            return;
+        }
+        appIn.flip();
+        try {
+            if (!prefaceReceived) {
+                if (appIn.remaining() < CLIENT_PREFACE.length) {
+                    return;
+                }
+                byte[] preface = new byte[CLIENT_PREFACE.length];
+                appIn.get(preface);
+                if (!Arrays.equals(preface, CLIENT_PREFACE)) {
+                    logger.log(Level.WARNING, () -> "Bad preface: " + new String(preface, StandardCharsets.US_ASCII));
+                    close();
+                    return;
+                }
+                prefaceReceived = true;
+                connection.open();
+            }
+            while (!isClosed && appIn.remaining() >= 3) {
+                int position = appIn.position();
+                int length = (appIn.get(position) & 0xFF) << 16 | (appIn.get(position + 1) & 0xFF) << 8 | (appIn.get(position + 2) & 0xFF);
+                if (length > MAX_PAYLOAD_LENGTH) {
+                    throw new IOException("Invalid payload length: " + length);
+                }
+                if (appIn.remaining() < 3 + 6 + length) {
+                    break;
+                }
+                byte[] frame = new byte[6 + length];
+                appIn.position(position + 3);
+                appIn.get(frame);
+                connection.handleFrame(frame);
+            }
+            if (prefaceReceived && appIn.hasRemaining()) {
+                connection.getTimeouts().frameStarted();
+            }
+        } finally {
+            appIn.compact();
+        }
+    }
+
+    /**
+     * Wraps handshake messages and queued frames into TLS records and writes them until the
+     * socket stops accepting bytes.
+     *
+     * @return true if everything was written, false if the loop is waiting for the socket.
+     */
+    private boolean flush() throws IOException {
+        flushScheduled.set(false);
+        while (true) {
+            if (netOut.hasRemaining()) {
+                if (channel.write(netOut) > 0) {
+                    connection.getTimeouts().writeProgressed();
+                }
+                if (netOut.hasRemaining()) {
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                    connection.getTimeouts().writeStarted();
+                    return false;
+                }
+            }
+            SSLEngineResult.HandshakeStatus handshakeStatus = engine.getHandshakeStatus();
+            if (handshakeStatus == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+                runDelegatedTasks();
+                continue;
+            }
+            ByteBuffer[] source;
+            if (handshakeStatus == SSLEngineResult.HandshakeStatus.NEED_WRAP) {
+                source = EMPTY;
+            } else if (handshakeStatus != SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING || engine.isOutboundDone()) {
+                // Waiting for the client
+                break;
+            } else if ((source = nextOutbound()) == null) {
+                break;
+            }
+            netOut.clear();
+            SSLEngineResult result;
+            try {
+                result = engine.wrap(source, netOut);
+            } catch (InternalError e) {
+                // A mapped file body was truncated under the queued slice
+                throw new IOException("Queued body became unreadable", e);
+            }
+            netOut.flip();
+            if (source != EMPTY) {
+                consumedOutbound(source);
+            }
+            if (result.getStatus() == SSLEngineResult.Status.CLOSED && !netOut.hasRemaining()) {
+                break;
+            }
+        }
+        if (key.isValid()) {
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+        }
+        connection.getTimeouts().writeFinished();
+        return true;
+    }
+
+    private ByteBuffer[] nextOutbound() {
+        outboundLock.lock();
+        try {
+            return outbound.peek();
+        } finally {
+            outboundLock.unlock();
+        }
+    }
+
+    private void consumedOutbound(ByteBuffer[] source) {
+        if (source[source.length - 1].hasRemaining()) {
+            return;
+        }
+        boolean isDrained;
+        outboundLock.lock();
+        try {
+            outbound.poll();
+            pendingBytes -= size(source);
+            isDrained = pendingBytes < LOW_WATER_BYTES && !writableCallbacks.isEmpty();
+        } finally {
+            outboundLock.unlock();
+        }
+        if (isDrained) {
+            runWritableCallbacks();
+        }
+    }
+
+    /**
+     * Returns whether the queue has room for more frames, otherwise keeping the callback until it
+     * has drained.
+     */
+    private boolean awaitWritable(Runnable onWritable) {
+        outboundLock.lock();
+        try {
+            if (pendingBytes < HIGH_WATER_BYTES || isClosed) {
+                return true;
+            }
+            writableCallbacks.add(onWritable);
+            return false;
+        } finally {
+            outboundLock.unlock();
+        }
+    }
+
+    private void runWritableCallbacks() {
+        List<Runnable> callbacks;
+        outboundLock.lock();
+        try {
+            callbacks = new ArrayList<>(writableCallbacks);
+            writableCallbacks.clear();
+        } finally {
+            outboundLock.unlock();
+        }
+        for (Runnable callback : callbacks) {
+            callback.run();
+        }
+    }
+
+    /**
+     * Queues buffers for the client and makes sure the event loop flushes them. The buffers must
+     * start at position 0 and are wrapped into records together.
+     */
+    private void enqueue(ByteBuffer... buffers) throws IOException {
+        int size = size(buffers);
+        outboundLock.lock();
+        try {
+            if (isClosed) {
+                throw new IOException("Connection closed");
+            }
+            outbound.add(buffers);
+            pendingBytes += size;
+        } finally {
+            outboundLock.unlock();
+        }
+        if (!eventLoop.inEventLoop() && flushScheduled.compareAndSet(false, true)) {
+            eventLoop.execute(this::scheduledFlush);
+        }
+    }
+
+    private void scheduledFlush() {
+        if (isClosed) {
+            return;
+        }
+        try {
+            flush();
+        } catch (IOException | CancelledKeyException e) {
+            logger.log(Level.SEVERE, "Error while writing frame", e);
+            close();
+        }
+    }
+
+    private void runDelegatedTasks() {
+        Runnable task;
+        while ((task = engine.getDelegatedTask()) != null) {
+            task.run();
+        }
+    }
+
+    private static int size(ByteBuffer[] buffers) {
+        int size = 0;
+        for (ByteBuffer buffer : buffers) {
+            size += buffer.limit();
+        }
+        return size;
+    }
+
+    /**
+     * Copies a buffer in read mode into a larger one, leaving the copy in write mode.
+     */
+    private static ByteBuffer enlarge(ByteBuffer buffer, int extra) {
+        ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() + extra);
+        larger.put(buffer);
+        return larger;
+    }
+
+    /**
+     * Collects the bytes of a frame written by the Framer and queues them on flush, so frames are
+     * handed to the event loop whole. Payloads written as buffers, including a gathered run of
+     * frames, are queued together with the bytes collected before them, without copying. The Connection only writes while holding its
+     * write lock, which serialises access to the buffer.
+     */
+    private final class ChannelOutputStream extends OutputStream implements GatheringByteChannel {
+        private byte[] buffer = new byte[64];
+        private int count;
+
+        @Override
+        public void write(int b) {
+            ensureCapacity(1);
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            ensureCapacity(len);
+            System.arraycopy(b, off, buffer, count, len);
+            count += len;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            int length = src.remaining();
+            ByteBuffer payload = src.slice();
+            src.position(src.limit());
+            if (count == 0) {
+                enqueue(payload);
+            } else {
+                ByteBuffer head = ByteBuffer.wrap(Arrays.copyOf(buffer, count));
+                count = 0;
+                enqueue(head, payload);
+            }
+            return length;
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            int head = count == 0 ? 0 : 1;
+            ByteBuffer[] buffers = new ByteBuffer[head + length];
+            if (head > 0) {
+                buffers[0] = ByteBuffer.wrap(Arrays.copyOf(buffer, count));
+                count = 0;
+            }
+            long written = 0;
+            for (int i = 0; i < length; i++) {
+                ByteBuffer src = srcs[offset + i];
+                written += src.remaining();
+                buffers[head + i] = src.slice();
+                src.position(src.limit());
+            }
+            enqueue(buffers);
+            return written;
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs) throws IOException {
+            return write(srcs, 0, srcs.length);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return !isClosed;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (count == 0) {
+                return;
+            }
+            byte[] bytes = Arrays.copyOf(buffer, count);
+            count = 0;
+            enqueue(ByteBuffer.wrap(bytes));
+        }
+
+        private void ensureCapacity(int len) {
+            if (count + len > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, count + len));
+            }
+        }
+    }
+}
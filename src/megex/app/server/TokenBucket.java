@@ -0,0 +1,59 @@
+/************************************************
+ *
+ * Author: Abanisenioluwa K. Orojo
+ * Assignment: Program 2
+ * Class: CSI 5325
+ *
+ ************************************************/
+package megex.app.server;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * TokenBucket limits a byte rate. Tokens accrue at the configured rate up to the burst size, and
+ * a sender reserves tokens for what it has just sent. When the bucket is overdrawn the
+ * reservation returns how long the sender should wait before sending again, so pacing can be
+ * done with a timer instead of a sleeping thread.
+ */
+class TokenBucket {
+    private final double bytesPerNano;
+    private final long burstBytes;
+    private final ReentrantLock lock = new ReentrantLock();
+    private double tokens;
+    private long lastRefill;
+
+    /**
+     * Constructs a full TokenBucket.
+     *
+     * @param bytesPerSecond The sustained rate.
+     * @param burstBytes     The number of bytes that may be sent at once after idling.
+     */
+    TokenBucket(long bytesPerSecond, long burstBytes) {
+        if (bytesPerSecond <= 0 || burstBytes < 0) {
+            throw new IllegalArgumentException("Invalid rate: " + bytesPerSecond + " bytes/s, burst " + burstBytes);
+        }
+        this.bytesPerNano = bytesPerSecond / 1e9;
+        this.burstBytes = burstBytes;
+        this.tokens = burstBytes;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Takes tokens for bytes that are being sent.
+     *
+     * @param bytes The number of bytes.
+     * @return The time in nanoseconds until the bucket is no longer overdrawn, 0 if it is not.
+     */
+    long reserve(int bytes) {
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            tokens = Math.min(burstBytes, tokens + (now - lastRefill) * bytesPerNano);
+            lastRefill = now;
+            tokens -= bytes;
+            return tokens >= 0 ? 0 : (long) Math.ceil(-tokens / bytesPerNano);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
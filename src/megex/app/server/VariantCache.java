@@ -0,0 +1,175 @@
+/************************************************
+ *
+ * Author: Abanisenioluwa K. Orojo
+ * Assignment: Program 2
+ * Class: CSI 5325
+ *
+ ************************************************/
+package megex.app.server;
+
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * VariantCache keeps documents the server compressed on the fly, so the next request for the same
+ * version of a file is answered without compressing it again. Each file has at most one variant,
+ * tagged with the ETag of the version it was compressed from; a variant of an older version is
+ * never served and is replaced by the next one stored.
+ *
+ * The cache holds at most its budget of compressed bytes and evicts the least recently used
+ * variants to make room. Entries are dropped when a {@link DocumentWatcher} reports that their
+ * file changed.
+ */
+public class VariantCache {
+    private final long budget;
+    private final int maxVariantSize;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<Path, Variant> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Constructs a VariantCache.
+     *
+     * @param budget         The number of compressed bytes to keep, 0 to disable the cache.
+     * @param maxVariantSize The size of the largest variant to keep.
+     */
+    public VariantCache(long budget, long maxVariantSize) {
+        this.budget = budget;
+        this.maxVariantSize = (int) Math.min(maxVariantSize, Math.min(budget, Integer.MAX_VALUE / 2));
+    }
+
+    /**
+     * Looks up the compressed variant of a file version.
+     *
+     * @param file The absolute, normalized path of the file.
+     * @param etag The ETag of the version.
+     * @return The compressed bytes, which callers must not modify, or null if not cached.
+     */
+    byte[] get(Path file, String etag) {
+        if (budget == 0) {
+            return null;
+        }
+        lock.lock();
+        try {
+            Variant variant = entries.get(file);
+            if (variant == null || !variant.etag.equals(etag)) {
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            return variant.bytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Keeps the compressed variant of a file version, evicting others to make room.
+     *
+     * @param file  The absolute, normalized path of the file.
+     * @param etag  The ETag of the version.
+     * @param bytes The compressed bytes.
+     */
+    void put(Path file, String etag, byte[] bytes) {
+        if (bytes.length > maxVariantSize) {
+            return;
+        }
+        lock.lock();
+        try {
+            Variant previous = entries.remove(file);
+            if (previous != null) {
+                size -= previous.bytes.length;
+            }
+            Iterator<Variant> eldest = entries.values().iterator();
+            while (size + bytes.length > budget && eldest.hasNext()) {
+                size -= eldest.next().bytes.length;
+                eldest.remove();
+            }
+            entries.put(file, new Variant(etag, bytes));
+            size += bytes.length;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drops the variants of a path and everything below it after a change on disk.
+     *
+     * @param changed The changed path, or null if any path may have changed.
+     */
+    public void invalidate(Path changed) {
+        lock.lock();
+        try {
+            Iterator<Map.Entry<Path, Variant>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Path, Variant> entry = iterator.next();
+                if (changed == null || entry.getKey().startsWith(changed)) {
+                    size -= entry.getValue().bytes.length;
+                    iterator.remove();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the size of the largest variant the cache keeps.
+     *
+     * @return The size in bytes.
+     */
+    int getMaxVariantSize() {
+        return maxVariantSize;
+    }
+
+    /**
+     * Returns the memory taken by the cached variants.
+     *
+     * @return The size in bytes.
+     */
+    public long size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of lookups answered from the cache.
+     *
+     * @return The hits.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of lookups that found no current variant.
+     *
+     * @return The misses.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * A compressed file version.
+     */
+    private static final class Variant {
+        private final String etag;
+        private final byte[] bytes;
+
+        private Variant(String etag, byte[] bytes) {
+            this.etag = etag;
+            this.bytes = bytes;
+        }
+    }
+}
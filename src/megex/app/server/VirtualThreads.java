@@ -0,0 +1,41 @@
+/************************************************
+ *
+ * Author: Abanisenioluwa K. Orojo
+ * Assignment: Program 2
+ * Class: CSI 5325
+ *
+ ************************************************/
+package megex.app.server;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * VirtualThreads creates executors that run each task on its own virtual thread. Virtual threads
+ * are a preview feature of the targeted JDK, so the executor is looked up at run time and is only
+ * available on a JDK that has them enabled (for example with --enable-preview).
+ */
+final class VirtualThreads {
+    private VirtualThreads() {
+    }
+
+    /**
+     * Creates an executor that starts a new virtual thread for each task.
+     *
+     * @return The executor.
+     * @throws UnsupportedOperationException if the running JDK does not provide virtual threads.
+     */
+    static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new UnsupportedOperationException("Virtual threads are not available on Java " + Runtime.version(), e);
+        } catch (InvocationTargetException e) {
+            // Preview features not enabled
+            throw new UnsupportedOperationException("Virtual threads are not enabled: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+}
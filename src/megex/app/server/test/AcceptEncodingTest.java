@@ -0,0 +1,30 @@
+package megex.app.server.test;
+
+import megex.app.server.AcceptEncoding;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AcceptEncodingTest {
+    @ParameterizedTest
+    @ValueSource(strings = {"gzip", "GZIP", "deflate, gzip", "gzip;q=0.5", "gzip ; Q=1", "x-gzip", "*",
+            "br, *;q=0.1", "*;q=0, gzip", "gzip;level=1"})
+    void testAccepted(String header) {
+        assertTrue(AcceptEncoding.acceptsGzip(header));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "identity", "deflate, br", "gzip;q=0", "gzip;q=0.0", "gzip;q=oops", "*;q=0",
+            "gzip;q=0, *", "gzipped"})
+    void testRefused(String header) {
+        assertFalse(AcceptEncoding.acceptsGzip(header));
+    }
+
+    @Test
+    void testAbsent() {
+        assertFalse(AcceptEncoding.acceptsGzip(null));
+    }
+}
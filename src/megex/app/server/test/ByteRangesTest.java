@@ -0,0 +1,89 @@
+package megex.app.server.test;
+
+import megex.app.server.ByteRanges;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ByteRangesTest {
+    private static final long SIZE = 1000;
+
+    private static void assertRange(long first, long length, ByteRanges.Range range) {
+        assertEquals(first, range.first());
+        assertEquals(length, range.length());
+    }
+
+    @Test
+    void testClosedRange() {
+        List<ByteRanges.Range> ranges = ByteRanges.parse("bytes=0-499", SIZE);
+        assertEquals(1, ranges.size());
+        assertRange(0, 500, ranges.get(0));
+        assertEquals("bytes 0-499/1000", ranges.get(0).contentRange(SIZE));
+    }
+
+    @Test
+    void testLastPastEndIsClipped() {
+        assertRange(900, 100, ByteRanges.parse("bytes=900-5000", SIZE).get(0));
+    }
+
+    @Test
+    void testOpenEndedRange() {
+        List<ByteRanges.Range> ranges = ByteRanges.parse("bytes=990-", SIZE);
+        assertRange(990, 10, ranges.get(0));
+        assertEquals("bytes 990-999/1000", ranges.get(0).contentRange(SIZE));
+    }
+
+    @Test
+    void testSuffixRange() {
+        assertRange(800, 200, ByteRanges.parse("bytes=-200", SIZE).get(0));
+        // A suffix longer than the document is the whole document
+        assertRange(0, SIZE, ByteRanges.parse("bytes=-5000", SIZE).get(0));
+    }
+
+    @Test
+    void testSeveralRangesInRequestedOrder() {
+        List<ByteRanges.Range> ranges = ByteRanges.parse("Bytes=500-599, 0-9 ,-1", SIZE);
+        assertEquals(3, ranges.size());
+        assertRange(500, 100, ranges.get(0));
+        assertRange(0, 10, ranges.get(1));
+        assertRange(999, 1, ranges.get(2));
+    }
+
+    @Test
+    void testUnsatisfiable() {
+        assertTrue(ByteRanges.parse("bytes=1000-", SIZE).isEmpty());
+        assertTrue(ByteRanges.parse("bytes=2000-3000, -0", SIZE).isEmpty());
+        assertTrue(ByteRanges.parse("bytes=-10", 0).isEmpty());
+    }
+
+    @Test
+    void testUnsatisfiableRangesAreDropped() {
+        List<ByteRanges.Range> ranges = ByteRanges.parse("bytes=2000-, 10-19", SIZE);
+        assertEquals(1, ranges.size());
+        assertRange(10, 10, ranges.get(0));
+    }
+
+    @Test
+    void testTooManyRangesAreIgnored() {
+        StringBuilder header = new StringBuilder("bytes=0-0");
+        for (int i = 1; i < ByteRanges.MAX_RANGES; i++) {
+            header.append(',').append(i).append('-').append(i);
+        }
+        assertEquals(ByteRanges.MAX_RANGES, ByteRanges.parse(header.toString(), SIZE).size());
+        header.append(",100-100");
+        assertNull(ByteRanges.parse(header.toString(), SIZE));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "bytes=", "bytes=,", "items=0-1", "bytes 0-1", "bytes=5", "bytes=10-5", "bytes=a-b",
+            "bytes=-", "bytes=--5", "bytes=+1-2", "bytes=0-1, x", "bytes=99999999999999999999-"})
+    void testMalformedIsIgnored(String header) {
+        assertNull(ByteRanges.parse(header, SIZE));
+    }
+}
@@ -0,0 +1,85 @@
+package megex.app.server.test;
+
+import megex.app.server.ConditionalRequests;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConditionalRequestsTest {
+    private static final String ETAG = "\"abc\"";
+    // Sun, 06 Nov 1994 08:49:37 GMT, with milliseconds HTTP dates do not carry
+    private static final FileTime LAST_MODIFIED = FileTime.from(Instant.ofEpochMilli(784111777_250L));
+    private static final String DATE = "Sun, 06 Nov 1994 08:49:37 GMT";
+
+    @Test
+    void testHttpDate() {
+        assertEquals(DATE, ConditionalRequests.httpDate(LAST_MODIFIED));
+    }
+
+    @Test
+    void testNoValidators() {
+        assertFalse(ConditionalRequests.isNotModified(null, null, ETAG, LAST_MODIFIED));
+    }
+
+    @Test
+    void testIfNoneMatchStrongTag() {
+        assertTrue(ConditionalRequests.isNotModified(ETAG, null, ETAG, LAST_MODIFIED));
+        assertTrue(ConditionalRequests.isNotModified("\"other\", " + ETAG, null, ETAG, LAST_MODIFIED));
+        assertFalse(ConditionalRequests.isNotModified("\"other\"", null, ETAG, LAST_MODIFIED));
+    }
+
+    @Test
+    void testIfNoneMatchWeakComparison() {
+        assertTrue(ConditionalRequests.isNotModified("W/" + ETAG, null, ETAG, LAST_MODIFIED));
+        assertTrue(ConditionalRequests.isNotModified(ETAG, null, "W/" + ETAG, LAST_MODIFIED));
+        assertFalse(ConditionalRequests.isNotModified("W/\"other\"", null, ETAG, LAST_MODIFIED));
+    }
+
+    @Test
+    void testIfNoneMatchWildcard() {
+        assertTrue(ConditionalRequests.isNotModified("*", null, ETAG, LAST_MODIFIED));
+        assertTrue(ConditionalRequests.isNotModified("\"other\", *", null, ETAG, LAST_MODIFIED));
+    }
+
+    @Test
+    void testIfNoneMatchOverridesIfModifiedSince() {
+        assertFalse(ConditionalRequests.isNotModified("\"other\"", DATE, ETAG, LAST_MODIFIED));
+    }
+
+    @Test
+    void testIfModifiedSince() {
+        assertTrue(ConditionalRequests.isNotModified(null, DATE, ETAG, LAST_MODIFIED));
+        assertTrue(ConditionalRequests.isNotModified(null, "Sun, 06 Nov 1994 08:49:38 GMT", ETAG, LAST_MODIFIED));
+        assertFalse(ConditionalRequests.isNotModified(null, "Sun, 06 Nov 1994 08:49:36 GMT", ETAG, LAST_MODIFIED));
+        assertFalse(ConditionalRequests.isNotModified(null, "yesterday", ETAG, LAST_MODIFIED));
+    }
+
+    @Test
+    void testIfRangeAbsent() {
+        assertTrue(ConditionalRequests.isRangeCurrent(null, ETAG, LAST_MODIFIED));
+    }
+
+    @Test
+    void testIfRangeStrongTag() {
+        assertTrue(ConditionalRequests.isRangeCurrent(ETAG, ETAG, LAST_MODIFIED));
+        assertFalse(ConditionalRequests.isRangeCurrent("\"other\"", ETAG, LAST_MODIFIED));
+    }
+
+    @Test
+    void testIfRangeWeakTagNeverMatches() {
+        assertFalse(ConditionalRequests.isRangeCurrent("W/" + ETAG, ETAG, LAST_MODIFIED));
+        assertFalse(ConditionalRequests.isRangeCurrent("W/" + ETAG, "W/" + ETAG, LAST_MODIFIED));
+    }
+
+    @Test
+    void testIfRangeDate() {
+        assertTrue(ConditionalRequests.isRangeCurrent(DATE, ETAG, LAST_MODIFIED));
+        assertFalse(ConditionalRequests.isRangeCurrent("Sun, 06 Nov 1994 08:49:38 GMT", ETAG, LAST_MODIFIED));
+        assertFalse(ConditionalRequests.isRangeCurrent("not a date", ETAG, LAST_MODIFIED));
+    }
+}
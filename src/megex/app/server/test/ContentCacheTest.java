@@ -0,0 +1,135 @@
+package megex.app.server.test;
+
+import megex.app.server.ContentCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ContentCacheTest {
+    private static final int FRAME_SIZE = 500;
+    private static final int DOCUMENT_SIZE = 1000;
+    // Two DATA frames and their headers
+    private static final int FRAMED_SIZE = DOCUMENT_SIZE + 2 * 9;
+    private static final int CAPACITY = 10;
+
+    @TempDir
+    Path root;
+    private ContentCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new ContentCache(CAPACITY * FRAMED_SIZE, DOCUMENT_SIZE, FRAME_SIZE);
+    }
+
+    private List<Path> documents(String prefix, int count) throws IOException {
+        List<Path> documents = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Path document = root.resolve(prefix + i);
+            Files.write(document, new byte[DOCUMENT_SIZE]);
+            documents.add(document);
+        }
+        return documents;
+    }
+
+    /**
+     * Requests a document the way the server does: a lookup, then a load on a miss.
+     *
+     * @return true if the document was served from the cache or admitted to it.
+     */
+    private boolean request(Path document) throws IOException {
+        return cache.get(document) != null || cache.load(document, DOCUMENT_SIZE) != null;
+    }
+
+    @Test
+    void testAdmitsWhileThereIsRoom() throws IOException {
+        for (Path document : documents("doc", CAPACITY)) {
+            assertTrue(request(document));
+        }
+        assertEquals(CAPACITY * FRAMED_SIZE, cache.size());
+        assertEquals(0, cache.getHits());
+        assertEquals(CAPACITY, cache.getMisses());
+    }
+
+    @Test
+    void testScanDoesNotEvictHotDocuments() throws IOException {
+        List<Path> hot = documents("hot", CAPACITY);
+        for (int round = 0; round < 15; round++) {
+            for (Path document : hot) {
+                request(document);
+            }
+        }
+        for (Path document : documents("scan", 10 * CAPACITY)) {
+            assertFalse(request(document), document + " was admitted");
+        }
+        for (Path document : hot) {
+            assertNotNull(cache.get(document), document + " was evicted");
+        }
+    }
+
+    @Test
+    void testFrequentDocumentEvictsLeastRecentlyUsed() throws IOException {
+        List<Path> cold = documents("cold", CAPACITY);
+        for (Path document : cold) {
+            request(document);
+        }
+        Path popular = documents("popular", 1).get(0);
+        // Turned away until it was requested more often than the document it would evict
+        assertFalse(request(popular));
+        assertTrue(request(popular));
+        assertNull(cache.get(cold.get(0)));
+        assertNotNull(cache.get(cold.get(1)));
+        assertEquals(CAPACITY * FRAMED_SIZE, cache.size());
+    }
+
+    @Test
+    void testInvalidateDropsDocuments() throws IOException {
+        List<Path> documents = documents("doc", 2);
+        for (Path document : documents) {
+            request(document);
+        }
+        cache.invalidate(documents.get(0));
+        assertNull(cache.get(documents.get(0)));
+        assertNotNull(cache.get(documents.get(1)));
+        cache.invalidate(null);
+        assertNull(cache.get(documents.get(1)));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void testLoadInvalidatedWhileReadingIsRejected() throws IOException {
+        ContentCache racingCache = new ContentCache(CAPACITY * FRAMED_SIZE, DOCUMENT_SIZE, FRAME_SIZE) {
+            @Override
+            protected FileChannel open(Path file) throws IOException {
+                // The file changes after the load checked admission and before it finished reading
+                invalidate(file);
+                return super.open(file);
+            }
+        };
+        Path document = documents("doc", 1).get(0);
+        assertNull(racingCache.get(document));
+        assertNull(racingCache.load(document, DOCUMENT_SIZE));
+        assertNull(racingCache.get(document));
+        assertEquals(0, racingCache.size());
+    }
+
+    @Test
+    void testDisabled() throws IOException {
+        ContentCache disabled = new ContentCache(0, DOCUMENT_SIZE, FRAME_SIZE);
+        Path document = documents("doc", 1).get(0);
+        assertNull(disabled.get(document));
+        assertNull(disabled.load(document, DOCUMENT_SIZE));
+    }
+}
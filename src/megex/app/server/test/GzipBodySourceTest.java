@@ -0,0 +1,102 @@
+package megex.app.server.test;
+
+import megex.app.server.GzipBodySource;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GzipBodySourceTest {
+    /**
+     * Text that compresses well, with random bytes mixed in so the output is not trivially small.
+     */
+    private static byte[] document(int size, long seed) {
+        Random random = new Random(seed);
+        byte[] line = "<p>The quick brown fox jumps over the lazy dog.</p>\n".getBytes(StandardCharsets.US_ASCII);
+        byte[] bytes = new byte[size];
+        for (int i = 0; i < size; i++) {
+            bytes[i] = random.nextInt(20) == 0 ? (byte) random.nextInt() : line[i % line.length];
+        }
+        return bytes;
+    }
+
+    /**
+     * Reads a source to its end the way a stream sender does, in pieces of the given size.
+     */
+    private static byte[] readAll(GzipBodySource source, int pieceSize) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        while (!source.isAtEnd()) {
+            ByteBuffer piece = source.read(pieceSize);
+            assertTrue(piece.remaining() <= pieceSize);
+            byte[] bytes = new byte[piece.remaining()];
+            piece.get(bytes);
+            compressed.write(bytes);
+        }
+        source.close();
+        return compressed.toByteArray();
+    }
+
+    private static byte[] gunzip(byte[] compressed) throws IOException {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            return in.readAllBytes();
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 1, 500, 16 * 1024, 100_000, 1_000_000})
+    void testRoundTrip(int size) throws IOException {
+        byte[] document = document(size, size);
+        GzipBodySource source = new GzipBodySource(new ByteArrayInputStream(document), 6, 0, compressed -> {
+            throw new AssertionError("nothing is collected");
+        });
+        assertArrayEquals(document, gunzip(readAll(source, 500)));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 7, 500, 64 * 1024})
+    void testRoundTripInAnyPieceSize(int pieceSize) throws IOException {
+        byte[] document = document(50_000, pieceSize);
+        GzipBodySource source = new GzipBodySource(new ByteArrayInputStream(document), 1, 0, compressed -> {
+        });
+        assertArrayEquals(document, gunzip(readAll(source, pieceSize)));
+    }
+
+    @Test
+    void testCollectsWholeBody() throws IOException {
+        byte[] document = document(100_000, 1);
+        AtomicReference<byte[]> collected = new AtomicReference<>();
+        GzipBodySource source = new GzipBodySource(new ByteArrayInputStream(document), 9, 1_000_000, collected::set);
+        byte[] sent = readAll(source, 500);
+        assertArrayEquals(sent, collected.get());
+        assertArrayEquals(document, gunzip(collected.get()));
+    }
+
+    @Test
+    void testDoesNotCollectLargeBody() throws IOException {
+        byte[] document = document(100_000, 1);
+        AtomicReference<byte[]> collected = new AtomicReference<>();
+        GzipBodySource source = new GzipBodySource(new ByteArrayInputStream(document), 9, 100, collected::set);
+        assertArrayEquals(document, gunzip(readAll(source, 500)));
+        assertNull(collected.get());
+    }
+
+    @Test
+    void testNotAtEndBeforeRead() {
+        GzipBodySource source = new GzipBodySource(new ByteArrayInputStream(new byte[0]), 6, 0, compressed -> {
+        });
+        assertFalse(source.isAtEnd());
+    }
+}
@@ -0,0 +1,83 @@
+package megex.app.server.test;
+
+import megex.app.server.Histogram;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HistogramTest {
+    // Sub-buckets split each power of two 32 ways
+    private static final double PRECISION = 1.0 / 32;
+
+    @Test
+    void testEmpty() {
+        Histogram histogram = new Histogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertArrayEquals(new long[] {0, 0}, histogram.getQuantiles(0.5, 0.99));
+    }
+
+    @Test
+    void testSmallValuesAreExact() {
+        Histogram histogram = new Histogram();
+        for (int value = 0; value < 32; value++) {
+            histogram.record(value);
+        }
+        assertEquals(0, histogram.getQuantile(0));
+        assertEquals(15, histogram.getQuantile(0.5));
+        assertEquals(31, histogram.getQuantile(1));
+        assertEquals(496, histogram.getSum());
+    }
+
+    @Test
+    void testNegativeCountsAsZero() {
+        Histogram histogram = new Histogram();
+        histogram.record(-5);
+        assertEquals(1, histogram.getCount());
+        assertEquals(0, histogram.getQuantile(1));
+    }
+
+    @ParameterizedTest
+    @ValueSource(longs = {33, 100, 1_000, 65_537, 1_000_000, 123_456_789, 1L << 40, Long.MAX_VALUE / 3, Long.MAX_VALUE})
+    void testSingleValueWithinPrecision(long value) {
+        Histogram histogram = new Histogram();
+        histogram.record(value);
+        histogram.record(value - 1);
+        // The second value shares the bucket or sits just below it, so both quantiles bound it
+        assertWithinPrecision(value - 1, histogram.getQuantile(0.5));
+        assertEquals(value, histogram.getQuantile(1));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 1_000, 1_000_000, 1_000_000_000})
+    void testQuantilesWithinPrecision(int scale) {
+        Random random = new Random(scale);
+        Histogram histogram = new Histogram();
+        long[] values = new long[10_000];
+        for (int i = 0; i < values.length; i++) {
+            // Spread over four orders of magnitude
+            values[i] = (long) (scale * Math.pow(10, 4 * random.nextDouble()));
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+        double[] quantiles = {0.01, 0.5, 0.9, 0.99, 0.999, 1};
+        long[] reported = histogram.getQuantiles(quantiles);
+        for (int i = 0; i < quantiles.length; i++) {
+            long expected = values[(int) Math.ceil(quantiles[i] * values.length) - 1];
+            assertWithinPrecision(expected, reported[i]);
+        }
+        assertEquals(values[values.length - 1], histogram.getMax());
+    }
+
+    private static void assertWithinPrecision(long expected, long actual) {
+        assertTrue(actual >= expected, actual + " is below " + expected);
+        assertTrue(actual - expected <= expected * PRECISION, actual + " is more than 3% above " + expected);
+    }
+}
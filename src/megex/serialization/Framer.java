@@ -10,6 +10,9 @@ package megex.serialization;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.Objects;
 
 /**
@@ -20,11 +23,16 @@ import java.util.Objects;
  * of the message and the message itself to the output stream. If the message length
  * is too large, the method throws an `IllegalArgumentException`. If the message is null
  * or empty, the method throws an `IllegalArgumentException`.
+ *
+ * A Framer is not safe for concurrent use; callers writing from several threads must serialise
+ * their frames.
  */
 public class Framer {
     // The output stream to write to
     private final OutputStream out;
     private final int MAX_LENGTH = 16384;
+    // The frame, or run of frames, being written to a plain output stream, reused across writes
+    private byte[] frameBuffer;
 
     /**
      * Constructs a new `Framer` instance that writes to the specified output stream.
@@ -63,6 +71,131 @@ public class Framer {
         out.flush();
     }
 
+    /**
+     * Writes a frame whose payload is held in a buffer, such as a slice of a memory-mapped file.
+     *
+     * If the output stream is also a WritableByteChannel, the payload buffer is handed to the
+     * channel as is; otherwise the frame is assembled in a buffer kept by the Framer and written
+     * with a single call. Either way no array is allocated per frame. The payload is consumed.
+     *
+     * @param header  the 6 byte frame header
+     * @param payload the frame payload, from its position to its limit
+     * @throws NullPointerException if the header or the payload is null
+     * @throws IllegalArgumentException if the header is not 6 bytes or the payload is too long
+     * @throws IOException if an I/O error occurs while writing to the output stream
+     */
+    public void putFrame(byte[] header, ByteBuffer payload) throws IOException {
+        Objects.requireNonNull(header, "Header is null");
+        Objects.requireNonNull(payload, "Payload is null");
+        if (header.length != 6) {
+            throw new IllegalArgumentException("Invalid header length: " + header.length);
+        }
+        int payloadLength = payload.remaining();
+        if (payloadLength > MAX_LENGTH) {
+            throw new IllegalArgumentException("Invalid message length: " + payloadLength);
+        }
+
+        if (out instanceof WritableByteChannel) {
+            writeMessageLength(payloadLength);
+            out.write(header);
+            WritableByteChannel channel = (WritableByteChannel) out;
+            while (payload.hasRemaining()) {
+                channel.write(payload);
+            }
+        } else {
+            ensureFrameBuffer(3 + 6 + MAX_LENGTH);
+            frameBuffer[0] = (byte) ((payloadLength >> 16) & 0xFF);
+            frameBuffer[1] = (byte) ((payloadLength >> 8) & 0xFF);
+            frameBuffer[2] = (byte) (payloadLength & 0xFF);
+            System.arraycopy(header, 0, frameBuffer, 3, 6);
+            payload.get(frameBuffer, 9, payloadLength);
+            out.write(frameBuffer, 0, 9 + payloadLength);
+        }
+        out.flush();
+    }
+
+    /**
+     * Writes a run of frames that were encoded ahead of time, each with its 3-byte length, setting
+     * the stream ID of every frame on the way out. The frames themselves are never modified, so
+     * one buffer of a response cached as encoded frames can be shared by any number of streams.
+     *
+     * If the output stream is also a GatheringByteChannel, the patched frame headers are written
+     * from a small buffer and the payloads are handed to the channel as slices of the frames,
+     * without copying; otherwise the run is assembled in a buffer kept by the Framer and written
+     * with a single call. The buffer is consumed.
+     *
+     * @param frames   the encoded frames, from the buffer's position to its limit
+     * @param streamID the stream ID to write into every frame
+     * @return the total payload length of the frames
+     * @throws NullPointerException if frames is null
+     * @throws IllegalArgumentException if the buffer does not hold whole frames of valid length
+     * @throws IOException if an I/O error occurs while writing to the output stream
+     */
+    public int putFrames(ByteBuffer frames, int streamID) throws IOException {
+        Objects.requireNonNull(frames, "Frames are null");
+        int start = frames.position();
+        int size = frames.remaining();
+        int frameCount = 0;
+        for (int offset = 0; offset < size; frameCount++) {
+            if (size - offset < 9) {
+                throw new IllegalArgumentException("Truncated frame at " + offset);
+            }
+            int length = lengthAt(frames, start + offset);
+            if (length > MAX_LENGTH || offset + 9 + length > size) {
+                throw new IllegalArgumentException("Invalid message length: " + length);
+            }
+            offset += 9 + length;
+        }
+
+        // A queueing channel keeps the headers, so they cannot be reused
+        ByteBuffer headers = ByteBuffer.allocate(9 * frameCount);
+        ByteBuffer[] parts = new ByteBuffer[2 * frameCount];
+        int id = streamID & 0x7fffffff;
+        int payloadLength = 0;
+        for (int i = 0, offset = start; i < frameCount; i++) {
+            int length = lengthAt(frames, offset);
+            // Length, type and flags as encoded, then the stream ID
+            for (int j = 0; j < 5; j++) {
+                headers.put(frames.get(offset + j));
+            }
+            headers.putInt(id);
+            parts[2 * i] = headers.slice(9 * i, 9);
+            parts[2 * i + 1] = frames.slice(offset + 9, length);
+            payloadLength += length;
+            offset += 9 + length;
+        }
+        frames.position(frames.limit());
+
+        if (out instanceof GatheringByteChannel) {
+            GatheringByteChannel channel = (GatheringByteChannel) out;
+            for (long written = 0; written < size; ) {
+                written += channel.write(parts);
+            }
+        } else {
+            byte[] run = ensureFrameBuffer(size);
+            int position = 0;
+            for (ByteBuffer part : parts) {
+                int length = part.remaining();
+                part.get(run, position, length);
+                position += length;
+            }
+            out.write(run, 0, size);
+        }
+        out.flush();
+        return payloadLength;
+    }
+
+    private static int lengthAt(ByteBuffer frames, int index) {
+        return (frames.get(index) & 0xFF) << 16 | (frames.get(index + 1) & 0xFF) << 8 | (frames.get(index + 2) & 0xFF);
+    }
+
+    private byte[] ensureFrameBuffer(int size) {
+        if (frameBuffer == null || frameBuffer.length < size) {
+            frameBuffer = new byte[Math.max(size, 3 + 6 + MAX_LENGTH)];
+        }
+        return frameBuffer;
+    }
+
     /**
      * Writes the length of the message to the output stream as a 3-byte big-endian integer.
      *
@@ -0,0 +1,194 @@
+/************************************************
+ *
+ * Author: Abanisenioluwa K. Orojo
+ * Assignment: Program 2
+ * Class: CSI 5325
+ *
+ ************************************************/
+package megex.serialization;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Table-driven validation and case folding of header field names and values.
+ *
+ * Names may only contain visible ASCII characters other than ';' and values may only contain
+ * printable ASCII characters. Strings are checked one character at a time against a lookup
+ * table. Decoded byte arrays are checked and lowercased eight bytes per step by treating them
+ * as longs (SIMD within a register), with the table handling the remaining bytes.
+ */
+final class HeaderChars {
+    private static final byte NAME = 0x1;
+    private static final byte VALUE = 0x2;
+    private static final byte UPPER = 0x4;
+    private static final byte[] CLASSES = new byte[128];
+
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    static {
+        for (int c = ' '; c <= '~'; c++) {
+            CLASSES[c] |= VALUE;
+        }
+        for (int c = '!'; c <= '~'; c++) {
+            if (c != ';') {
+                CLASSES[c] |= NAME;
+            }
+        }
+        for (int c = 'A'; c <= 'Z'; c++) {
+            CLASSES[c] |= UPPER;
+        }
+    }
+
+    private HeaderChars() {
+    }
+
+    /**
+     * Validates a header field name and folds it to lowercase.
+     * The first character must not be uppercase.
+     *
+     * @param name The header field name.
+     * @return The lowercase name, or null if the name is invalid.
+     */
+    static String toValidName(String name) {
+        if (name == null || name.isEmpty() || is(name.charAt(0), UPPER)) {
+            return null;
+        }
+        boolean upper = false;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (!is(c, NAME)) {
+                return null;
+            }
+            upper |= is(c, UPPER);
+        }
+        if (!upper) {
+            return name;
+        }
+        char[] chars = name.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            if (is(chars[i], UPPER)) {
+                chars[i] |= 0x20;
+            }
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Returns whether a string is a valid header field value.
+     *
+     * @param value The header field value.
+     * @return true if the value is non-empty and printable ASCII.
+     */
+    static boolean isValidValue(String value) {
+        if (value == null || value.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (!is(value.charAt(i), VALUE)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Validates a decoded header field name and folds it to lowercase.
+     * The array is not modified.
+     *
+     * @param name The decoded header field name.
+     * @return The lowercase name, or null if the name is invalid.
+     */
+    static String decodeName(byte[] name) {
+        int length = name.length;
+        if (length == 0) {
+            return null;
+        }
+        byte[] lower = name;
+        int i = 0;
+        for (; i + 8 <= length; i += 8) {
+            long x = (long) LONGS.get(name, i);
+            if (hasLess(x, 0x21) || hasMore(x, 0x7e) || hasValue(x, ';')) {
+                return null;
+            }
+            long upper = upperMask(x);
+            if (upper != 0) {
+                if (lower == name) {
+                    lower = name.clone();
+                }
+                LONGS.set(lower, i, x | (upper >>> 2));
+            }
+        }
+        for (; i < length; i++) {
+            int c = name[i];
+            if (c < 0 || !is(c, NAME)) {
+                return null;
+            }
+            if (is(c, UPPER)) {
+                if (lower == name) {
+                    lower = name.clone();
+                }
+                lower[i] = (byte) (c | 0x20);
+            }
+        }
+        return new String(lower, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Validates a decoded header field value.
+     *
+     * @param value The decoded header field value.
+     * @return The value, or null if it is empty or not printable ASCII.
+     */
+    static String decodeValue(byte[] value) {
+        int length = value.length;
+        if (length == 0) {
+            return null;
+        }
+        int i = 0;
+        for (; i + 8 <= length; i += 8) {
+            long x = (long) LONGS.get(value, i);
+            if (hasLess(x, 0x20) || hasMore(x, 0x7e)) {
+                return null;
+            }
+        }
+        for (; i < length; i++) {
+            int c = value[i];
+            if (c < 0 || !is(c, VALUE)) {
+                return null;
+            }
+        }
+        return new String(value, StandardCharsets.ISO_8859_1);
+    }
+
+    private static boolean is(int c, byte charClass) {
+        return c < CLASSES.length && (CLASSES[c] & charClass) != 0;
+    }
+
+    // true if any byte of x is less than n (n <= 128)
+    private static boolean hasLess(long x, int n) {
+        return ((x - ONES * n) & ~x & HIGH_BITS) != 0;
+    }
+
+    // true if any byte of x is greater than n (n <= 127)
+    private static boolean hasMore(long x, int n) {
+        return (((x + ONES * (127 - n)) | x) & HIGH_BITS) != 0;
+    }
+
+    // true if any byte of x equals n
+    private static boolean hasValue(long x, int n) {
+        long v = x ^ (ONES * n);
+        return ((v - ONES) & ~v & HIGH_BITS) != 0;
+    }
+
+    // high bit set in every byte of x that is in 'A'..'Z'; all bytes of x must be below 0x80
+    private static long upperMask(long x) {
+        long atLeastA = x + ONES * (0x80 - 'A');
+        long aboveZ = x + ONES * (0x80 - 'Z' - 1);
+        return atLeastA & ~aboveZ & HIGH_BITS;
+    }
+}
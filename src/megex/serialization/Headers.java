@@ -69,20 +69,28 @@ public class Headers extends Message {
      * @throws BadAttributeException if the name or value is invalid.
      */
     public void addValue(String name, String value) throws BadAttributeException {
-        if (name == null || name.isEmpty() || !name.matches("^[^A-Z][ -~]*$") || name.contains(";") || name.contains(" ")) {
+        String lowerName = HeaderChars.toValidName(name);
+        if (lowerName == null) {
             throw new BadAttributeException("Invalid header field name: " + name, "name");
         }
 
-        if (getNames().contains(name)){
-            headers.remove(name);
-        }
-
-        if (value == null || value.isEmpty() || !value.matches("^[ -~]*$")) {
+        if (!HeaderChars.isValidValue(value)) {
             throw new BadAttributeException("Invalid header field value: " + value, "value");
         }
 
+        putValue(lowerName, value);
+    }
 
-        headers.put(name.toLowerCase(), value);
+    /**
+     * Adds an already validated, lowercase name-value pair to the header block.
+     * A rewritten name moves to the end of the block.
+     *
+     * @param name  The header field name.
+     * @param value The header field value.
+     */
+    void putValue(String name, String value) {
+        headers.remove(name);
+        headers.put(name, value);
     }
 
     /**
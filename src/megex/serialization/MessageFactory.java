@@ -14,6 +14,7 @@ import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 
+import com.twitter.hpack.AdaptiveIndexingPolicy;
 import com.twitter.hpack.Encoder;
 import com.twitter.hpack.Decoder;
 
@@ -25,18 +26,169 @@ import com.twitter.hpack.HeaderListener;
  This class represents a factory for creating different types of messages.
  It provides methods to create various types of messages, such as data, headers, settings, and window update messages.
  It also uses a MessageDecoder to decode the incoming byte message into a message object.
+ A MessageFactory holds the HPACK state of one connection and is not thread-safe: header blocks
+ must be encoded in the order their frames are written.
  */
 public class MessageFactory {
     private static final Charset CHARENC = StandardCharsets.US_ASCII;
     private static final int MAXHEADERSZ = 1024;
-    private static final int MAXHEADERTBLSZ = 1024;
+    /**
+     * The dynamic table size both peers assume before SETTINGS_HEADER_TABLE_SIZE is exchanged.
+     */
+    public static final int MAXHEADERTBLSZ = 1024;
 
     private final Decoder decoder;
     private final Encoder encoder;
 
+    // dynamic table size limit of this side (advertised to the peer) and of the peer
+    private int headerTableSize;
+    // decoder table size the peer has acknowledged, and sizes advertised since, oldest first
+    private int acknowledgedTableSize = MAXHEADERTBLSZ;
+    private final Deque<Integer> unacknowledgedTableSizes = new ArrayDeque<>();
+    private int peerHeaderTableSize = MAXHEADERTBLSZ;
+    // encoder table size changes not yet signalled in a header block, -1 if none
+    private int pendingMinTableSize = -1;
+    private int pendingTableSize = -1;
+
     public MessageFactory() {
-        this.decoder = new Decoder(MAXHEADERSZ, MAXHEADERTBLSZ);
-        this.encoder = new Encoder(MAXHEADERTBLSZ);
+        this(MAXHEADERSZ, MAXHEADERTBLSZ);
+    }
+
+    /**
+     * Creates a MessageFactory with the given HPACK limits.
+     *
+     * Both dynamic tables start at {@link #MAXHEADERTBLSZ}, the size peers assume before SETTINGS are exchanged.
+     * The decoder moves to headerTableSize once it is advertised to the peer with SETTINGS_HEADER_TABLE_SIZE
+     * (see {@link #setHeaderTableSize(int)}), and the encoder uses the smaller of headerTableSize and the peer's setting.
+     *
+     * @param maxHeaderSize   The maximum size of a decoded header list.
+     * @param headerTableSize The maximum size of each dynamic table.
+     */
+    public MessageFactory(int maxHeaderSize, int headerTableSize) {
+        this(maxHeaderSize, headerTableSize, false);
+    }
+
+    /**
+     * Creates a MessageFactory with the given HPACK limits and dynamic table storage.
+     *
+     * @param maxHeaderSize   The maximum size of a decoded header list.
+     * @param headerTableSize The maximum size of each dynamic table.
+     * @param compactTables   Whether the dynamic tables pack their entries into a single byte array,
+     *                        which costs a copy per table lookup but keeps a handful of objects per table.
+     */
+    public MessageFactory(int maxHeaderSize, int headerTableSize, boolean compactTables) {
+        if (maxHeaderSize <= 0 || headerTableSize < 0) {
+            throw new IllegalArgumentException("Invalid header limits: " + maxHeaderSize + "/" + headerTableSize);
+        }
+        this.decoder = new Decoder(maxHeaderSize, MAXHEADERTBLSZ, compactTables);
+        this.encoder = new Encoder(MAXHEADERTBLSZ, new AdaptiveIndexingPolicy(), compactTables);
+        this.headerTableSize = MAXHEADERTBLSZ;
+        setHeaderTableSize(headerTableSize);
+    }
+
+    /**
+     * Returns the dynamic table size limit of this side, the value to advertise in SETTINGS_HEADER_TABLE_SIZE.
+     *
+     * @return The dynamic table size limit.
+     */
+    public int getHeaderTableSize() {
+        return headerTableSize;
+    }
+
+    /**
+     * Sets the dynamic table size limit of this side.
+     *
+     * The new limit takes effect in the decoder once it has been advertised in an encoded SETTINGS message:
+     * a larger size at once, a smaller one only when the peer acknowledges those SETTINGS, as header blocks
+     * it encoded before may still use the old size (RFC 7541 section 4.2). The encoder signals the change
+     * at the start of the next encoded header block.
+     *
+     * @param headerTableSize The new dynamic table size limit.
+     */
+    public void setHeaderTableSize(int headerTableSize) {
+        if (headerTableSize < 0) {
+            throw new IllegalArgumentException("Invalid header table size: " + headerTableSize);
+        }
+        this.headerTableSize = headerTableSize;
+        updateEncoderTableSize();
+    }
+
+    /**
+     * Applies the oldest SETTINGS message the peer has not acknowledged yet, letting the decoder enforce
+     * the dynamic table size it advertised.
+     */
+    public void settingsAcknowledged() {
+        Integer acknowledged = unacknowledgedTableSizes.poll();
+        if (acknowledged != null) {
+            acknowledgedTableSize = acknowledged;
+            updateDecoderTableSize();
+        }
+    }
+
+    /**
+     * Applies the peer's SETTINGS_HEADER_TABLE_SIZE, which bounds the encoder's dynamic table.
+     *
+     * @param peerHeaderTableSize The dynamic table size the peer's decoder allows.
+     */
+    public void setPeerHeaderTableSize(int peerHeaderTableSize) {
+        if (peerHeaderTableSize < 0) {
+            throw new IllegalArgumentException("Invalid header table size: " + peerHeaderTableSize);
+        }
+        this.peerHeaderTableSize = peerHeaderTableSize;
+        updateEncoderTableSize();
+    }
+
+    /**
+     * Returns the sum of the capacities of the encoder and decoder dynamic tables.
+     *
+     * @return The HPACK dynamic table memory this factory may hold, in bytes.
+     */
+    public int getHeaderTableMemory() {
+        int encoderSize = pendingTableSize >= 0 ? pendingTableSize : encoder.getMaxHeaderTableSize();
+        return encoderSize + decoder.getMaxHeaderTableSize();
+    }
+
+    /**
+     * Notes a SETTINGS_HEADER_TABLE_SIZE sent to the peer, which stays unacknowledged until the peer's ACK.
+     */
+    private void advertiseHeaderTableSize(int size) {
+        unacknowledgedTableSizes.add(size);
+        updateDecoderTableSize();
+    }
+
+    /**
+     * Sets the decoder limit to the largest size the peer may still be encoding for.
+     */
+    private void updateDecoderTableSize() {
+        int size = acknowledgedTableSize;
+        for (int unacknowledged : unacknowledgedTableSizes) {
+            size = Math.max(size, unacknowledged);
+        }
+        decoder.setMaxHeaderTableSize(size);
+    }
+
+    private void updateEncoderTableSize() {
+        int size = Math.min(headerTableSize, peerHeaderTableSize);
+        if (pendingTableSize < 0 && size == encoder.getMaxHeaderTableSize()) {
+            return;
+        }
+        // RFC 7541 section 4.2: signal the smallest size reached between two header blocks, then the final one
+        int current = pendingTableSize < 0 ? encoder.getMaxHeaderTableSize() : pendingMinTableSize;
+        pendingMinTableSize = Math.min(current, size);
+        pendingTableSize = size;
+    }
+
+    /**
+     * Writes the pending dynamic table size updates, which must start the next header block.
+     */
+    private void writeTableSizeUpdates(OutputStream out) throws IOException {
+        if (pendingTableSize < 0) {
+            return;
+        }
+        encoder.setMaxHeaderTableSize(out, pendingMinTableSize);
+        encoder.setMaxHeaderTableSize(out, pendingTableSize);
+        pendingMinTableSize = -1;
+        pendingTableSize = -1;
     }
 
     /**
@@ -106,12 +258,15 @@ public class MessageFactory {
                 Headers headersMsg = new Headers(streamID, endStream);
                 try {
                     decoder.decode(in, (name, value, sensitive) -> {
-                        try {
-                            String decodedName = b2s(name).toLowerCase(); // Ensure the name is in lowercase
-                            headersMsg.addValue(decodedName, b2s(value));
-                        } catch (BadAttributeException e) {
-                            throw new WrapperException(e);
+                        String decodedName = HeaderChars.decodeName(name); // Ensure the name is in lowercase
+                        if (decodedName == null) {
+                            throw new WrapperException(new BadAttributeException("Invalid header field name: " + b2s(name), "name"));
+                        }
+                        String decodedValue = HeaderChars.decodeValue(value);
+                        if (decodedValue == null) {
+                            throw new WrapperException(new BadAttributeException("Invalid header field value: " + b2s(value), "value"));
                         }
+                        headersMsg.putValue(decodedName, decodedValue);
                     });
                     decoder.endHeaderBlock();
                 } catch (WrapperException e) {
@@ -127,7 +282,7 @@ public class MessageFactory {
             }
             case 0x4 -> { // SETTINGS
                 if (streamID == 0) {
-                    message = new Settings();
+                    message = getSettings(payload, (flags & 0x1) != 0);
                 } else {
                     throw new BadAttributeException("Invalid Flag", "message");
                 }
@@ -213,7 +368,9 @@ public class MessageFactory {
                 header[1] |= 0x4; // set the required flag (0x4) for HEADERS frame
                 break;
             case 0x4: // SETTINGS
-                header[1] |= 0x1; // set the flags field to Ox1
+                if (((Settings) msg).isAck()) {
+                    header[1] |= 0x1; // set the ACK flag (0x1)
+                }
                 break;
             case 0x8: // WINDOW_UPDATE
             // no flags for WINDOW_UPDATE
@@ -240,6 +397,70 @@ public class MessageFactory {
         return result;
     }
 
+    /**
+     * Encodes a HEADERS frame around an already encoded header block.
+     *
+     * The block must not reference the dynamic table (see {@link Encoder#encodeStaticHeader}),
+     * which lets callers cache blocks for common responses and skip header validation and HPACK
+     * encoding for every frame. Pending dynamic table size updates are prepended to the block.
+     *
+     * @param streamID    The stream ID of the frame.
+     * @param end         The value of the END_STREAM flag.
+     * @param headerBlock The encoded header block.
+     * @return The encoded byte array.
+     * @throws BadAttributeException if the stream ID is zero or negative.
+     */
+    public byte[] encodeHeaders(int streamID, boolean end, byte[] headerBlock) throws BadAttributeException {
+        Objects.requireNonNull(headerBlock, "Header block cannot be null");
+        if (streamID <= 0) {
+            throw new BadAttributeException("Stream ID must be non-negative and non-zero", "streamID");
+        }
+
+        if (pendingTableSize >= 0) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(8 + headerBlock.length);
+            try {
+                writeTableSizeUpdates(out);
+            } catch (IOException e) {
+                throw new BadAttributeException("IO Exception: " + e.getMessage(), "header");
+            }
+            out.writeBytes(headerBlock);
+            headerBlock = out.toByteArray();
+        }
+
+        byte[] result = new byte[6 + headerBlock.length];
+        result[0] = 0x1;
+        if (end) {
+            setEndStreamFlag(result);
+        }
+        result[1] |= 0x4; // set the required flag (0x4) for HEADERS frame
+        setStreamID(result, streamID);
+        System.arraycopy(headerBlock, 0, result, 6, headerBlock.length);
+        return result;
+    }
+
+    /**
+     * Encodes the header of a DATA frame, for callers that write the payload from a buffer of
+     * their own (see {@link Framer#putFrame(byte[], ByteBuffer)}).
+     *
+     * @param streamID The stream ID of the frame.
+     * @param end      The value of the END_STREAM flag.
+     * @return The 6 byte frame header.
+     * @throws BadAttributeException if the stream ID is zero or negative.
+     */
+    public byte[] encodeDataHeader(int streamID, boolean end) throws BadAttributeException {
+        if (streamID <= 0) {
+            throw new BadAttributeException("Stream ID must be non-negative and non-zero", "streamID");
+        }
+
+        byte[] header = new byte[6];
+        header[0] = 0x0;
+        if (end) {
+            setEndStreamFlag(header);
+        }
+        setStreamID(header, streamID);
+        return header;
+    }
+
     /**
 
      Returns the payload of the message as a byte array.
@@ -255,20 +476,28 @@ public class MessageFactory {
             int reservedBitMask = 0x7fffffff;
             int payloadInt = (((Window_Update) msg).getIncrement() & reservedBitMask);
             payload = getIncrementBytes(payloadInt);
+        } else if (msg instanceof Settings) {
+            Settings settings = (Settings) msg;
+            payload = getSettingsBytes(settings);
+            Long advertisedTableSize = settings.getSetting(Settings.HEADER_TABLE_SIZE);
+            if (advertisedTableSize != null) {
+                advertiseHeaderTableSize((int) Math.min(advertisedTableSize, Integer.MAX_VALUE));
+            }
         } else if (msg instanceof Headers) {
             Headers headers = (Headers) msg;
 
             // encode header list into header block
             ByteArrayOutputStream out = new ByteArrayOutputStream();
 
-            Set<String> names = headers.getNames();
-            for (String name : names) {
-                String value = headers.getValue(name);
-                try {
+            try {
+                writeTableSizeUpdates(out);
+                Set<String> names = headers.getNames();
+                for (String name : names) {
+                    String value = headers.getValue(name);
                     encoder.encodeHeader(out, s2b(name), s2b(value), false);
-                } catch (IOException e) {
-                    throw new BadAttributeException("IO Exception: " + e.getMessage(), "header");
                 }
+            } catch (IOException e) {
+                throw new BadAttributeException("IO Exception: " + e.getMessage(), "header");
             }
 
             payload = out.toByteArray();
@@ -297,10 +526,21 @@ public class MessageFactory {
      */
     private void setStreamID(byte[] header, int streamID) {
         // Set the R bit to 0
-        header[2] = (byte) ((streamID >>> 24) & 0x7f);
-        header[3] = (byte) (streamID >>> 16);
-        header[4] = (byte) (streamID >>> 8);
-        header[5] = (byte) (streamID);
+        setInt(header, 2, streamID & 0x7fffffff);
+    }
+
+    /**
+     * Writes a 4-byte big-endian integer.
+     *
+     * @param bytes  The array to write to.
+     * @param offset The offset of the first byte.
+     * @param value  The value to write.
+     */
+    private static void setInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) (value);
     }
 
 
@@ -329,6 +569,53 @@ public class MessageFactory {
     }
 
 
+    /**
+     * Returns the parameters of a SETTINGS message as a byte array of 6-byte identifier/value pairs.
+     *
+     * @param settings The SETTINGS message.
+     * @return The parameters as a byte array.
+     */
+    private byte[] getSettingsBytes(Settings settings) {
+        Set<Integer> ids = settings.getSettingIds();
+        byte[] payload = new byte[ids.size() * 6];
+        int offset = 0;
+        for (int id : ids) {
+            long value = settings.getSetting(id);
+            payload[offset] = (byte) (id >>> 8);
+            payload[offset + 1] = (byte) id;
+            setInt(payload, offset + 2, (int) value);
+            offset += 6;
+        }
+        return payload;
+    }
+
+    /**
+     * Creates a SETTINGS message from the 6-byte identifier/value pairs of its payload.
+     *
+     * @param payload The payload of the SETTINGS message.
+     * @param isAck   The value of the ACK flag.
+     * @return The SETTINGS message.
+     * @throws BadAttributeException if the payload is not a sequence of parameters, a value is invalid
+     * or an acknowledgement carries parameters.
+     */
+    private Settings getSettings(byte[] payload, boolean isAck) throws BadAttributeException {
+        if (payload.length % 6 != 0 || (isAck && payload.length > 0)) {
+            throw new BadAttributeException("Invalid settings length", "payload");
+        }
+        Settings settings = new Settings(isAck);
+        for (int offset = 0; offset < payload.length; offset += 6) {
+            int id = ((payload[offset] & 0xff) << 8) | (payload[offset + 1] & 0xff);
+            if (id < Settings.HEADER_TABLE_SIZE || id > Settings.MAX_HEADER_LIST_SIZE) {
+                // Unknown parameters are ignored
+                continue;
+            }
+            long value = ((payload[offset + 2] & 0xffL) << 24) | ((payload[offset + 3] & 0xff) << 16) |
+                    ((payload[offset + 4] & 0xff) << 8) | (payload[offset + 5] & 0xff);
+            settings.addSetting(id, value);
+        }
+        return settings;
+    }
+
     /**
      * Extracts the stream ID value from the header of a message.
      *
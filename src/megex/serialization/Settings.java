@@ -8,24 +8,89 @@
 
 package megex.serialization;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 
 /**
 
  The Settings class represents an HTTP/2 SETTINGS message.
  This class extends the Message class and overrides the toString() method to return a string representation of the object.
+ A Settings message carries zero or more identifier/value parameters, or, as an acknowledgement of
+ the peer's parameters, none at all.
  */
 
 public class Settings extends Message {
     private static final int CODECONSTANT = 0x4;
 
+    /**
+     * SETTINGS_HEADER_TABLE_SIZE: the maximum size of the sender's HPACK decoder dynamic table.
+     */
+    public static final int HEADER_TABLE_SIZE = 0x1;
+
+    /**
+     * SETTINGS_ENABLE_PUSH: whether the sender accepts server push, 0 or 1.
+     */
+    public static final int ENABLE_PUSH = 0x2;
+
+    /**
+     * SETTINGS_MAX_CONCURRENT_STREAMS: the maximum number of streams the sender allows the peer
+     * to have open at once.
+     */
+    public static final int MAX_CONCURRENT_STREAMS = 0x3;
+
+    /**
+     * SETTINGS_INITIAL_WINDOW_SIZE: the sender's initial flow control window for stream-level data.
+     */
+    public static final int INITIAL_WINDOW_SIZE = 0x4;
+
+    /**
+     * SETTINGS_MAX_FRAME_SIZE: the largest frame payload the sender accepts.
+     */
+    public static final int MAX_FRAME_SIZE = 0x5;
+
+    /**
+     * SETTINGS_MAX_HEADER_LIST_SIZE: the largest header list the sender accepts.
+     */
+    public static final int MAX_HEADER_LIST_SIZE = 0x6;
+
+    /**
+     * The largest value of a parameter, which is an unsigned 32-bit integer.
+     */
+    public static final long MAX_VALUE = 0xffffffffL;
+
+    private final Map<Integer, Long> settings = new LinkedHashMap<>();
+    private final boolean isAck;
+
     /**
      * Constructor for creating a new Settings instance.
      *
      * @throws BadAttributeException if there is an error with the message attributes.
      */
     public Settings() throws BadAttributeException {
+        this(false);
+    }
+
+    /**
+     * Constructor for creating a new Settings instance that may acknowledge the peer's parameters.
+     *
+     * @param isAck true if the message acknowledges the peer's parameters, which it must not carry
+     *              any of its own.
+     * @throws BadAttributeException if there is an error with the message attributes.
+     */
+    public Settings(boolean isAck) throws BadAttributeException {
+        this.isAck = isAck;
+    }
 
+    /**
+     * Returns whether the message acknowledges the peer's parameters.
+     *
+     * @return true if the ACK flag is set.
+     */
+    public boolean isAck() {
+        return isAck;
     }
 
     /**
@@ -36,7 +101,73 @@ public class Settings extends Message {
      */
     @Override
     public String toString() {
-        return "Settings: StreamID=" + getStreamID();
+        if (isAck) {
+            return "Settings: StreamID=" + getStreamID() + " ACK";
+        }
+        if (settings.isEmpty()) {
+            return "Settings: StreamID=" + getStreamID();
+        }
+        StringBuilder sb = new StringBuilder("Settings: StreamID=").append(getStreamID()).append(" (");
+        for (Map.Entry<Integer, Long> setting : settings.entrySet()) {
+            sb.append("[").append(setting.getKey()).append("=").append(setting.getValue()).append("]");
+        }
+        return sb.append(")").toString();
+    }
+
+    /**
+     * Adds a parameter to the message, replacing any previous value for the identifier.
+     *
+     * @param id    The identifier of the parameter.
+     * @param value The value of the parameter.
+     * @throws BadAttributeException if the message is an acknowledgement, the identifier does not fit
+     * in 16 bits, or the value does not fit in 32 unsigned bits or is out of range for the parameter.
+     */
+    public void addSetting(int id, long value) throws BadAttributeException {
+        if (isAck) {
+            throw new BadAttributeException("Settings acknowledgement carries parameters", "ack");
+        }
+        if (id < 0 || id > 0xffff) {
+            throw new BadAttributeException("Invalid setting identifier: " + id, "id");
+        }
+        if (value < 0 || value > maxValueOf(id) || (id == MAX_FRAME_SIZE && value < 16384)) {
+            throw new BadAttributeException("Invalid setting value: " + value, "value");
+        }
+        settings.put(id, value);
+    }
+
+    /**
+     * Returns the largest value the parameter with the given identifier may take.
+     */
+    private static long maxValueOf(int id) {
+        switch (id) {
+            case ENABLE_PUSH:
+                return 1;
+            case INITIAL_WINDOW_SIZE:
+                return Integer.MAX_VALUE;
+            case MAX_FRAME_SIZE:
+                return (1 << 24) - 1;
+            default:
+                return MAX_VALUE;
+        }
+    }
+
+    /**
+     * Returns the value of the parameter with the given identifier, or null if it is not present.
+     *
+     * @param id The identifier of the parameter.
+     * @return The value of the parameter, or null if not present.
+     */
+    public Long getSetting(int id) {
+        return settings.get(id);
+    }
+
+    /**
+     * Returns the identifiers of all parameters in the message, in the order they were added.
+     *
+     * @return The parameter identifiers.
+     */
+    public Set<Integer> getSettingIds() {
+        return Collections.unmodifiableSet(settings.keySet());
     }
 
     /**
@@ -54,7 +185,8 @@ public class Settings extends Message {
             return false;
         }
         Settings settings = (Settings) obj;
-        return code == settings.code && getStreamID() == settings.getStreamID();
+        return code == settings.code && getStreamID() == settings.getStreamID() && isAck == settings.isAck
+                && this.settings.equals(settings.settings);
     }
 
     /**
@@ -64,7 +196,7 @@ public class Settings extends Message {
      */
     @Override
     public int hashCode() {
-        return Objects.hash(code, getStreamID());
+        return Objects.hash(code, getStreamID(), isAck, settings);
     }
 
     /**
@@ -7,7 +7,11 @@ import org.junit.jupiter.api.Test;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -219,4 +223,122 @@ class FramerTest {
         assertArrayEquals(expectedBytes, outputStreamBytes);
     }
 
+    @Test
+    void putFrame_headerAndDirectPayload_writesToOutputStream() throws IOException {
+        byte[] header = {0, 1, 0, 0, 0, 3};
+        ByteBuffer payload = ByteBuffer.allocateDirect(8).put(new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+        payload.position(2).limit(5); // Only bytes 3, 4, 5
+
+        framer.putFrame(header, payload);
+
+        byte[] outputStreamBytes = ((ByteArrayOutputStream) outputStream).toByteArray();
+        byte[] expectedBytes = {0, 0, 3, 0, 1, 0, 0, 0, 3, 3, 4, 5};
+
+        assertArrayEquals(expectedBytes, outputStreamBytes);
+        assertFalse(payload.hasRemaining());
+    }
+
+    @Test
+    void putFrames_encodedFrames_setsStreamIdOfEveryFrame() throws IOException {
+        ByteBuffer frames = ByteBuffer.wrap(new byte[] {
+                0, 0, 2, 0, 0, 0, 0, 0, 0, 65, 66,
+                0, 0, 1, 0, 1, 0, 0, 0, 0, 67});
+
+        int payloadLength = framer.putFrames(frames, 7);
+
+        byte[] outputStreamBytes = ((ByteArrayOutputStream) outputStream).toByteArray();
+        byte[] expectedBytes = {
+                0, 0, 2, 0, 0, 0, 0, 0, 7, 65, 66,
+                0, 0, 1, 0, 1, 0, 0, 0, 7, 67};
+
+        assertEquals(3, payloadLength);
+        assertArrayEquals(expectedBytes, outputStreamBytes);
+        assertFalse(frames.hasRemaining());
+        assertEquals(0, frames.get(8), "the encoded frames were modified");
+    }
+
+    @Test
+    void putFrames_gatheringChannel_writesPayloadsWithoutCopying() throws IOException {
+        ByteBuffer frames = ByteBuffer.allocateDirect(21).put(new byte[] {
+                0, 0, 2, 0, 0, 0, 0, 0, 0, 65, 66,
+                0, 0, 1, 0, 1, 0, 0, 0, 0, 67}).flip().asReadOnlyBuffer();
+        List<ByteBuffer> written = new ArrayList<>();
+        OutputStream channel = new GatheringOutputStream(written);
+
+        int payloadLength = new Framer(channel).putFrames(frames, 7);
+
+        assertEquals(3, payloadLength);
+        assertEquals(4, written.size());
+        assertArrayEquals(new byte[] {0, 0, 2, 0, 0, 0, 0, 0, 7}, bytes(written.get(0)));
+        assertArrayEquals(new byte[] {65, 66}, bytes(written.get(1)));
+        assertArrayEquals(new byte[] {0, 0, 1, 0, 1, 0, 0, 0, 7}, bytes(written.get(2)));
+        assertArrayEquals(new byte[] {67}, bytes(written.get(3)));
+        assertTrue(written.get(1).isDirect() && written.get(3).isDirect(), "a payload was copied");
+        assertFalse(frames.hasRemaining());
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Keeps the buffers it is given, the way a queueing channel does.
+     */
+    private static final class GatheringOutputStream extends OutputStream implements GatheringByteChannel {
+        private final List<ByteBuffer> written;
+
+        private GatheringOutputStream(List<ByteBuffer> written) {
+            this.written = written;
+        }
+
+        @Override
+        public void write(int b) {
+            throw new UnsupportedOperationException("Frames must be gathered");
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            return (int) write(new ByteBuffer[] {src}, 0, 1);
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) {
+            long count = 0;
+            for (int i = offset; i < offset + length; i++) {
+                count += srcs[i].remaining();
+                written.add(srcs[i].slice());
+                srcs[i].position(srcs[i].limit());
+            }
+            return count;
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs) {
+            return write(srcs, 0, srcs.length);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+    }
+
+    @Test
+    void putFrames_truncatedFrame_throwsIllegalArgumentException() {
+        ByteBuffer frames = ByteBuffer.wrap(new byte[] {0, 0, 2, 0, 0, 0, 0, 0, 0, 65});
+        assertThrows(IllegalArgumentException.class, () -> framer.putFrames(frames, 1));
+    }
+
+    @Test
+    void putFrame_badHeaderLength_throwsIllegalArgumentException() {
+        assertThrows(IllegalArgumentException.class, () -> framer.putFrame(new byte[5], ByteBuffer.allocate(1)));
+    }
+
+    @Test
+    void putFrame_tooLongPayload_throwsIllegalArgumentException() {
+        assertThrows(IllegalArgumentException.class, () -> framer.putFrame(new byte[6], ByteBuffer.allocate(MAX_LENGTH + 1)));
+    }
+
 }
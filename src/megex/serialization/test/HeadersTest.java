@@ -19,6 +19,7 @@ import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 class HeadersTest {
     private Headers headers;
@@ -124,6 +125,55 @@ class HeadersTest {
         assertArrayEquals(expectedEncoded, encoded);
     }
 
-}
+    @Test
+    void testAddValueLowercasesName() throws BadAttributeException {
+        headers.addValue("content-Type", "text/plain");
+        assertEquals(Set.of("content-type"), headers.getNames());
+        assertEquals("text/plain", headers.getValue("content-type"));
+    }
 
+    @Test
+    void testAddValueInvalidName() {
+        assertThrows(BadAttributeException.class, () -> headers.addValue("Name", "value"));
+        assertThrows(BadAttributeException.class, () -> headers.addValue("na me", "value"));
+        assertThrows(BadAttributeException.class, () -> headers.addValue("na;me", "value"));
+        assertThrows(BadAttributeException.class, () -> headers.addValue("", "value"));
+        assertThrows(BadAttributeException.class, () -> headers.addValue(null, "value"));
+        assertThrows(BadAttributeException.class, () -> headers.addValue("n\u00e4me", "value"));
+    }
 
+    @Test
+    void testAddValueInvalidValue() throws BadAttributeException {
+        headers.addValue("name", "value");
+        assertThrows(BadAttributeException.class, () -> headers.addValue("name", "va\tlue"));
+        assertThrows(BadAttributeException.class, () -> headers.addValue("name", ""));
+        assertThrows(BadAttributeException.class, () -> headers.addValue("name", null));
+        // a rejected rewrite keeps the previous value
+        assertEquals("value", headers.getValue("name"));
+    }
+
+    @Test
+    void testDecodeLowercasesAndValidates() throws BadAttributeException, IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Encoder encoder = new Encoder(MAXHEADERTBLSZ);
+        encoder.encodeHeader(out, s2b("X-Long-Header-Name"), s2b("a value longer than eight bytes"), false);
+        byte[] block = out.toByteArray();
+        byte[] frame = new byte[6 + block.length];
+        frame[0] = 1;
+        frame[1] = 4;
+        frame[5] = 1;
+        System.arraycopy(block, 0, frame, 6, block.length);
+
+        Headers decoded = (Headers) new MessageFactory().decode(frame);
+        assertEquals(Set.of("x-long-header-name"), decoded.getNames());
+        assertEquals("a value longer than eight bytes", decoded.getValue("x-long-header-name"));
+
+        out.reset();
+        new Encoder(MAXHEADERTBLSZ).encodeHeader(out, s2b("bad;header-name"), s2b("value"), false);
+        block = out.toByteArray();
+        frame = Arrays.copyOf(frame, 6 + block.length);
+        System.arraycopy(block, 0, frame, 6, block.length);
+        byte[] badFrame = frame;
+        assertThrows(BadAttributeException.class, () -> new MessageFactory().decode(badFrame));
+    }
+}
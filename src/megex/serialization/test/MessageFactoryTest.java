@@ -1,10 +1,14 @@
 package megex.serialization.test;
 
+import com.twitter.hpack.Encoder;
 import megex.serialization.*;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.security.Signature;
+import java.util.Arrays;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -56,7 +60,19 @@ class MessageFactoryTest {
         byte[] bytes = factory.encode(message);
 
         // check that the encoded byte array matches the expected value
+        assertArrayEquals(new byte[]{0x04, 0x00, 0x00, 0x00, 0x00, 0x00}, bytes);
+    }
+
+    @Test
+    void testEncodeDecodeSettingsAck() throws BadAttributeException {
+        MessageFactory factory = new MessageFactory();
+        byte[] bytes = factory.encode(new Settings(true));
         assertArrayEquals(new byte[]{0x04, 0x01, 0x00, 0x00, 0x00, 0x00}, bytes);
+        assertTrue(((Settings) factory.decode(bytes)).isAck());
+        assertFalse(((Settings) factory.decode(new byte[]{0x04, 0x00, 0x00, 0x00, 0x00, 0x00})).isAck());
+        // an acknowledgement carries no parameters
+        assertThrows(BadAttributeException.class, () -> factory.decode(new byte[]{0x04, 0x01, 0x00, 0x00, 0x00, 0x00, 0x00, 0x01, 0x00, 0x00, 0x10, 0x00}));
+        assertThrows(BadAttributeException.class, () -> new Settings(true).addSetting(Settings.HEADER_TABLE_SIZE, 4096));
     }
 
     @Test
@@ -125,4 +141,106 @@ class MessageFactoryTest {
         assertArrayEquals(expectedBytes, encodedBytes);
     }
 
-}
\ No newline at end of file
+    @Test
+    void testEncodeHeadersFromStaticBlock() throws BadAttributeException, IOException {
+        // encode a header block that only references the static table
+        ByteArrayOutputStream block = new ByteArrayOutputStream();
+        Encoder.encodeStaticHeader(block, ":status".getBytes(StandardCharsets.US_ASCII), "200".getBytes(StandardCharsets.US_ASCII));
+        Encoder.encodeStaticHeader(block, "content-length".getBytes(StandardCharsets.US_ASCII), "42".getBytes(StandardCharsets.US_ASCII));
+
+        // wrap the block in a HEADERS frame and check the frame header
+        MessageFactory factory = new MessageFactory();
+        byte[] bytes = factory.encodeHeaders(3, false, block.toByteArray());
+        assertArrayEquals(new byte[]{0x01, 0x04, 0x00, 0x00, 0x00, 0x03, (byte) 0x88}, Arrays.copyOf(bytes, 7));
+
+        // the block must decode with any decoder
+        Headers headers = (Headers) new MessageFactory().decode(bytes);
+        assertEquals("200", headers.getValue(":status"));
+        assertEquals("42", headers.getValue("content-length"));
+        assertFalse(headers.isEnd());
+    }
+
+    @Test
+    void testEncodeDataHeader() throws BadAttributeException {
+        MessageFactory factory = new MessageFactory();
+        byte[] header = factory.encodeDataHeader(5, true);
+
+        // the header followed by a payload decodes like an encoded Data message
+        byte[] frame = Arrays.copyOf(header, 6 + 2);
+        frame[6] = 0x68;
+        frame[7] = 0x69;
+        assertArrayEquals(factory.encode(new Data(5, true, new byte[]{0x68, 0x69})), frame);
+        assertEquals(new Data(5, true, new byte[]{0x68, 0x69}), factory.decode(frame));
+    }
+
+    @Test
+    void testEncodeDataHeaderBadStreamID() {
+        MessageFactory factory = new MessageFactory();
+        assertThrows(BadAttributeException.class, () -> factory.encodeDataHeader(0, false));
+    }
+
+    @Test
+    void testEncodeHeadersBadStreamID() {
+        MessageFactory factory = new MessageFactory();
+        assertThrows(BadAttributeException.class, () -> factory.encodeHeaders(0, true, new byte[]{(byte) 0x88}));
+    }
+
+    @Test
+    void testPeerHeaderTableSizeSignalledOnce() throws BadAttributeException {
+        MessageFactory factory = new MessageFactory();
+        factory.setPeerHeaderTableSize(256);
+
+        // the first header block starts with a dynamic table size update (0x20 | 31, 225)
+        byte[] first = factory.encodeHeaders(1, true, new byte[]{(byte) 0x88});
+        assertArrayEquals(new byte[]{0x01, 0x05, 0x00, 0x00, 0x00, 0x01, 0x3f, (byte) 0xe1, 0x01, (byte) 0x88}, first);
+        byte[] second = factory.encodeHeaders(3, true, new byte[]{(byte) 0x88});
+        assertArrayEquals(new byte[]{0x01, 0x05, 0x00, 0x00, 0x00, 0x03, (byte) 0x88}, second);
+
+        // the peer accepts the update
+        MessageFactory peer = new MessageFactory();
+        assertEquals("200", ((Headers) peer.decode(first)).getValue(":status"));
+        assertEquals("200", ((Headers) peer.decode(second)).getValue(":status"));
+    }
+
+    @Test
+    void testHeaderTableSizeLimitsDecoder() throws BadAttributeException {
+        MessageFactory factory = new MessageFactory(1024, 4096);
+        assertEquals(4096, factory.getHeaderTableSize());
+        // the encoder stays at the size the peer allows
+        assertEquals(2 * MessageFactory.MAXHEADERTBLSZ, factory.getHeaderTableMemory());
+    }
+
+    @Test
+    void testSmallerHeaderTableSizeWaitsForAck() throws BadAttributeException {
+        MessageFactory factory = new MessageFactory(1024, 256);
+        Settings settings = new Settings();
+        settings.addSetting(Settings.HEADER_TABLE_SIZE, 256);
+        factory.encode(settings);
+
+        // the peer encoded this block (":method: GET") before it saw the settings, so it has no size update
+        assertEquals("GET", ((Headers) factory.decode(new byte[]{0x01, 0x05, 0x00, 0x00, 0x00, 0x01, (byte) 0x82})).getValue(":method"));
+        assertEquals(256 + MessageFactory.MAXHEADERTBLSZ, factory.getHeaderTableMemory());
+
+        // once the settings are acknowledged, the next block must start with the update (0x20 | 31, 225)
+        factory.settingsAcknowledged();
+        assertEquals(2 * 256, factory.getHeaderTableMemory());
+        assertThrows(BadAttributeException.class, () -> factory.decode(new byte[]{0x01, 0x05, 0x00, 0x00, 0x00, 0x03, (byte) 0x82}));
+        MessageFactory next = new MessageFactory(1024, 256);
+        next.encode(settings);
+        next.settingsAcknowledged();
+        assertEquals("GET", ((Headers) next.decode(new byte[]{0x01, 0x05, 0x00, 0x00, 0x00, 0x01, 0x3f, (byte) 0xe1, 0x01, (byte) 0x82}))
+                .getValue(":method"));
+    }
+
+    @Test
+    void testLargerHeaderTableSizeAppliesAtOnce() throws BadAttributeException {
+        MessageFactory factory = new MessageFactory(1024, 4096);
+        Settings settings = new Settings();
+        settings.addSetting(Settings.HEADER_TABLE_SIZE, 4096);
+        factory.encode(settings);
+
+        // the peer may grow its table to the advertised size before acknowledging (0x20 | 31, 4065)
+        assertEquals("GET", ((Headers) factory.decode(new byte[]{0x01, 0x05, 0x00, 0x00, 0x00, 0x01, 0x3f, (byte) 0xe1, 0x1f, (byte) 0x82}))
+                .getValue(":method"));
+    }
+}
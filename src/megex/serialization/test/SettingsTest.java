@@ -1,10 +1,11 @@
 package megex.serialization.test;
 
 import megex.serialization.BadAttributeException;
+import megex.serialization.MessageFactory;
 import megex.serialization.Settings;
 import org.junit.jupiter.api.Test;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 public class SettingsTest {
     @Test
@@ -26,4 +27,69 @@ public class SettingsTest {
         Settings settings = new Settings();
         assertEquals(settings.toString(), "Settings: StreamID=0");
     }
+
+    @Test
+    public void testAddSetting() throws BadAttributeException {
+        Settings settings = new Settings();
+        settings.addSetting(Settings.HEADER_TABLE_SIZE, 4096);
+        assertEquals(4096, settings.getSetting(Settings.HEADER_TABLE_SIZE));
+        assertNull(settings.getSetting(0x4));
+        assertEquals("Settings: StreamID=0 ([1=4096])", settings.toString());
+    }
+
+    @Test
+    public void testAddSettingInvalid() throws BadAttributeException {
+        Settings settings = new Settings();
+        assertThrows(BadAttributeException.class, () -> settings.addSetting(0x10000, 1));
+        assertThrows(BadAttributeException.class, () -> settings.addSetting(Settings.HEADER_TABLE_SIZE, -1));
+        assertThrows(BadAttributeException.class, () -> settings.addSetting(Settings.HEADER_TABLE_SIZE, Settings.MAX_VALUE + 1));
+        assertThrows(BadAttributeException.class, () -> settings.addSetting(Settings.ENABLE_PUSH, 2));
+        assertThrows(BadAttributeException.class, () -> settings.addSetting(Settings.INITIAL_WINDOW_SIZE, 1L << 31));
+        assertThrows(BadAttributeException.class, () -> settings.addSetting(Settings.MAX_FRAME_SIZE, 16383));
+        assertThrows(BadAttributeException.class, () -> settings.addSetting(Settings.MAX_FRAME_SIZE, 1 << 24));
+    }
+
+    @Test
+    public void testDecodeUnsignedValue() throws BadAttributeException {
+        MessageFactory factory = new MessageFactory();
+        // MAX_HEADER_LIST_SIZE of 2^32-1
+        Settings settings = (Settings) factory.decode(new byte[]{0x04, 0x00, 0x00, 0x00, 0x00, 0x00,
+                0x00, 0x06, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff});
+        assertEquals(Settings.MAX_VALUE, settings.getSetting(Settings.MAX_HEADER_LIST_SIZE));
+        assertArrayEquals(new byte[]{0x04, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x06, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff},
+                factory.encode(settings));
+    }
+
+    @Test
+    public void testDecodeOutOfRangeValue() {
+        MessageFactory factory = new MessageFactory();
+        // INITIAL_WINDOW_SIZE of 2^31
+        assertThrows(BadAttributeException.class, () -> factory.decode(new byte[]{0x04, 0x00, 0x00, 0x00, 0x00, 0x00,
+                0x00, 0x04, (byte) 0x80, 0x00, 0x00, 0x00}));
+    }
+
+    @Test
+    public void testDecodeIgnoresUnknownSetting() throws BadAttributeException {
+        MessageFactory factory = new MessageFactory();
+        Settings settings = (Settings) factory.decode(new byte[]{0x04, 0x00, 0x00, 0x00, 0x00, 0x00,
+                0x00, 0x01, 0x00, 0x00, 0x10, 0x00, 0x12, 0x34, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff});
+        assertEquals(4096, settings.getSetting(Settings.HEADER_TABLE_SIZE));
+        assertEquals(1, settings.getSettingIds().size());
+    }
+
+    @Test
+    public void testEncodeDecodeSettings() throws BadAttributeException {
+        Settings settings = new Settings();
+        settings.addSetting(Settings.HEADER_TABLE_SIZE, 4096);
+        MessageFactory factory = new MessageFactory();
+        byte[] bytes = factory.encode(settings);
+        assertArrayEquals(new byte[]{0x04, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x01, 0x00, 0x00, 0x10, 0x00}, bytes);
+        assertEquals(settings, factory.decode(bytes));
+    }
+
+    @Test
+    public void testDecodeBadSettingsLength() {
+        MessageFactory factory = new MessageFactory();
+        assertThrows(BadAttributeException.class, () -> factory.decode(new byte[]{0x04, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x01}));
+    }
 }
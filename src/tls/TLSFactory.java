@@ -1,15 +1,21 @@
 package tls;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 
+import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLParameters;
 import javax.net.ssl.SSLServerSocket;
 import javax.net.ssl.SSLServerSocketFactory;
+import javax.net.ssl.SSLSessionContext;
 import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
 import javax.net.ssl.TrustManager;
@@ -20,8 +26,16 @@ import javax.net.ssl.X509TrustManager;
  * with optionally-specified application protocol(s).
  */
 public class TLSFactory {
-  // Specify TLS version to use
-  private static final String TLSVERSION = "TLSv1.2";
+  // TLS versions to use; the handshake picks the highest both sides support
+  private static final String[] TLSVERSIONS = new String[] {"TLSv1.3", "TLSv1.2"};
+  // Protocol family of the contexts, covering all the versions above
+  private static final String TLSPROTOCOL = "TLS";
+  // Resumable sessions kept by default, as in the JDK
+  private static final int SESSIONCACHESIZE = 20480;
+  // Default lifetime in seconds of a resumable session, as in the JDK
+  private static final int SESSIONTIMEOUT = 24 * 60 * 60;
+  // Client context, shared so later connections from this process can resume
+  private static SSLContext clientContext;
   // Application protocol list containing H2
   private static final String[] H2APPPROTO = new String[] {"h2"};
 
@@ -37,8 +51,36 @@ public class TLSFactory {
    * @throws Exception if connection/initialization fails
    */
   public static Socket getClientSocket(final String server, final int port, final String[] appProtocols) throws Exception {
+    // Create SSL socket factory and generate new, connected socket
+    final SSLSocketFactory ssf = getClientContext().getSocketFactory();
+    final SSLSocket s = (SSLSocket) ssf.createSocket(server, port);
+    s.setEnabledProtocols(TLSVERSIONS);
+    // Add any application protocols
+    if (appProtocols != null) {
+      final SSLParameters p = s.getSSLParameters();
+      p.setApplicationProtocols(appProtocols);
+      s.setSSLParameters(p);
+    }
+
+    // Execute TLS connection
+    s.startHandshake();
+
+    return s;
+  }
+
+  /**
+   * Gets the client TLS context, created on first use
+   * 
+   * @return client context
+   * 
+   * @throws GeneralSecurityException if the context cannot be created
+   */
+  private static synchronized SSLContext getClientContext() throws GeneralSecurityException {
+    if (clientContext != null) {
+      return clientContext;
+    }
     // Set VERY trusting trust manager.  NOT SECURE!!!!
-    final SSLContext ctx = SSLContext.getInstance(TLSVERSION);
+    final SSLContext ctx = SSLContext.getInstance(TLSPROTOCOL);
     ctx.init(null, new TrustManager[] { (TrustManager) new X509TrustManager() {
       public java.security.cert.X509Certificate[] getAcceptedIssuers() {
         return new X509Certificate[0];
@@ -54,20 +96,8 @@ public class TLSFactory {
           throws CertificateException {
       }
     } }, null);
-    // Create SSL socket factory and generate new, connected socket
-    final SSLSocketFactory ssf = ctx.getSocketFactory();
-    final SSLSocket s = (SSLSocket) ssf.createSocket(server, port);
-    // Add any application protocols
-    if (appProtocols != null) {
-      final SSLParameters p = s.getSSLParameters();
-      p.setApplicationProtocols(appProtocols);
-      s.setSSLParameters(p);
-    }
-
-    // Execute TLS connection
-    s.startHandshake();
-
-    return s;
+    clientContext = ctx;
+    return ctx;
   }
 
   /**
@@ -98,14 +128,25 @@ public class TLSFactory {
    */
   public static ServerSocket getServerListeningSocket(final int port, final String keystorefile,
       final String keystorepassword) throws Exception {
-    // Set the keystore and its password
-    System.setProperty("javax.net.ssl.keyStorePassword", keystorepassword);
-    System.setProperty("javax.net.ssl.keyStore", keystorefile);
+    return getServerListeningSocket(port, getServerContext(keystorefile, keystorepassword));
+  }
+
+  /**
+   * Create initialized listening socket from a server context
+   * 
+   * @param port port to listen on
+   * @param ctx  server context
+   * 
+   * @return initialized server socket
+   * 
+   * @throws IOException if unable to create socket
+   */
+  public static ServerSocket getServerListeningSocket(final int port, final SSLContext ctx) throws IOException {
     // Create a server-side SSLSocket
-    SSLServerSocketFactory factory = (SSLServerSocketFactory) SSLServerSocketFactory.getDefault();
+    SSLServerSocketFactory factory = ctx.getServerSocketFactory();
 
     SSLServerSocket servSocket = (SSLServerSocket) factory.createServerSocket(port);
-    servSocket.setEnabledProtocols(new String[] { TLSVERSION });
+    servSocket.setEnabledProtocols(TLSVERSIONS);
 
     return servSocket;
   }
@@ -122,6 +163,27 @@ public class TLSFactory {
    */
   public static Socket getServerConnectedSocket(final ServerSocket servSocket, final String[] appProtocols)
       throws IOException {
+    SSLSocket socket = getServerAcceptedSocket(servSocket, appProtocols);
+
+    // Make TLS handshake
+    socket.startHandshake();
+
+    return socket;
+  }
+
+  /**
+   * Block until connection then return new socket; the handshake is left to
+   * the caller, so it can run off the accepting thread
+   * 
+   * @param servSocket   socket waiting on connections
+   * @param appProtocols list of application protocols (null if none)
+   * 
+   * @return accepted socket, not yet handshaken
+   * 
+   * @throws IOException if problem handling new connection
+   */
+  public static SSLSocket getServerAcceptedSocket(final ServerSocket servSocket, final String[] appProtocols)
+      throws IOException {
     SSLSocket socket = (SSLSocket) servSocket.accept();
 
     if (appProtocols != null) {
@@ -136,9 +198,6 @@ public class TLSFactory {
       socket.setSSLParameters(sslp);
     }
 
-    // Make TLS handshake
-    socket.startHandshake();
-
     return socket;
   }
   
@@ -156,4 +215,101 @@ public class TLSFactory {
       throws IOException {
     return getServerConnectedSocket(servSocket, H2APPPROTO);
   }
+
+  /**
+   * Block until connection then return new socket; the handshake is left to
+   * the caller
+   * 
+   * @param servSocket socket waiting on connections
+   * 
+   * @return accepted socket, not yet handshaken
+   * 
+   * @throws IOException if problem handling new connection
+   */
+  public static SSLSocket getServerAcceptedSocket(final ServerSocket servSocket)
+      throws IOException {
+    return getServerAcceptedSocket(servSocket, H2APPPROTO);
+  }
+
+  /**
+   * Gets the server TLS context with the default session cache
+   * 
+   * @param keystorefile     name of key store file
+   * @param keystorepassword password for key store file
+   * 
+   * @return server context
+   * 
+   * @throws IOException              if the key store cannot be read
+   * @throws GeneralSecurityException if the context cannot be created
+   */
+  public static SSLContext getServerContext(final String keystorefile, final String keystorepassword)
+      throws IOException, GeneralSecurityException {
+    return getServerContext(keystorefile, keystorepassword, SESSIONCACHESIZE, SESSIONTIMEOUT);
+  }
+
+  /**
+   * Gets the server TLS context, holding the key of the given key store and
+   * caching sessions so returning clients resume instead of making a full
+   * handshake. TLS 1.3 clients resume with session tickets, which the JDK
+   * issues by default and which expire with the session timeout.
+   * 
+   * @param keystorefile     name of key store file (any type the JDK detects)
+   * @param keystorepassword password for key store file and its key
+   * @param sessionCacheSize number of sessions kept (0 for no limit)
+   * @param sessionTimeout   lifetime of a session in seconds (0 for no limit)
+   * 
+   * @return server context
+   * 
+   * @throws IOException              if the key store cannot be read
+   * @throws GeneralSecurityException if the context cannot be created
+   */
+  public static SSLContext getServerContext(final String keystorefile, final String keystorepassword,
+      final int sessionCacheSize, final int sessionTimeout) throws IOException, GeneralSecurityException {
+    final char[] password = keystorepassword.toCharArray();
+    final KeyStore keyStore = KeyStore.getInstance(new File(keystorefile), password);
+    final KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+    kmf.init(keyStore, password);
+
+    final SSLContext ctx = SSLContext.getInstance(TLSPROTOCOL);
+    ctx.init(kmf.getKeyManagers(), null, null);
+    final SSLSessionContext sessions = ctx.getServerSessionContext();
+    sessions.setSessionCacheSize(sessionCacheSize);
+    sessions.setSessionTimeout(sessionTimeout);
+    return ctx;
+  }
+
+  /**
+   * Create a server-side engine for a non-blocking connection; the handshake is
+   * driven by the caller
+   * 
+   * @param ctx          server context
+   * @param appProtocols list of application protocols (null if none)
+   * 
+   * @return initialized engine
+   */
+  public static SSLEngine getServerEngine(final SSLContext ctx, final String[] appProtocols) {
+    SSLEngine engine = ctx.createSSLEngine();
+    engine.setUseClientMode(false);
+    engine.setEnabledProtocols(TLSVERSIONS);
+
+    if (appProtocols != null) {
+      // As this is server side, put them in order of preference
+      SSLParameters sslp = engine.getSSLParameters();
+      sslp.setApplicationProtocols(appProtocols);
+      engine.setSSLParameters(sslp);
+    }
+
+    return engine;
+  }
+
+  /**
+   * Create a server-side engine for a non-blocking HTTP2 connection
+   * 
+   * @param ctx server context
+   * 
+   * @return initialized engine
+   */
+  public static SSLEngine getServerEngine(final SSLContext ctx) {
+    return getServerEngine(ctx, H2APPPROTO);
+  }
 }